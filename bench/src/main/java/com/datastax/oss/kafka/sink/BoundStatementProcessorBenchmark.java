@@ -0,0 +1,135 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.record.RecordAndStatement;
+import com.datastax.oss.kafka.sink.state.InstanceState;
+import com.datastax.oss.kafka.sink.state.InstanceStates;
+import com.datastax.oss.kafka.sink.util.MpscRingBuffer;
+import com.datastax.oss.kafka.sink.util.MpscRingBuffer.WaitStrategy;
+import com.datastax.oss.kafka.sink.util.SinkUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the grouping of statements and the construction of batches by the {@link
+ * BoundStatementProcessor}, for a stream of statements with the given number of distinct partition
+ * keys spread over the given number of tables. Statements are executed by a session that completes
+ * them immediately, so the results are statements per second through the processor thread. Run
+ * with {@code -prof gc} to also report the bytes allocated per statement.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@OperationsPerInvocation(BoundStatementProcessorBenchmark.STATEMENTS)
+public class BoundStatementProcessorBenchmark {
+  static final int STATEMENTS = 4096;
+
+  @Param({"1", "100", "10000"})
+  public int keyCardinality;
+
+  @Param({"1", "4"})
+  public int tables;
+
+  @Param({"1", "32"})
+  public int maxNumberOfRecordsInBatch;
+
+  private CassandraSinkTask task;
+  private RecordAndStatement[] statements;
+
+  @Setup
+  public void setup() throws IOException {
+    MappingFixture fixture = new MappingFixture(MappingFixture.Payload.JSON, 4, false, tables);
+    Map<String, String> settings = new HashMap<>(fixture.getTopicSettings());
+    settings.put(SinkUtil.NAME_OPT, "bench");
+    settings.put("jmx", "false");
+    InstanceState instanceState =
+        InstanceStates.newInstanceState(
+            new CassandraSinkConfig(settings),
+            StubSession.newSession(),
+            fixture.getPrimaryKey(),
+            fixture::newInsertStatement);
+    task = new StubSinkTask(instanceState);
+
+    List<RecordMapper> recordMappers = fixture.getRecordMappers();
+    List<TableConfig> tableConfigs = fixture.getTableConfigs();
+    statements = new RecordAndStatement[STATEMENTS];
+    for (int i = 0; i < STATEMENTS; i++) {
+      SinkRecord record = fixture.newRecord(i % keyCardinality);
+      int table = i % tables;
+      statements[i] =
+          new RecordAndStatement(
+              record,
+              tableConfigs.get(table).getKeyspaceAndTable(),
+              MappingFixture.map(recordMappers.get(table), record));
+    }
+  }
+
+  /** Queue the statements of a put() and let the processor group and execute them. */
+  @Benchmark
+  public int processStatements() throws InterruptedException {
+    BlockingQueue<RecordAndStatement> queue =
+        new MpscRingBuffer<>(statements.length + 1, WaitStrategy.PARK);
+    Collection<CompletionStage<? extends AsyncResultSet>> queryFutures =
+        new ConcurrentLinkedQueue<>();
+    BoundStatementProcessor processor =
+        new BoundStatementProcessor(task, queue, queryFutures, maxNumberOfRecordsInBatch);
+    Collections.addAll(queue, statements);
+    processor.stop();
+    processor.call();
+    return processor.getSuccessfulRecordCount();
+  }
+
+  /** Only group the statements by table and partition key. */
+  @Benchmark
+  public Map<String, Map<ByteBuffer, List<RecordAndStatement>>> categorizeStatements() {
+    BoundStatementProcessor processor =
+        new BoundStatementProcessor(task, null, null, maxNumberOfRecordsInBatch);
+    Map<String, Map<ByteBuffer, List<RecordAndStatement>>> statementGroups = new HashMap<>();
+    for (RecordAndStatement statement : statements) {
+      processor.categorizeStatement(statementGroups, statement);
+    }
+    return statementGroups;
+  }
+}
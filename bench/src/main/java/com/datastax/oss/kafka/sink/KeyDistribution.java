@@ -0,0 +1,104 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** The distribution of the keys of generated records over a fixed number of distinct keys. */
+abstract class KeyDistribution {
+
+  /**
+   * @param name uniform, sequential or zipf
+   * @param keys the number of distinct keys
+   * @return the distribution
+   */
+  static KeyDistribution forName(String name, int keys) {
+    switch (name.toLowerCase()) {
+      case "uniform":
+        return new Uniform(keys);
+      case "sequential":
+        return new Sequential(keys);
+      case "zipf":
+        return new Zipf(keys);
+      default:
+        throw new IllegalArgumentException(
+            "Unknown key distribution: " + name + ", expected uniform, sequential or zipf");
+    }
+  }
+
+  /**
+   * @param sequence the position of the record in the records of the current thread
+   * @return the key of the record
+   */
+  abstract long nextKey(long sequence);
+
+  /** Every key has the same probability. */
+  private static class Uniform extends KeyDistribution {
+    private final int keys;
+
+    private Uniform(int keys) {
+      this.keys = keys;
+    }
+
+    @Override
+    long nextKey(long sequence) {
+      return ThreadLocalRandom.current().nextInt(keys);
+    }
+  }
+
+  /** Keys are used in turn, so records with the same key are as far apart as possible. */
+  private static class Sequential extends KeyDistribution {
+    private final int keys;
+
+    private Sequential(int keys) {
+      this.keys = keys;
+    }
+
+    @Override
+    long nextKey(long sequence) {
+      return sequence % keys;
+    }
+  }
+
+  /**
+   * The probability of the key of rank k is proportional to 1/k, so a few hot keys get most of the
+   * records, and the records of a put often share a partition.
+   */
+  private static class Zipf extends KeyDistribution {
+    private final double[] cumulativeProbabilities;
+
+    private Zipf(int keys) {
+      cumulativeProbabilities = new double[keys];
+      double sum = 0;
+      for (int i = 0; i < keys; i++) {
+        sum += 1.0 / (i + 1);
+        cumulativeProbabilities[i] = sum;
+      }
+      for (int i = 0; i < keys; i++) {
+        cumulativeProbabilities[i] /= sum;
+      }
+    }
+
+    @Override
+    long nextKey(long sequence) {
+      int index =
+          Arrays.binarySearch(
+              cumulativeProbabilities, ThreadLocalRandom.current().nextDouble());
+      return index >= 0 ? index : Math.min(-index - 1, cumulativeProbabilities.length - 1);
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.driver.shaded.guava.common.util.concurrent.ThreadFactoryBuilder;
+import com.datastax.oss.kafka.sink.MappingFixture.Payload;
+import com.datastax.oss.kafka.sink.SimulatedCluster.Error;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+/**
+ * Drives {@link CassandraSinkTask}s with generated records against a {@link SimulatedCluster}
+ * running in the same JVM, and reports the throughput, the put latencies, and the CPU time and
+ * allocated bytes of the connector threads per record. No network access is needed.
+ *
+ * <p>Settings are given as name=value arguments, see {@link Settings}; settings prefixed with
+ * "sink." are passed to the connector without the prefix, e.g. sink.maxConcurrentRequests=1000.
+ *
+ * <p>Each task runs on its own thread, calls put with the records of a single partition, and
+ * cycles through a pool of records generated before the run, so that generating records costs
+ * nothing during the measurement.
+ */
+public class LoadGenerator {
+
+  private static final String NAME = "loadgen";
+  private static final String TASK_THREAD_PREFIX = "load-task-";
+  // The threads of the connector, whose CPU time and allocations are measured; the other threads
+  // belong to the JVM or to the simulated cluster.
+  private static final String[] CONNECTOR_THREAD_PREFIXES = {
+    TASK_THREAD_PREFIX, "bound-statement-processor-", "mapping-", NAME + "-"
+  };
+  private static final int RECORD_POOL_SIZE = 1 << 16;
+
+  /** The settings of a run, with their defaults. */
+  static class Settings {
+    /** The format of the record values: JSON, STRUCT, MAP or RAW. */
+    Payload payload = Payload.JSON;
+    /** The number of value columns. */
+    int width = 8;
+    /** The number of tables each record is written to. */
+    int fanOut = 1;
+    /** The number of distinct record keys. */
+    int keys = 100_000;
+    /** The distribution of record keys: uniform, sequential or zipf. */
+    String distribution = "uniform";
+    /** The number of records per second over all tasks, 0 for as many as possible. */
+    int rate = 0;
+    /** The number of tasks, each calling put from its own thread. */
+    int tasks = 1;
+    /** The number of records of each put. */
+    int recordsPerPut = 500;
+    /** The number of seconds before the measurement starts. */
+    int warmupSeconds = 10;
+    /** The number of seconds of the measurement. */
+    int durationSeconds = 30;
+    /** The number of nodes of the simulated cluster. */
+    int nodes = 1;
+    /** The delay of the nodes before answering a write. */
+    long latencyMs = 0;
+    /** The error injected by the nodes: NONE, WRITE_TIMEOUT, OVERLOADED, UNAVAILABLE... */
+    Error error = Error.NONE;
+    /** The fraction of the time the nodes answer writes with the error. */
+    double errorRate = 0;
+    /** The period of error injection: errors are injected at the start of each period. */
+    long errorPeriodMs = 1000;
+
+    final Map<String, String> connectorSettings = new LinkedHashMap<>();
+
+    Settings(String... args) {
+      for (String arg : args) {
+        int equals = arg.indexOf('=');
+        if (equals <= 0) {
+          throw new IllegalArgumentException("Expected name=value, got " + arg);
+        }
+        String name = arg.substring(0, equals);
+        String value = arg.substring(equals + 1);
+        if (name.startsWith("sink.")) {
+          connectorSettings.put(name.substring("sink.".length()), value);
+          continue;
+        }
+        switch (name) {
+          case "payload":
+            payload = Payload.valueOf(value.toUpperCase());
+            break;
+          case "width":
+            width = Integer.parseInt(value);
+            break;
+          case "fanOut":
+            fanOut = Integer.parseInt(value);
+            break;
+          case "keys":
+            keys = Integer.parseInt(value);
+            break;
+          case "distribution":
+            distribution = value;
+            break;
+          case "rate":
+            rate = Integer.parseInt(value);
+            break;
+          case "tasks":
+            tasks = Integer.parseInt(value);
+            break;
+          case "recordsPerPut":
+            recordsPerPut = Integer.parseInt(value);
+            break;
+          case "warmupSeconds":
+            warmupSeconds = Integer.parseInt(value);
+            break;
+          case "durationSeconds":
+            durationSeconds = Integer.parseInt(value);
+            break;
+          case "nodes":
+            nodes = Integer.parseInt(value);
+            break;
+          case "latencyMs":
+            latencyMs = Long.parseLong(value);
+            break;
+          case "error":
+            error = Error.valueOf(value.toUpperCase());
+            break;
+          case "errorRate":
+            errorRate = Double.parseDouble(value);
+            break;
+          case "errorPeriodMs":
+            errorPeriodMs = Long.parseLong(value);
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown setting: " + name);
+        }
+      }
+      if (errorRate < 0 || errorRate > 1) {
+        throw new IllegalArgumentException("errorRate must be between 0 and 1, got " + errorRate);
+      }
+    }
+  }
+
+  /** The measurements of a run. */
+  static class Report {
+    long records;
+    long failedRecords;
+    long offsetResets;
+    double seconds;
+    Histogram putLatencies;
+    long cpuNanos;
+    long allocatedBytes;
+    int processors;
+
+    @Override
+    public String toString() {
+      double perRecord = Math.max(records, 1);
+      return String.format(
+          "Records:           %d in %.1f s, %d failed, %d offset resets%n"
+              + "Throughput:        %.0f records/s%n"
+              + "Put latency (ms):  p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n"
+              + "CPU:               %.1f%% of %d cores, %.2f us per record%n"
+              + "Allocation:        %.0f bytes per record%n",
+          records,
+          seconds,
+          failedRecords,
+          offsetResets,
+          records / seconds,
+          millis(putLatencies.getValueAtPercentile(50)),
+          millis(putLatencies.getValueAtPercentile(90)),
+          millis(putLatencies.getValueAtPercentile(99)),
+          millis(putLatencies.getValueAtPercentile(99.9)),
+          millis(putLatencies.getMaxValue()),
+          cpuNanos / (seconds * 1e9 * processors) * 100,
+          processors,
+          cpuNanos / perRecord / 1e3,
+          allocatedBytes / perRecord);
+    }
+
+    private static double millis(long nanos) {
+      return nanos / 1e6;
+    }
+  }
+
+  private final Settings settings;
+  private final MappingFixture fixture;
+  private final LongAdder putRecords = new LongAdder();
+  private final LongAdder failedRecords = new LongAdder();
+  private final Recorder putLatencies = new Recorder(3);
+  private final com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private volatile boolean running = true;
+
+  LoadGenerator(Settings settings) {
+    this.settings = settings;
+    fixture = new MappingFixture(settings.payload, settings.width, false, settings.fanOut);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Report report = new LoadGenerator(new Settings(args)).run();
+    System.out.print(report);
+    // The driver and Simulacron may leave non-daemon threads behind.
+    System.exit(0);
+  }
+
+  Report run() throws Exception {
+    try (SimulatedCluster cluster = new SimulatedCluster(settings.nodes, fixture)) {
+      cluster.setBehavior(settings.latencyMs, Error.NONE);
+      ScheduledExecutorService faults = Executors.newSingleThreadScheduledExecutor();
+      if (settings.error != Error.NONE && settings.errorRate > 0) {
+        long errorMillis = (long) (settings.errorPeriodMs * settings.errorRate);
+        faults.scheduleAtFixedRate(
+            () -> {
+              cluster.setBehavior(settings.latencyMs, settings.error);
+              if (errorMillis < settings.errorPeriodMs) {
+                faults.schedule(
+                    () -> cluster.setBehavior(settings.latencyMs, Error.NONE),
+                    errorMillis,
+                    TimeUnit.MILLISECONDS);
+              }
+            },
+            0,
+            settings.errorPeriodMs,
+            TimeUnit.MILLISECONDS);
+      }
+
+      Map<String, String> connectorSettings = connectorSettings(cluster.getContactPoint());
+      List<CassandraSinkTask> tasks = new ArrayList<>();
+      List<RecordingSinkTaskContext> contexts = new ArrayList<>();
+      for (int i = 0; i < settings.tasks; i++) {
+        RecordingSinkTaskContext context = new RecordingSinkTaskContext();
+        CassandraSinkTask task = new LoadSinkTask(failedRecords);
+        task.initialize(context);
+        task.start(connectorSettings);
+        tasks.add(task);
+        contexts.add(context);
+      }
+
+      ExecutorService producers =
+          Executors.newFixedThreadPool(
+              settings.tasks,
+              new ThreadFactoryBuilder().setNameFormat(TASK_THREAD_PREFIX + "%d").build());
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < settings.tasks; i++) {
+        int partition = i;
+        futures.add(producers.submit(() -> produce(partition, tasks.get(partition))));
+      }
+      try {
+        TimeUnit.SECONDS.sleep(settings.warmupSeconds);
+        Report start = snapshot(contexts);
+        putLatencies.getIntervalHistogram();
+        TimeUnit.SECONDS.sleep(settings.durationSeconds);
+        Report end = snapshot(contexts);
+        end.putLatencies = putLatencies.getIntervalHistogram();
+        end.records -= start.records;
+        end.failedRecords -= start.failedRecords;
+        end.offsetResets -= start.offsetResets;
+        end.seconds -= start.seconds;
+        end.cpuNanos -= start.cpuNanos;
+        end.allocatedBytes -= start.allocatedBytes;
+        return end;
+      } finally {
+        running = false;
+        for (Future<?> future : futures) {
+          future.get();
+        }
+        producers.shutdown();
+        faults.shutdownNow();
+        tasks.forEach(CassandraSinkTask::stop);
+      }
+    }
+  }
+
+  private void produce(int partition, CassandraSinkTask task) {
+    KeyDistribution keys = KeyDistribution.forName(settings.distribution, settings.keys);
+    List<SinkRecord> pool = new ArrayList<>(RECORD_POOL_SIZE);
+    for (int offset = 0; offset < RECORD_POOL_SIZE; offset++) {
+      pool.add(fixture.newRecord(partition, keys.nextKey(offset), offset));
+    }
+    long putIntervalNanos =
+        settings.rate > 0
+            ? (long) (settings.recordsPerPut * 1e9 * settings.tasks / settings.rate)
+            : 0;
+    long nextPut = System.nanoTime();
+    int position = 0;
+    while (running) {
+      if (position + settings.recordsPerPut > RECORD_POOL_SIZE) {
+        position = 0;
+      }
+      List<SinkRecord> records = pool.subList(position, position + settings.recordsPerPut);
+      position += settings.recordsPerPut;
+      long start;
+      if (putIntervalNanos > 0) {
+        long now;
+        while ((now = System.nanoTime()) < nextPut) {
+          LockSupport.parkNanos(nextPut - now);
+        }
+        // Measure from the intended start, so that a put delayed by the previous ones counts its
+        // waiting time, and the latencies are not hidden by a slower pace.
+        start = nextPut;
+        nextPut += putIntervalNanos;
+      } else {
+        start = System.nanoTime();
+      }
+      task.put(records);
+      putLatencies.recordValue(System.nanoTime() - start);
+      putRecords.add(records.size());
+    }
+  }
+
+  private Map<String, String> connectorSettings(InetSocketAddress contactPoint) {
+    Map<String, String> connectorSettings = new LinkedHashMap<>();
+    connectorSettings.put("name", NAME);
+    connectorSettings.put("contactPoints", contactPoint.getHostString());
+    connectorSettings.put("port", Integer.toString(contactPoint.getPort()));
+    connectorSettings.put("loadBalancing.localDc", "dc1");
+    connectorSettings.put("jmx", "false");
+    connectorSettings.put("datastax-java-driver.basic.session-name", NAME);
+    connectorSettings.putAll(fixture.getTopicSettings());
+    connectorSettings.putAll(settings.connectorSettings);
+    return connectorSettings;
+  }
+
+  private Report snapshot(List<RecordingSinkTaskContext> contexts) {
+    Report report = new Report();
+    report.seconds = System.nanoTime() / 1e9;
+    report.records = putRecords.sum();
+    report.failedRecords = failedRecords.sum();
+    report.offsetResets =
+        contexts.stream().mapToLong(RecordingSinkTaskContext::getOffsetResets).sum();
+    report.processors = Runtime.getRuntime().availableProcessors();
+    // Threads that terminate during the measurement are not accounted for; the connector threads
+    // live as long as the tasks.
+    for (long id : threads.getAllThreadIds()) {
+      ThreadInfo info = threads.getThreadInfo(id);
+      if (info != null && isConnectorThread(info.getThreadName())) {
+        report.cpuNanos += Math.max(threads.getThreadCpuTime(id), 0);
+        report.allocatedBytes += Math.max(threads.getThreadAllocatedBytes(id), 0);
+      }
+    }
+    return report;
+  }
+
+  private static boolean isConnectorThread(String name) {
+    for (String prefix : CONNECTOR_THREAD_PREFIXES) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.kafka.sink.record.RecordHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A task that counts the records it failed to write. */
+class LoadSinkTask extends CassandraSinkTask {
+  private final LongAdder failedRecords;
+
+  LoadSinkTask(LongAdder failedRecords) {
+    this.failedRecords = failedRecords;
+  }
+
+  @Override
+  synchronized void handleFailure(
+      RecordHandle record, Throwable e, String cql, Runnable failCounter) {
+    failedRecords.increment();
+    super.handleFailure(record, e, cql, failCounter);
+  }
+}
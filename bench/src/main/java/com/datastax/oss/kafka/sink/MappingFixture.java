@@ -0,0 +1,334 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.api.core.type.UserDefinedType;
+import com.datastax.oss.driver.internal.core.type.UserDefinedTypeBuilder;
+import com.datastax.oss.dsbulk.codecs.api.ConvertingCodecFactory;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.config.TopicConfig;
+import com.datastax.oss.kafka.sink.metadata.InnerDataAndMetadata;
+import com.datastax.oss.kafka.sink.metadata.MetadataCreator;
+import com.datastax.oss.kafka.sink.record.HeadersDataMetadata;
+import com.datastax.oss.kafka.sink.record.KeyValueRecord;
+import com.datastax.oss.kafka.sink.record.KeyValueRecordMetadata;
+import com.datastax.oss.kafka.sink.util.SinkUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.header.Headers;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+/**
+ * The tables, record mappers and records of a mapping scenario.
+ *
+ * <p>Tables have a bigint partition key mapped from the record key, and value columns c0..cN
+ * mapped from the fields f0..fN of the record value, alternately int, bigint, text and double. With
+ * a UDT, an address column is mapped from a nested address object. Each record is written to all
+ * the tables of the topic, so the number of tables is the fan-out of the scenario. Raw payloads are
+ * non-JSON strings mapped as a whole to a single text column.
+ */
+class MappingFixture {
+
+  /** The format of the record values. */
+  enum Payload {
+    /** JSON strings, as produced by the StringConverter. */
+    JSON,
+    /** Structs with a schema, as produced by the Avro or JsonConverter with schemas. */
+    STRUCT,
+    /** Schemaless maps, as produced by the JsonConverter without schemas. */
+    MAP,
+    /** Non-JSON strings. */
+    RAW
+  }
+
+  static final String TOPIC = "bench";
+  static final String KEYSPACE = "ks";
+  private static final String KEY_COLUMN = "id";
+  private static final String UDT_COLUMN = "address";
+  private static final UserDefinedType ADDRESS_TYPE =
+      new UserDefinedTypeBuilder(KEYSPACE, "address")
+          .withField("street", DataTypes.TEXT)
+          .withField("number", DataTypes.INT)
+          .withField("zip", DataTypes.TEXT)
+          .build();
+  private static final Schema ADDRESS_SCHEMA =
+      SchemaBuilder.struct()
+          .field("street", Schema.STRING_SCHEMA)
+          .field("number", Schema.INT32_SCHEMA)
+          .field("zip", Schema.STRING_SCHEMA)
+          .build();
+  private static final DataType[] VALUE_TYPES = {
+    DataTypes.INT, DataTypes.BIGINT, DataTypes.TEXT, DataTypes.DOUBLE
+  };
+  private static final Schema[] VALUE_SCHEMAS = {
+    Schema.INT32_SCHEMA, Schema.INT64_SCHEMA, Schema.STRING_SCHEMA, Schema.FLOAT64_SCHEMA
+  };
+
+  private final Payload payload;
+  private final int width;
+  private final boolean udt;
+  private final Schema valueSchema;
+  private final Map<String, DataType> columnTypes = new LinkedHashMap<>();
+  private final Map<String, String> topicSettings = new LinkedHashMap<>();
+  private final List<TableConfig> tableConfigs;
+  private final List<RecordMapper> recordMappers;
+
+  /**
+   * @param payload the format of the record values
+   * @param width the number of value columns; ignored for raw payloads
+   * @param udt whether records also have a field mapped to a UDT column; ignored for raw payloads
+   * @param fanOut the number of tables each record is written to
+   */
+  MappingFixture(Payload payload, int width, boolean udt, int fanOut) {
+    this.payload = payload;
+    this.width = payload == Payload.RAW ? 1 : width;
+    this.udt = udt && payload != Payload.RAW;
+
+    StringBuilder mapping = new StringBuilder(KEY_COLUMN).append("=key");
+    columnTypes.put(KEY_COLUMN, DataTypes.BIGINT);
+    SchemaBuilder schemaBuilder = SchemaBuilder.struct();
+    if (payload == Payload.RAW) {
+      mapping.append(", c0=value");
+      columnTypes.put("c0", DataTypes.TEXT);
+    } else {
+      for (int i = 0; i < this.width; i++) {
+        mapping.append(", c").append(i).append("=value.f").append(i);
+        columnTypes.put("c" + i, VALUE_TYPES[i % VALUE_TYPES.length]);
+        schemaBuilder.field("f" + i, VALUE_SCHEMAS[i % VALUE_SCHEMAS.length]);
+      }
+      if (this.udt) {
+        mapping.append(", ").append(UDT_COLUMN).append("=value.").append(UDT_COLUMN);
+        columnTypes.put(UDT_COLUMN, ADDRESS_TYPE);
+        schemaBuilder.field(UDT_COLUMN, ADDRESS_SCHEMA);
+      }
+    }
+    valueSchema = schemaBuilder.build();
+
+    for (int i = 0; i < fanOut; i++) {
+      topicSettings.put(
+          TableConfig.getTableSettingPath(TOPIC, KEYSPACE, "table" + i, TableConfig.MAPPING_OPT),
+          mapping.toString());
+    }
+    TopicConfig topicConfig = new TopicConfig(TOPIC, topicSettings, false);
+    ConvertingCodecFactory codecFactory = topicConfig.createCodecFactory();
+    tableConfigs = new ArrayList<>(topicConfig.getTableConfigs());
+    recordMappers =
+        tableConfigs
+            .stream()
+            .map(tableConfig -> newRecordMapper(tableConfig, codecFactory))
+            .collect(Collectors.toList());
+  }
+
+  /** @return the settings of the topic and its tables, to add to the connector settings. */
+  Map<String, String> getTopicSettings() {
+    return topicSettings;
+  }
+
+  List<CqlIdentifier> getPrimaryKey() {
+    return Collections.singletonList(CqlIdentifier.fromInternal(KEY_COLUMN));
+  }
+
+  List<TableConfig> getTableConfigs() {
+    return tableConfigs;
+  }
+
+  List<RecordMapper> getRecordMappers() {
+    return recordMappers;
+  }
+
+  /** @return the type of each column of the tables, the key column first. */
+  Map<String, DataType> getColumnTypes() {
+    return columnTypes;
+  }
+
+  /**
+   * Create the record with the given key; the values of its fields are derived from the key.
+   *
+   * @param key the record key, also used as offset
+   * @return the record
+   */
+  SinkRecord newRecord(long key) {
+    return newRecord(0, key, key);
+  }
+
+  /**
+   * Create the record with the given key at the given position of the topic; the values of its
+   * fields are derived from the key.
+   *
+   * @param partition the partition of the record
+   * @param key the record key
+   * @param offset the offset of the record
+   * @return the record
+   */
+  SinkRecord newRecord(int partition, long key, long offset) {
+    Object value;
+    switch (payload) {
+      case JSON:
+        value = newJsonValue(key);
+        break;
+      case STRUCT:
+        value = newStructValue(key);
+        break;
+      case MAP:
+        value = newMapValue(key);
+        break;
+      default:
+        value = "Record number " + key;
+    }
+    return new SinkRecord(
+        TOPIC,
+        partition,
+        Schema.INT64_SCHEMA,
+        key,
+        payload == Payload.STRUCT ? valueSchema : null,
+        value,
+        offset,
+        System.currentTimeMillis(),
+        TimestampType.CREATE_TIME);
+  }
+
+  /**
+   * Map the given record with the given mapper, like CassandraSinkTask.mapAndQueueRecord does for
+   * each table of the record topic.
+   */
+  static BoundStatement map(RecordMapper mapper, SinkRecord record) throws IOException {
+    InnerDataAndMetadata key = MetadataCreator.makeMeta(record.key());
+    InnerDataAndMetadata value = MetadataCreator.makeMeta(record.value());
+    Headers headers = record.headers();
+    KeyValueRecord keyValueRecord =
+        new KeyValueRecord(key.getInnerData(), value.getInnerData(), record.timestamp(), headers);
+    return mapper.map(
+        new KeyValueRecordMetadata(
+            key.getInnerMetadata(), value.getInnerMetadata(), new HeadersDataMetadata(headers)),
+        keyValueRecord);
+  }
+
+  /** @return the insert statement of the given table, with the key column first. */
+  StubPreparedStatement newInsertStatement(TableConfig tableConfig) {
+    String table = tableConfig.getTable().asInternal();
+    List<ColumnDefinition> variables = new ArrayList<>();
+    columnTypes.forEach(
+        (name, type) -> variables.add(new StubColumnDefinition(KEYSPACE, table, name, type)));
+    variables.add(
+        new StubColumnDefinition(KEYSPACE, table, SinkUtil.TIMESTAMP_VARNAME, DataTypes.BIGINT));
+    return new StubPreparedStatement(
+        "INSERT INTO " + tableConfig.getKeyspaceAndTable(), variables, 1);
+  }
+
+  private RecordMapper newRecordMapper(TableConfig tableConfig, ConvertingCodecFactory codecs) {
+    StubPreparedStatement delete =
+        new StubPreparedStatement(
+            "DELETE FROM " + tableConfig.getKeyspaceAndTable(),
+            Collections.singletonList(
+                new StubColumnDefinition(
+                    KEYSPACE,
+                    tableConfig.getTable().asInternal(),
+                    KEY_COLUMN,
+                    columnTypes.get(KEY_COLUMN))),
+            1);
+    return new RecordMapper(
+        newInsertStatement(tableConfig),
+        tableConfig.isDeletesEnabled() ? delete : null,
+        getPrimaryKey(),
+        new Mapping(tableConfig.getMapping(), codecs),
+        true,
+        false,
+        tableConfig);
+  }
+
+  private String newJsonValue(long key) {
+    StringBuilder json = new StringBuilder("{");
+    for (int i = 0; i < width; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("\"f").append(i).append("\":");
+      Object fieldValue = fieldValue(key, i);
+      if (fieldValue instanceof String) {
+        json.append('"').append(fieldValue).append('"');
+      } else {
+        json.append(fieldValue);
+      }
+    }
+    if (udt) {
+      json.append(",\"")
+          .append(UDT_COLUMN)
+          .append("\":{\"street\":\"Main Street\",\"number\":")
+          .append(key % 1000)
+          .append(",\"zip\":\"12345\"}");
+    }
+    return json.append('}').toString();
+  }
+
+  private Struct newStructValue(long key) {
+    Struct struct = new Struct(valueSchema);
+    for (int i = 0; i < width; i++) {
+      struct.put("f" + i, fieldValue(key, i));
+    }
+    if (udt) {
+      struct.put(
+          UDT_COLUMN,
+          new Struct(ADDRESS_SCHEMA)
+              .put("street", "Main Street")
+              .put("number", (int) (key % 1000))
+              .put("zip", "12345"));
+    }
+    return struct;
+  }
+
+  private Map<String, Object> newMapValue(long key) {
+    Map<String, Object> map = new HashMap<>();
+    for (int i = 0; i < width; i++) {
+      map.put("f" + i, fieldValue(key, i));
+    }
+    if (udt) {
+      Map<String, Object> address = new HashMap<>();
+      address.put("street", "Main Street");
+      address.put("number", (int) (key % 1000));
+      address.put("zip", "12345");
+      map.put(UDT_COLUMN, address);
+    }
+    return map;
+  }
+
+  private static Object fieldValue(long key, int field) {
+    switch (field % VALUE_TYPES.length) {
+      case 0:
+        return (int) key + field;
+      case 1:
+        return key * 31 + field;
+      case 2:
+        return "value " + key + " of field " + field;
+      default:
+        return key / 3.0 + field;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.kafka.sink.metadata.MetadataCreator;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the mapping of records to bound statements done by the mapping threads, for each
+ * payload format, schema width, with and without a UDT, and with records written to one or several
+ * tables. Run with {@code -prof gc} to also report the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordMappingBenchmark {
+  private static final int RECORDS = 1024;
+
+  @Param({"JSON", "STRUCT", "MAP", "RAW"})
+  public MappingFixture.Payload payload;
+
+  @Param({"4", "64"})
+  public int width;
+
+  @Param({"false", "true"})
+  public boolean udt;
+
+  @Param({"1", "3"})
+  public int fanOut;
+
+  private List<RecordMapper> recordMappers;
+  private SinkRecord[] records;
+  private int next;
+
+  @Setup
+  public void setup() {
+    MappingFixture fixture = new MappingFixture(payload, width, udt, fanOut);
+    recordMappers = fixture.getRecordMappers();
+    records = new SinkRecord[RECORDS];
+    for (int i = 0; i < RECORDS; i++) {
+      records[i] = fixture.newRecord(i);
+    }
+  }
+
+  /** Parse the key and value of a record, which is done once per table. */
+  @Benchmark
+  public void makeMeta(Blackhole blackhole) throws IOException {
+    SinkRecord record = nextRecord();
+    blackhole.consume(MetadataCreator.makeMeta(record.key()));
+    blackhole.consume(MetadataCreator.makeMeta(record.value()));
+  }
+
+  /** Map a record to a statement for each table, like CassandraSinkTask.mapAndQueueRecord. */
+  @Benchmark
+  public void mapRecord(Blackhole blackhole) throws IOException {
+    SinkRecord record = nextRecord();
+    for (RecordMapper mapper : recordMappers) {
+      blackhole.consume(MappingFixture.map(mapper, record));
+    }
+  }
+
+  private SinkRecord nextRecord() {
+    SinkRecord record = records[next];
+    next = (next + 1) % RECORDS;
+    return record;
+  }
+}
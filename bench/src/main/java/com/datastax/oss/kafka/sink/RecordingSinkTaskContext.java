@@ -0,0 +1,65 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+
+/** A task context that only counts the offset resets requested by the task. */
+class RecordingSinkTaskContext implements SinkTaskContext {
+  private final LongAdder offsetResets = new LongAdder();
+
+  /** @return the number of times the task asked to consume a partition again from an offset. */
+  long getOffsetResets() {
+    return offsetResets.sum();
+  }
+
+  @Override
+  public Map<String, String> configs() {
+    return Collections.emptyMap();
+  }
+
+  @Override
+  public void offset(Map<TopicPartition, Long> offsets) {
+    offsetResets.add(offsets.size());
+  }
+
+  @Override
+  public void offset(TopicPartition tp, long offset) {
+    offsetResets.increment();
+  }
+
+  @Override
+  public void timeout(long timeoutMs) {}
+
+  @Override
+  public Set<TopicPartition> assignment() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public void pause(TopicPartition... partitions) {}
+
+  @Override
+  public void resume(TopicPartition... partitions) {}
+
+  @Override
+  public void requestCommit() {}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.noRows;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.overloaded;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.serverError;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.unavailable;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.when;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.writeTimeout;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.dsbulk.tests.simulacron.SimulacronUtils;
+import com.datastax.oss.dsbulk.tests.simulacron.SimulacronUtils.Column;
+import com.datastax.oss.dsbulk.tests.simulacron.SimulacronUtils.Table;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.state.CqlStatements;
+import com.datastax.oss.kafka.sink.util.SinkUtil;
+import com.datastax.oss.simulacron.common.cluster.ClusterSpec;
+import com.datastax.oss.simulacron.common.codec.ConsistencyLevel;
+import com.datastax.oss.simulacron.common.codec.WriteType;
+import com.datastax.oss.simulacron.common.request.Query;
+import com.datastax.oss.simulacron.common.result.Result;
+import com.datastax.oss.simulacron.server.BoundCluster;
+import com.datastax.oss.simulacron.server.BoundNode;
+import com.datastax.oss.simulacron.server.Server;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Simulacron cluster with the tables of a {@link MappingFixture}, whose nodes answer the inserts
+ * of the connector with a configurable latency and error.
+ *
+ * <p>The behavior of a node only applies to single-statement writes: batches are not primed, and
+ * Simulacron answers them immediately.
+ */
+class SimulatedCluster implements AutoCloseable {
+
+  /** The answer of a node to writes. */
+  enum Error {
+    /** Successful writes. */
+    NONE,
+    /** A write timeout at LOCAL_ONE. */
+    WRITE_TIMEOUT,
+    /** An overloaded error. */
+    OVERLOADED,
+    /** An unavailable error at LOCAL_ONE. */
+    UNAVAILABLE,
+    /** A server error. */
+    SERVER_ERROR;
+
+    private Result toResult() {
+      switch (this) {
+        case WRITE_TIMEOUT:
+          return writeTimeout(ConsistencyLevel.LOCAL_ONE, 0, 1, WriteType.SIMPLE);
+        case OVERLOADED:
+          return overloaded("simulated overload");
+        case UNAVAILABLE:
+          return unavailable(ConsistencyLevel.LOCAL_ONE, 1, 0);
+        case SERVER_ERROR:
+          return serverError("simulated server error");
+        default:
+          return noRows();
+      }
+    }
+  }
+
+  private final Server server;
+  private final BoundCluster cluster;
+  private final List<Query> inserts = new ArrayList<>();
+
+  /**
+   * Start a cluster with the given number of nodes, in a single data center named dc1.
+   *
+   * @param nodes the number of nodes
+   * @param fixture the tables to create
+   */
+  SimulatedCluster(int nodes, MappingFixture fixture) {
+    server = Server.builder().build();
+    cluster = server.register(ClusterSpec.builder().withNodes(nodes).withDSEVersion("5.0.8"));
+
+    Map<String, String> paramTypes = new LinkedHashMap<>();
+    List<Column> columns = new ArrayList<>();
+    fixture
+        .getColumnTypes()
+        .forEach(
+            (name, type) -> {
+              paramTypes.put(name, paramType(type));
+              columns.add(new Column(name, type));
+            });
+    paramTypes.put(SinkUtil.TIMESTAMP_VARNAME, paramType(DataTypes.BIGINT));
+    Column key = columns.remove(0);
+    Table[] tables = new Table[fixture.getTableConfigs().size()];
+    for (int i = 0; i < tables.length; i++) {
+      TableConfig tableConfig = fixture.getTableConfigs().get(i);
+      tables[i] =
+          new Table(tableConfig.getTable().asInternal(), key, columns.toArray(new Column[0]));
+      // Without parameters, the prime matches all the values bound to the statement.
+      inserts.add(
+          new Query(
+              CqlStatements.insert(tableConfig),
+              Collections.emptyList(),
+              Collections.emptyMap(),
+              paramTypes));
+    }
+    SimulacronUtils.primeTables(
+        cluster, new SimulacronUtils.Keyspace(MappingFixture.KEYSPACE, tables));
+    setBehavior(0, Error.NONE);
+  }
+
+  /** @return the address of the first node, to use as contact point. */
+  InetSocketAddress getContactPoint() {
+    return cluster.dc(0).node(0).inetSocketAddress();
+  }
+
+  /**
+   * Set how the nodes answer writes from now on.
+   *
+   * @param latencyMillis the delay before each answer
+   * @param error the answer
+   */
+  synchronized void setBehavior(long latencyMillis, Error error) {
+    for (BoundNode node : cluster.getNodes()) {
+      node.clearPrimes(false);
+      for (Query insert : inserts) {
+        node.prime(when(insert).then(error.toResult()).delay(latencyMillis, MILLISECONDS));
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    cluster.close();
+    server.close();
+  }
+
+  private static String paramType(DataType type) {
+    return type == DataTypes.TEXT ? "varchar" : type.asCql(false, true);
+  }
+}
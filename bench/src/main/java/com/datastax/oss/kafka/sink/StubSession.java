@@ -0,0 +1,71 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultProtocolVersion;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A session whose executeAsync calls complete immediately and successfully, without sending
+ * anything. It has the default codec registry and protocol version 4, and no metrics. Other methods
+ * return null.
+ */
+class StubSession {
+
+  static CqlSession newSession() {
+    DriverContext context =
+        (DriverContext)
+            Proxy.newProxyInstance(
+                StubSession.class.getClassLoader(),
+                new Class<?>[] {DriverContext.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getProtocolVersion":
+                      return DefaultProtocolVersion.V4;
+                    case "getCodecRegistry":
+                      return CodecRegistry.DEFAULT;
+                    default:
+                      return null;
+                  }
+                });
+    CompletableFuture<?> completed = CompletableFuture.completedFuture(null);
+    return (CqlSession)
+        Proxy.newProxyInstance(
+            StubSession.class.getClassLoader(),
+            new Class<?>[] {CqlSession.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "executeAsync":
+                  return completed;
+                case "getContext":
+                  return context;
+                case "getMetrics":
+                  return Optional.empty();
+                case "getName":
+                  return "bench";
+                default:
+                  return null;
+              }
+            });
+  }
+
+  private StubSession() {}
+}
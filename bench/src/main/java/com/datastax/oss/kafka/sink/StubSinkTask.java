@@ -0,0 +1,32 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.kafka.sink.state.InstanceState;
+
+/** A task that is not started, and uses the given instance state. */
+class StubSinkTask extends CassandraSinkTask {
+  private final InstanceState instanceState;
+
+  StubSinkTask(InstanceState instanceState) {
+    this.instanceState = instanceState;
+  }
+
+  @Override
+  public InstanceState getInstanceState() {
+    return instanceState;
+  }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.simulacron;
+
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.noRows;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.overloaded;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.when;
+import static com.datastax.oss.simulacron.common.stubbing.PrimeDsl.writeTimeout;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableMap;
+import com.datastax.oss.dsbulk.tests.logging.LogCapture;
+import com.datastax.oss.dsbulk.tests.logging.LogInterceptingExtension;
+import com.datastax.oss.dsbulk.tests.logging.LogInterceptor;
+import com.datastax.oss.dsbulk.tests.simulacron.SimulacronExtension;
+import com.datastax.oss.dsbulk.tests.simulacron.SimulacronUtils;
+import com.datastax.oss.dsbulk.tests.simulacron.SimulacronUtils.Column;
+import com.datastax.oss.dsbulk.tests.simulacron.SimulacronUtils.Table;
+import com.datastax.oss.dsbulk.tests.simulacron.annotations.SimulacronConfig;
+import com.datastax.oss.kafka.sink.CassandraSinkConnector;
+import com.datastax.oss.kafka.sink.CassandraSinkTask;
+import com.datastax.oss.kafka.sink.state.LifeCycleManager;
+import com.datastax.oss.simulacron.common.codec.ConsistencyLevel;
+import com.datastax.oss.simulacron.common.codec.WriteType;
+import com.datastax.oss.simulacron.common.request.Query;
+import com.datastax.oss.simulacron.common.result.Result;
+import com.datastax.oss.simulacron.server.BoundCluster;
+import com.datastax.oss.simulacron.server.BoundNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.apache.kafka.connect.sink.SinkTaskContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Scripted fault scenarios: the nodes of a simulated cluster become slow or return errors for a
+ * while, then recover, and the task is driven like the Connect framework would, re-delivering the
+ * records from the offsets the task asks to retry. The records per second, replayed records, offset
+ * rewinds and recovery time of each phase are written as JSON to the directory given by the
+ * degradation.resultsDirectory system property, target/degradation by default, to compare connector
+ * versions.
+ */
+@ExtendWith(SimulacronExtension.class)
+@ExtendWith(LogInterceptingExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SimulacronConfig(dseVersion = "5.0.8", numberOfNodes = 3)
+class DegradationSimulacronIT {
+
+  private static final String INSERT_STATEMENT =
+      "INSERT INTO ks1.table1(a,b) VALUES (:a,:b) USING TIMESTAMP :kafka_internal_timestamp";
+  private static final ImmutableMap<String, String> PARAM_TYPES =
+      ImmutableMap.<String, String>builder()
+          .put("a", "int")
+          .put("b", "varchar")
+          .put("kafka_internal_timestamp", "bigint")
+          .build();
+  // Without parameters, the prime matches all the values bound to the statement.
+  private static final Query INSERT =
+      new Query(INSERT_STATEMENT, Collections.emptyList(), Collections.emptyMap(), PARAM_TYPES);
+  private static final TopicPartition TOPIC_PARTITION = new TopicPartition("mytopic", 0);
+  private static final int RECORDS_PER_PUT = 200;
+
+  private final BoundCluster simulacron;
+  private final SimulacronUtils.Keyspace schema;
+  private final Map<String, String> connectorProperties;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private CassandraSinkTask task;
+
+  @SuppressWarnings("unused")
+  DegradationSimulacronIT(BoundCluster simulacron, @LogCapture LogInterceptor logs) {
+    this.simulacron = simulacron;
+    InetSocketAddress node = simulacron.dc(0).node(0).inetSocketAddress();
+    schema =
+        new SimulacronUtils.Keyspace(
+            "ks1",
+            new Table("table1", new Column("a", DataTypes.INT), new Column("b", DataTypes.TEXT)));
+    connectorProperties =
+        ImmutableMap.<String, String>builder()
+            .put("name", "degradation")
+            .put("contactPoints", node.getHostName())
+            .put("port", Integer.toString(node.getPort()))
+            .put("loadBalancing.localDc", "dc1")
+            .put("queryExecutionTimeout", "10")
+            .put("topic.mytopic.ks1.table1.mapping", "a=key, b=value")
+            .build();
+  }
+
+  @BeforeEach
+  void resetPrimes() {
+    simulacron.clearPrimes(true);
+    SimulacronUtils.primeTables(simulacron, schema);
+    task = new CassandraSinkTask();
+    task.initialize(mock(SinkTaskContext.class));
+  }
+
+  @AfterEach
+  void stopTask() {
+    task.stop();
+    LifeCycleManager.cleanMetrics();
+  }
+
+  @SuppressWarnings("unused")
+  private static Stream<Scenario> scenarios() {
+    return Stream.of(
+        new Scenario("baseline").phase("healthy", 4000),
+        new Scenario("latency_spike")
+            .phase("healthy", 2000)
+            .phase("spike", 2000, Behavior.slow(300), Behavior.slow(300), Behavior.slow(300))
+            .phase("recovery", 3000),
+        new Scenario("slow_node")
+            .phase("healthy", 2000)
+            .phase("slow", 3000, Behavior.slow(500), Behavior.HEALTHY, Behavior.HEALTHY)
+            .phase("recovery", 3000),
+        new Scenario("overloaded_burst")
+            .phase("healthy", 2000)
+            .phase("burst", 2000, Behavior.OVERLOADED, Behavior.OVERLOADED, Behavior.OVERLOADED)
+            .phase("recovery", 3000),
+        new Scenario("write_timeout_burst")
+            .phase("healthy", 2000)
+            .phase("burst", 2000, Behavior.WRITE_TIMEOUT, Behavior.HEALTHY, Behavior.HEALTHY)
+            .phase("recovery", 3000));
+  }
+
+  @ParameterizedTest(name = "[{index}] {0}")
+  @MethodSource("scenarios")
+  void should_recover_from_degradation(Scenario scenario) throws IOException {
+    task.start(connectorProperties);
+    List<PhaseResult> results = new ArrayList<>();
+    // The offset of the next record to deliver, and the offset after the last delivered record.
+    long position = 0;
+    long delivered = 0;
+    for (Phase phase : scenario.phases) {
+      for (int i = 0; i < phase.behaviors.length; i++) {
+        phase.behaviors[i].apply(simulacron.dc(0).node(i));
+      }
+      PhaseResult result = new PhaseResult(phase);
+      long start = System.nanoTime();
+      long end = start + MILLISECONDS.toNanos(phase.durationMillis);
+      long phaseStartPosition = position;
+      while (System.nanoTime() < end) {
+        long next = position + RECORDS_PER_PUT;
+        List<SinkRecord> records = new ArrayList<>(RECORDS_PER_PUT);
+        for (long offset = position; offset < next; offset++) {
+          records.add(makeRecord(offset));
+        }
+        result.replayedRecords += Math.max(0, Math.min(delivered, next) - position);
+        delivered = Math.max(delivered, next);
+        task.put(records);
+        result.puts++;
+        OffsetAndMetadata failure = task.preCommit(new HashMap<>()).get(TOPIC_PARTITION);
+        if (failure == null) {
+          position = next;
+          if (result.recoveryMillis < 0) {
+            result.recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+          }
+        } else {
+          // Connect would consume the partition again from the failed offset.
+          position = failure.offset();
+          result.offsetRewinds++;
+        }
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      result.records = position - phaseStartPosition;
+      result.recordsPerSecond = result.records / seconds;
+      results.add(result);
+    }
+    writeResults(scenario, results);
+
+    PhaseResult last = results.get(results.size() - 1);
+    assertThat(last.records).isPositive();
+    assertThat(last.recoveryMillis).isNotNegative();
+    if (scenario.phases.size() == 1) {
+      assertThat(last.replayedRecords).isZero();
+      assertThat(last.offsetRewinds).isZero();
+    }
+  }
+
+  private void writeResults(Scenario scenario, List<PhaseResult> results) throws IOException {
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("scenario", scenario.name);
+    json.put("connectorVersion", new CassandraSinkConnector().version());
+    json.put("recordsPerPut", RECORDS_PER_PUT);
+    List<Map<String, Object>> phases = new ArrayList<>();
+    for (PhaseResult result : results) {
+      Map<String, Object> phase = new LinkedHashMap<>();
+      phase.put("name", result.phase.name);
+      phase.put("durationMillis", result.phase.durationMillis);
+      phase.put("nodes", Arrays.toString(result.phase.behaviors));
+      phase.put("puts", result.puts);
+      phase.put("records", result.records);
+      phase.put("recordsPerSecond", Math.round(result.recordsPerSecond));
+      phase.put("replayedRecords", result.replayedRecords);
+      phase.put("offsetRewinds", result.offsetRewinds);
+      phase.put("recoveryMillis", result.recoveryMillis);
+      phases.add(phase);
+    }
+    json.put("phases", phases);
+    Path directory =
+        Paths.get(System.getProperty("degradation.resultsDirectory", "target/degradation"));
+    Files.createDirectories(directory);
+    objectMapper
+        .writerWithDefaultPrettyPrinter()
+        .writeValue(directory.resolve(scenario.name + ".json").toFile(), json);
+  }
+
+  private static SinkRecord makeRecord(long offset) {
+    return new SinkRecord(
+        TOPIC_PARTITION.topic(),
+        TOPIC_PARTITION.partition(),
+        null,
+        (int) offset,
+        null,
+        "value " + offset,
+        offset,
+        153000987L,
+        TimestampType.CREATE_TIME);
+  }
+
+  /** How a node answers writes. */
+  private static class Behavior {
+    static final Behavior HEALTHY = new Behavior("healthy", 0, noRows());
+    static final Behavior OVERLOADED = new Behavior("overloaded", 0, overloaded("overloaded"));
+    static final Behavior WRITE_TIMEOUT =
+        new Behavior(
+            "write_timeout", 0, writeTimeout(ConsistencyLevel.LOCAL_ONE, 0, 1, WriteType.SIMPLE));
+
+    private final String name;
+    private final long latencyMillis;
+    private final Result result;
+
+    private Behavior(String name, long latencyMillis, Result result) {
+      this.name = name;
+      this.latencyMillis = latencyMillis;
+      this.result = result;
+    }
+
+    static Behavior slow(long latencyMillis) {
+      return new Behavior("slow_" + latencyMillis + "ms", latencyMillis, noRows());
+    }
+
+    void apply(BoundNode node) {
+      node.clearPrimes(false);
+      node.prime(when(INSERT).then(result).delay(latencyMillis, MILLISECONDS));
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** A period during which each node has a given behavior. */
+  private static class Phase {
+    private final String name;
+    private final long durationMillis;
+    private final Behavior[] behaviors;
+
+    private Phase(String name, long durationMillis, Behavior[] behaviors) {
+      this.name = name;
+      this.durationMillis = durationMillis;
+      this.behaviors = behaviors;
+    }
+  }
+
+  /** A sequence of phases; phases without behaviors have healthy nodes. */
+  private static class Scenario {
+    private final String name;
+    private final List<Phase> phases = new ArrayList<>();
+
+    private Scenario(String name) {
+      this.name = name;
+    }
+
+    private Scenario phase(String name, long durationMillis, Behavior... behaviors) {
+      Behavior[] nodes = {Behavior.HEALTHY, Behavior.HEALTHY, Behavior.HEALTHY};
+      System.arraycopy(behaviors, 0, nodes, 0, behaviors.length);
+      phases.add(new Phase(name, durationMillis, nodes));
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /** The measurements of a phase. */
+  private static class PhaseResult {
+    private final Phase phase;
+    private long puts;
+    private long records;
+    private double recordsPerSecond;
+    private long replayedRecords;
+    private long offsetRewinds;
+    // The time until the first put without failures, -1 if all puts failed.
+    private long recoveryMillis = -1;
+
+    private PhaseResult(Phase phase) {
+      this.phase = phase;
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.datastax.oss.kafka.sink;
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
 import com.datastax.oss.driver.api.core.ProtocolVersion;
 import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BatchStatement;
@@ -27,7 +28,9 @@ import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
 import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
 import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableList;
 import com.datastax.oss.dsbulk.sampler.DataSizes;
+import com.datastax.oss.kafka.sink.metrics.FlightRecorderEvent;
 import com.datastax.oss.kafka.sink.record.RecordAndStatement;
+import com.datastax.oss.kafka.sink.record.RecordHandle;
 import com.datastax.oss.kafka.sink.state.InstanceState;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.nio.ByteBuffer;
@@ -38,11 +41,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import org.apache.kafka.connect.sink.SinkRecord;
 
 /**
  * Runnable class that pulls [sink-record, bound-statement] pairs from a queue and groups them based
@@ -51,7 +55,8 @@ import org.apache.kafka.connect.sink.SinkRecord;
  * BoundStatements will be added to the queue.
  */
 class BoundStatementProcessor implements Callable<Void> {
-  private static final RecordAndStatement END_STATEMENT = new RecordAndStatement(null, null, null);
+  private static final RecordAndStatement END_STATEMENT =
+      new RecordAndStatement((RecordHandle) null, null, null);
   private final CassandraSinkTask task;
   private final BlockingQueue<RecordAndStatement> boundStatementsQueue;
   private final Collection<CompletionStage<? extends AsyncResultSet>> queryFutures;
@@ -59,6 +64,14 @@ class BoundStatementProcessor implements Callable<Void> {
   private final AtomicInteger successfulRecordCount = new AtomicInteger();
   private final ProtocolVersion protocolVersion;
   private final CodecRegistry codecRegistry;
+  private final int batchSizeInBytesSamplingInterval;
+  private final boolean dryRun;
+  private final boolean batchAcrossTables;
+  /** The statements taken from the queue and not yet processed. */
+  private final List<RecordAndStatement> available = new ArrayList<>();
+
+  private int statementsSinceLastSizeSample;
+  private boolean ended;
 
   BoundStatementProcessor(
       CassandraSinkTask task,
@@ -71,6 +84,10 @@ class BoundStatementProcessor implements Callable<Void> {
     this.maxNumberOfRecordsInBatch = maxNumberOfRecordsInBatch;
     this.protocolVersion = task.getInstanceState().getProtocolVersion();
     this.codecRegistry = task.getInstanceState().getCodecRegistry();
+    this.batchSizeInBytesSamplingInterval =
+        Math.max(1, task.getInstanceState().getBatchSizeInBytesSamplingInterval());
+    this.dryRun = task.getInstanceState().isDryRun();
+    this.batchAcrossTables = task.getInstanceState().isBatchAcrossTables();
   }
 
   /**
@@ -87,22 +104,22 @@ class BoundStatementProcessor implements Callable<Void> {
     }
 
     RecordAndStatement firstStatement = statements.get(0);
+    String topic = firstStatement.getRecordHandle().topic();
+    String keyspaceAndTable = firstStatement.getKeyspaceAndTable();
     InstanceState instanceState = task.getInstanceState();
-    Histogram batchSizeHistogram =
-        instanceState.getBatchSizeHistogram(
-            firstStatement.getRecord().topic(), firstStatement.getKeyspaceAndTable());
+    Histogram batchSizeHistogram = instanceState.getBatchSizeHistogram(topic, keyspaceAndTable);
     Histogram batchSizeInBytesHistogram =
-        instanceState.getBatchSizeInBytesHistogram(
-            firstStatement.getRecord().topic(), firstStatement.getKeyspaceAndTable());
+        instanceState.getBatchSizeInBytesHistogram(topic, keyspaceAndTable);
 
     Consumer<Integer> recordIncrement =
-        v ->
-            instanceState.incrementRecordCounter(
-                firstStatement.getRecord().topic(), firstStatement.getKeyspaceAndTable(), v);
+        v -> instanceState.incrementRecordCounter(topic, keyspaceAndTable, v);
     Runnable failedRecordIncrement =
-        () ->
-            instanceState.incrementFailedCounter(
-                firstStatement.getRecord().topic(), firstStatement.getKeyspaceAndTable());
+        () -> instanceState.incrementFailedCounter(topic, keyspaceAndTable);
+    // Only when batching across tables may the statements be for different tables; the batch
+    // metrics are then recorded for the table of the first one, and record counts for each.
+    boolean singleTable =
+        !batchAcrossTables
+            || statements.stream().allMatch(s -> keyspaceAndTable.equals(s.getKeyspaceAndTable()));
 
     if (statements.size() == 1) {
       statement = firstStatement.getStatement();
@@ -117,27 +134,72 @@ class BoundStatementProcessor implements Callable<Void> {
       updateBatchSizeMetrics(statements, batchSizeHistogram, batchSizeInBytesHistogram);
     }
     @NonNull Semaphore requestBarrier = instanceState.getRequestBarrier();
-    requestBarrier.acquireUninterruptibly();
-    CompletionStage<? extends AsyncResultSet> future =
-        instanceState.getSession().executeAsync(statement);
+    long barrierStart = System.nanoTime();
+    if (!requestBarrier.tryAcquire()) {
+      Object waitEvent = FlightRecorderEvent.REQUEST_BARRIER_WAIT.begin();
+      requestBarrier.acquireUninterruptibly();
+      if (waitEvent != null) {
+        FlightRecorderEvent.REQUEST_BARRIER_WAIT.commit(waitEvent, topic, keyspaceAndTable);
+      }
+    }
+    long executeStart = System.nanoTime();
+    instanceState
+        .getRequestBarrierWaitTimer(topic, keyspaceAndTable)
+        .update(executeStart - barrierStart, TimeUnit.NANOSECONDS);
+    Timer executeTimer = instanceState.getExecuteTimer(topic, keyspaceAndTable);
+    Object batchEvent = FlightRecorderEvent.BATCH.begin();
+    // In dry-run mode, computing the size stands for encoding the statement, as it walks all its
+    // values.
+    long batchBytes =
+        batchEvent == null && !dryRun
+            ? -1
+            : DataSizes.getDataSize(statement, protocolVersion, codecRegistry);
+    CompletionStage<? extends AsyncResultSet> future;
+    if (dryRun) {
+      future = CompletableFuture.completedFuture(null);
+    } else {
+      future = instanceState.getSession().executeAsync(statement);
+    }
     queryFutures.add(
         future.whenComplete(
             (result, ex) -> {
+              executeTimer.update(System.nanoTime() - executeStart, TimeUnit.NANOSECONDS);
               requestBarrier.release();
+              if (batchEvent != null) {
+                FlightRecorderEvent.BATCH.commit(
+                    batchEvent, topic, keyspaceAndTable, statements.size(), batchBytes, ex == null);
+              }
+              // Nothing is written in dry-run mode: the written offsets must not move.
+              statements.forEach(
+                  s ->
+                      instanceState.recordWriteCompleted(
+                          s.getRecordHandle(), ex == null && !dryRun));
               if (ex != null) {
                 statements.forEach(
                     recordAndStatement -> {
-                      SinkRecord record = recordAndStatement.getRecord();
+                      RecordHandle record = recordAndStatement.getRecordHandle();
                       task.handleFailure(
                           record,
                           ex,
                           recordAndStatement.getStatement().getPreparedStatement().getQuery(),
-                          failedRecordIncrement);
+                          singleTable
+                              ? failedRecordIncrement
+                              : () ->
+                                  instanceState.incrementFailedCounter(
+                                      topic, recordAndStatement.getKeyspaceAndTable()));
                     });
               } else {
+                if (!dryRun) {
+                  statements.forEach(RecordAndStatement::written);
+                }
                 successfulRecordCount.addAndGet(statements.size());
               }
-              recordIncrement.accept(statements.size());
+              if (singleTable) {
+                recordIncrement.accept(statements.size());
+              } else {
+                statements.forEach(
+                    s -> instanceState.incrementRecordCounter(topic, s.getKeyspaceAndTable(), 1));
+              }
             }));
   }
 
@@ -145,69 +207,118 @@ class BoundStatementProcessor implements Callable<Void> {
       List<RecordAndStatement> statements,
       Histogram batchSizeHistogram,
       Histogram batchSizeInBytesHistogram) {
-    statements.forEach(
-        s ->
-            batchSizeInBytesHistogram.update(
-                DataSizes.getDataSize(s.getStatement(), protocolVersion, codecRegistry)));
+    for (RecordAndStatement s : statements) {
+      if (shouldSampleSize()) {
+        batchSizeInBytesHistogram.update(
+            DataSizes.getDataSize(s.getStatement(), protocolVersion, codecRegistry));
+      }
+    }
     batchSizeHistogram.update(statements.size());
   }
 
   private void updateBatchSizeMetrics(
       Statement<?> statement, Histogram batchSizeHistogram, Histogram batchSizeInBytesHistogram) {
-    batchSizeInBytesHistogram.update(
-        DataSizes.getDataSize(statement, protocolVersion, codecRegistry));
+    if (shouldSampleSize()) {
+      batchSizeInBytesHistogram.update(
+          DataSizes.getDataSize(statement, protocolVersion, codecRegistry));
+    }
     batchSizeHistogram.update(1);
   }
 
+  /**
+   * Computing the size of a statement walks all of its values, so it is only done for one statement
+   * out of batchSizeInBytesSamplingInterval. As sizes are recorded per statement, sampling doesn't
+   * bias the distribution.
+   */
+  private boolean shouldSampleSize() {
+    if (++statementsSinceLastSizeSample < batchSizeInBytesSamplingInterval) {
+      return false;
+    }
+    statementsSinceLastSizeSample = 0;
+    return true;
+  }
+
   int getSuccessfulRecordCount() {
     return successfulRecordCount.get();
   }
 
   @Override
   public Void call() throws InterruptedException {
-    runLoop(this::executeStatements);
+    runToEnd(this::executeStatements);
     return null;
   }
 
+  @VisibleForTesting
+  void runToEnd(Consumer<List<RecordAndStatement>> consumer) throws InterruptedException {
+    try {
+      runLoop(consumer);
+    } catch (RuntimeException | Error e) {
+      // The end marker may have been taken already, along with the statement that failed.
+      ended = ended || available.contains(END_STATEMENT);
+      // The queue may be bounded: keep consuming so that the producers don't block forever.
+      while (!ended) {
+        ended = boundStatementsQueue.take() == END_STATEMENT;
+      }
+      throw e;
+    }
+  }
+
   @VisibleForTesting
   void runLoop(Consumer<List<RecordAndStatement>> consumer) throws InterruptedException {
     // Map of <topic, map<partition-key, list<recordAndStatement>>
     Map<String, Map<ByteBuffer, List<RecordAndStatement>>> statementGroups = new HashMap<>();
+    InstanceState instanceState = task.getInstanceState();
+    available.clear();
     while (true) {
 
       // Note: this call may block indefinitely if stop() is never called.
       // It is the producer's responsibility to call stop() when there are no more records
       // to process.
-      RecordAndStatement recordAndStatement = boundStatementsQueue.take();
-
-      if (recordAndStatement == END_STATEMENT) {
-        // There are no more bound-statements being produced.
-        // Create and execute remaining statement groups,
-        // creating BatchStatement's when a group has more than
-        // one BoundStatement.
-        statementGroups
-            .values()
-            .stream()
-            .map(Map::values)
-            .flatMap(Collection::stream)
-            .filter(recordAndStatements -> !recordAndStatements.isEmpty())
-            .map(ImmutableList::copyOf)
-            .forEach(consumer);
-        return;
-      }
+      available.add(boundStatementsQueue.take());
+      // Then take everything else already queued at once.
+      boundStatementsQueue.drainTo(available);
+      long busyStart = System.nanoTime();
+
+      for (RecordAndStatement recordAndStatement : available) {
+        if (recordAndStatement == END_STATEMENT) {
+          ended = true;
+          // There are no more bound-statements being produced.
+          // Create and execute remaining statement groups,
+          // creating BatchStatement's when a group has more than
+          // one BoundStatement.
+          statementGroups
+              .values()
+              .stream()
+              .map(Map::values)
+              .flatMap(Collection::stream)
+              .filter(recordAndStatements -> !recordAndStatements.isEmpty())
+              .map(ImmutableList::copyOf)
+              .forEach(consumer);
+          instanceState.recordProcessorBusyTime(System.nanoTime() - busyStart);
+          return;
+        }
 
-      // Get the routing-key and add this statement to the appropriate
-      // statement group. A statement group contains collections of
-      // bound statements for a particular table. Each collection contains
-      // statements for a particular routing key (a representation of partition key).
-
-      List<RecordAndStatement> recordsAndStatements =
-          categorizeStatement(statementGroups, recordAndStatement);
-      if (recordsAndStatements.size() == maxNumberOfRecordsInBatch) {
-        // We're ready to send out a batch request!
-        consumer.accept(ImmutableList.copyOf(recordsAndStatements));
-        recordsAndStatements.clear();
+        instanceState
+            .getQueueWaitTimer(
+                recordAndStatement.getRecordHandle().topic(),
+                recordAndStatement.getKeyspaceAndTable())
+            .update(busyStart - recordAndStatement.getCreatedNanos(), TimeUnit.NANOSECONDS);
+
+        // Get the routing-key and add this statement to the appropriate
+        // statement group. A statement group contains collections of
+        // bound statements for a particular table. Each collection contains
+        // statements for a particular routing key (a representation of partition key).
+
+        List<RecordAndStatement> recordsAndStatements =
+            categorizeStatement(statementGroups, recordAndStatement);
+        if (recordsAndStatements.size() == maxNumberOfRecordsInBatch) {
+          // We're ready to send out a batch request!
+          consumer.accept(ImmutableList.copyOf(recordsAndStatements));
+          recordsAndStatements.clear();
+        }
       }
+      available.clear();
+      instanceState.recordProcessorBusyTime(System.nanoTime() - busyStart);
     }
   }
 
@@ -225,22 +336,66 @@ class BoundStatementProcessor implements Callable<Void> {
       Map<String, Map<ByteBuffer, List<RecordAndStatement>>> statementGroups,
       RecordAndStatement recordAndStatement) {
     BoundStatement statement = recordAndStatement.getStatement();
-    SinkRecord sinkRecord = recordAndStatement.getRecord();
+    RecordHandle recordHandle = recordAndStatement.getRecordHandle();
     ByteBuffer routingKey = statement.getRoutingKey();
     Map<ByteBuffer, List<RecordAndStatement>> statementGroup =
         statementGroups.computeIfAbsent(
-            makeGroupKey(recordAndStatement, sinkRecord), t -> new HashMap<>());
+            makeGroupKey(recordAndStatement, recordHandle), t -> new HashMap<>());
     List<RecordAndStatement> recordsAndStatements =
         statementGroup.computeIfAbsent(routingKey, t -> new ArrayList<>());
     recordsAndStatements.add(recordAndStatement);
     return recordsAndStatements;
   }
 
-  private static String makeGroupKey(RecordAndStatement recordAndStatement, SinkRecord sinkRecord) {
-    return String.format("%s.%s", sinkRecord.topic(), recordAndStatement.getKeyspaceAndTable());
+  private String makeGroupKey(RecordAndStatement recordAndStatement, RecordHandle recordHandle) {
+    if (batchAcrossTables) {
+      // A batch takes the consistency level of its first statement.
+      return String.format(
+          "%s.%s.%s",
+          recordHandle.topic(),
+          keyspaceOf(recordAndStatement.getKeyspaceAndTable()),
+          recordAndStatement.getStatement().getConsistencyLevel());
+    }
+    return String.format("%s.%s", recordHandle.topic(), recordAndStatement.getKeyspaceAndTable());
+  }
+
+  /**
+   * @param keyspaceAndTable the CQL keyspace and table names, separated by a dot
+   * @return the keyspace name, as CQL
+   */
+  @VisibleForTesting
+  static String keyspaceOf(String keyspaceAndTable) {
+    int length = keyspaceAndTable.length();
+    if (keyspaceAndTable.startsWith("\"")) {
+      // A quoted identifier may contain dots, and double quotes escaped by doubling them.
+      for (int i = 1; i < length; i++) {
+        if (keyspaceAndTable.charAt(i) == '"') {
+          if (i + 1 < length && keyspaceAndTable.charAt(i + 1) == '"') {
+            i++;
+          } else {
+            return keyspaceAndTable.substring(0, i + 1);
+          }
+        }
+      }
+      return keyspaceAndTable;
+    }
+    int dot = keyspaceAndTable.indexOf('.');
+    return dot < 0 ? keyspaceAndTable : keyspaceAndTable.substring(0, dot);
   }
 
   void stop() {
-    boundStatementsQueue.add(END_STATEMENT);
+    boolean interrupted = false;
+    while (true) {
+      try {
+        // Waits for room if the queue is bounded and full.
+        boundStatementsQueue.put(END_STATEMENT);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
   }
 }
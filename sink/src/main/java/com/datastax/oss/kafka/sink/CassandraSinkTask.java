@@ -15,29 +15,40 @@
  */
 package com.datastax.oss.kafka.sink;
 
+import com.codahale.metrics.Timer;
 import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
 import com.datastax.oss.driver.shaded.guava.common.util.concurrent.ThreadFactoryBuilder;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
 import com.datastax.oss.kafka.sink.config.CassandraSinkConfig.IgnoreErrorsPolicy;
 import com.datastax.oss.kafka.sink.config.TableConfig;
 import com.datastax.oss.kafka.sink.config.TopicConfig;
 import com.datastax.oss.kafka.sink.metadata.InnerDataAndMetadata;
 import com.datastax.oss.kafka.sink.metadata.MetadataCreator;
+import com.datastax.oss.kafka.sink.metrics.FlightRecorderEvent;
 import com.datastax.oss.kafka.sink.record.HeadersDataMetadata;
 import com.datastax.oss.kafka.sink.record.KeyValueRecord;
 import com.datastax.oss.kafka.sink.record.KeyValueRecordMetadata;
 import com.datastax.oss.kafka.sink.record.RecordAndStatement;
+import com.datastax.oss.kafka.sink.record.RecordHandle;
 import com.datastax.oss.kafka.sink.state.InstanceState;
 import com.datastax.oss.kafka.sink.state.LifeCycleManager;
+import com.datastax.oss.kafka.sink.state.UnchangedRowCache;
+import com.datastax.oss.kafka.sink.util.MpscRingBuffer;
+import com.datastax.oss.kafka.sink.util.VirtualThreads;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -45,8 +56,11 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.stream.Collectors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.errors.RetriableException;
@@ -62,14 +76,21 @@ import org.slf4j.LoggerFactory;
  */
 public class CassandraSinkTask extends SinkTask {
   private static final Runnable NO_OP = () -> {};
+
+  /** The minimum number of records mapped by a mapping thread in a call to {@link #put}. */
+  @VisibleForTesting static final int MIN_RECORDS_PER_MAPPING_CHUNK = 64;
+
   private static final Logger log = LoggerFactory.getLogger(CassandraSinkTask.class);
-  private final ExecutorService boundStatementProcessorService =
-      Executors.newFixedThreadPool(
-          1, new ThreadFactoryBuilder().setNameFormat("bound-statement-processor-%d").build());
+  private ExecutorService boundStatementProcessorService;
+  private BlockingQueue<RecordAndStatement> boundStatementsQueue;
+  private int failedRecordLogSamplingInterval;
   private InstanceState instanceState;
   private Map<TopicPartition, OffsetAndMetadata> failureOffsets;
   private TaskStateManager taskStateManager;
 
+  /** The aggregator of each table configured with an aggregateWindow. */
+  private Map<TableConfig, RollupAggregator> aggregators = Collections.emptyMap();
+
   @Override
   public String version() {
     return new CassandraSinkConnector().version();
@@ -81,6 +102,55 @@ public class CassandraSinkTask extends SinkTask {
     taskStateManager = new TaskStateManager();
     failureOffsets = new ConcurrentHashMap<>();
     instanceState = LifeCycleManager.startTask(this, props);
+    boundStatementProcessorService =
+        newBoundStatementProcessorService(instanceState.getConfig().isVirtualThreads());
+    boundStatementsQueue = newBoundStatementsQueue(instanceState.getConfig());
+    failedRecordLogSamplingInterval =
+        instanceState.getConfig().getFailedRecordLogSamplingInterval();
+    aggregators = newAggregators(instanceState.getConfig());
+  }
+
+  private static Map<TableConfig, RollupAggregator> newAggregators(CassandraSinkConfig config) {
+    Map<TableConfig, RollupAggregator> aggregators = new HashMap<>();
+    for (TopicConfig topicConfig : config.getTopicConfigs().values()) {
+      for (TableConfig tableConfig : topicConfig.getTableConfigs()) {
+        if (tableConfig.isAggregated()) {
+          aggregators.put(tableConfig, new RollupAggregator(tableConfig));
+        }
+      }
+    }
+    return aggregators.isEmpty() ? Collections.emptyMap() : aggregators;
+  }
+
+  /**
+   * @return the queue between the mapping threads and the statement processor, reused by every
+   *     put()
+   */
+  private static BlockingQueue<RecordAndStatement> newBoundStatementsQueue(
+      CassandraSinkConfig config) {
+    return new MpscRingBuffer<>(
+        config.getStatementQueueCapacity(), config.getStatementQueueWaitStrategy());
+  }
+
+  /**
+   * @param virtualThreads whether to run the processors on virtual threads, if supported
+   * @return a thread per processor if virtual threads are used, or a single platform thread reused
+   *     by all the processors of this task
+   */
+  private static ExecutorService newBoundStatementProcessorService(boolean virtualThreads) {
+    ThreadFactory virtualThreadFactory =
+        virtualThreads ? VirtualThreads.newThreadFactory("bound-statement-processor-") : null;
+    if (virtualThreadFactory != null) {
+      return new ThreadPoolExecutor(
+          0,
+          Integer.MAX_VALUE,
+          0L,
+          TimeUnit.MILLISECONDS,
+          new SynchronousQueue<>(),
+          virtualThreadFactory);
+    }
+    return Executors.newFixedThreadPool(
+        1, new ThreadFactoryBuilder().setNameFormat("bound-statement-processor-%d").build());
   }
 
   /**
@@ -88,18 +158,74 @@ public class CassandraSinkTask extends SinkTask {
    * 10 seconds. This is the task's opportunity to report failed record offsets and keeping the sink
    * from progressing on a particular topic.
    *
+   * <p>Records that are aggregated into rows not written yet hold back the offsets of their
+   * partitions as well.
+   *
    * @param currentOffsets map of offsets (one offset for each topic)
    * @return the map, mutated to have failure offsets recorded in it
    */
   @Override
   public Map<TopicPartition, OffsetAndMetadata> preCommit(
       Map<TopicPartition, OffsetAndMetadata> currentOffsets) {
+    if (instanceState.isDryRun()) {
+      // Nothing was written: a later run must consume the records again.
+      return Collections.emptyMap();
+    }
     // Copy all of the failures (which point to the offset that we should retrieve from next time)
     // into currentOffsets.
     currentOffsets.putAll(failureOffsets);
+    for (RollupAggregator aggregator : aggregators.values()) {
+      aggregator
+          .pendingOffsets()
+          .forEach(
+              (topicPartition, offset) ->
+                  currentOffsets.computeIfPresent(
+                      topicPartition,
+                      (tp, current) ->
+                          offset < current.offset() ? new OffsetAndMetadata(offset) : current));
+    }
     return currentOffsets;
   }
 
+  /**
+   * Drop the rows being aggregated with records of the revoked partitions, since these records will
+   * be replayed by the task they are assigned to. Should a dropped row have records of partitions
+   * kept by this task, rewind them to its first record.
+   *
+   * @param partitions the revoked partitions
+   */
+  @Override
+  public void close(Collection<TopicPartition> partitions) {
+    for (RollupAggregator aggregator : aggregators.values()) {
+      rewindAggregatedRecords(aggregator.drop(partitions), partitions);
+    }
+  }
+
+  /**
+   * Settle the aggregated rows written by a put. If any write of the put failed, the failed records
+   * are replayed: the aggregated rows skip the records they absorbed already, and write their
+   * aggregates again.
+   */
+  private void settleAggregatedRows() {
+    boolean failed = !failureOffsets.isEmpty();
+    for (RollupAggregator aggregator : aggregators.values()) {
+      aggregator.settle(failed);
+    }
+  }
+
+  private synchronized void rewindAggregatedRecords(
+      Map<TopicPartition, Long> offsets, Collection<TopicPartition> revokedPartitions) {
+    offsets.forEach(
+        (topicPartition, offset) -> {
+          OffsetAndMetadata failureOffset = failureOffsets.get(topicPartition);
+          if (!revokedPartitions.contains(topicPartition)
+              && (failureOffset == null || offset < failureOffset.offset())) {
+            failureOffsets.put(topicPartition, new OffsetAndMetadata(offset));
+            context.offset(topicPartition, offset);
+          }
+        });
+  }
+
   /**
    * Entry point for record processing.
    *
@@ -119,31 +245,30 @@ public class CassandraSinkTask extends SinkTask {
           failureOffsets.clear();
 
           Instant start = Instant.now();
-          List<CompletableFuture<Void>> mappingFutures;
+          Timer.Context putDuration = instanceState.getPutDurationTimer().time();
+          Object putEvent = FlightRecorderEvent.PUT.begin();
           Collection<CompletionStage<? extends AsyncResultSet>> queryFutures =
               new ConcurrentLinkedQueue<>();
-          BlockingQueue<RecordAndStatement> boundStatementsQueue = new LinkedBlockingQueue<>();
+          BlockingQueue<RecordAndStatement> boundStatementsQueue = this.boundStatementsQueue;
           BoundStatementProcessor boundStatementProcessor =
               new BoundStatementProcessor(
                   this,
                   boundStatementsQueue,
                   queryFutures,
                   instanceState.getMaxNumberOfRecordsInBatch());
+          instanceState.addBoundStatementsQueue(boundStatementsQueue);
+          boolean queued = false;
           try {
             Future<?> boundStatementProcessorTask =
                 boundStatementProcessorService.submit(boundStatementProcessor);
-            mappingFutures =
-                sinkRecords
-                    .stream()
-                    .map(
-                        record ->
-                            CompletableFuture.runAsync(
-                                () -> mapAndQueueRecord(boundStatementsQueue, record),
-                                instanceState.getMappingExecutor()))
-                    .collect(Collectors.toList());
-
             try {
-              CompletableFuture.allOf(mappingFutures.toArray(new CompletableFuture[0])).join();
+              mapAndQueueRecords(boundStatementsQueue, sinkRecords);
+              for (RollupAggregator aggregator : aggregators.values()) {
+                for (RecordAndStatement row : aggregator.flushClosedWindows()) {
+                  queueWrite(boundStatementsQueue, row);
+                }
+              }
+              queued = true;
             } finally {
               boundStatementProcessor.stop();
             }
@@ -165,6 +290,8 @@ public class CassandraSinkTask extends SinkTask {
               }
             }
 
+            settleAggregatedRows();
+
             Instant end = Instant.now();
             long ms = Duration.between(start, end).toMillis();
             log.debug(
@@ -173,7 +300,18 @@ public class CassandraSinkTask extends SinkTask {
                 sinkRecords.size(),
                 ms);
           } catch (InterruptedException e) {
-            boundStatementProcessor.stop();
+            // The processor was stopped already, and may still be running: give the next put a
+            // queue of its own.
+            this.boundStatementsQueue = newBoundStatementsQueue(instanceState.getConfig());
+            for (RollupAggregator aggregator : aggregators.values()) {
+              if (queued) {
+                // All the records were aggregated, but the writes may not complete.
+                aggregator.settle(true);
+              } else {
+                // Some records may not be aggregated: replay the records of all the rows.
+                rewindAggregatedRecords(aggregator.reset(), Collections.emptySet());
+              }
+            }
             queryFutures.forEach(
                 f -> {
                   f.toCompletableFuture().cancel(true);
@@ -185,6 +323,15 @@ public class CassandraSinkTask extends SinkTask {
                 });
 
             throw new RetriableException("Interrupted while issuing queries");
+          } finally {
+            instanceState.removeBoundStatementsQueue(boundStatementsQueue);
+            putDuration.stop();
+            if (putEvent != null) {
+              FlightRecorderEvent.PUT.commit(
+                  putEvent,
+                  sinkRecords.size(),
+                  sinkRecords.size() - boundStatementProcessor.getSuccessfulRecordCount());
+            }
           }
         });
   }
@@ -192,7 +339,13 @@ public class CassandraSinkTask extends SinkTask {
   @Override
   public void stop() {
     taskStateManager.toStopTransitionLogic(
-        NO_OP, () -> LifeCycleManager.stopTask(this.instanceState, this));
+        NO_OP,
+        () -> {
+          LifeCycleManager.stopTask(this.instanceState, this);
+          if (boundStatementProcessorService != null) {
+            boundStatementProcessorService.shutdown();
+          }
+        });
   }
 
   @VisibleForTesting
@@ -200,25 +353,94 @@ public class CassandraSinkTask extends SinkTask {
     return instanceState;
   }
 
+  /**
+   * Map the given Kafka records and add the resulting {@link BoundStatement}'s to the given queue.
+   * The records are split into contiguous chunks, one per mapping thread available to this instance
+   * and of at least {@link #MIN_RECORDS_PER_MAPPING_CHUNK} records; all the chunks but the last are
+   * mapped by the mapping executor, the last one on the calling thread. Polls too small for two
+   * chunks are thus mapped without any hand-off.
+   *
+   * @param boundStatementsQueue the queue that processes {@link RecordAndStatement}'s
+   * @param sinkRecords the {@link SinkRecord}'s to map
+   * @throws InterruptedException if a thread is interrupted while waiting for room in the queue
+   */
+  @VisibleForTesting
+  void mapAndQueueRecords(
+      BlockingQueue<RecordAndStatement> boundStatementsQueue, Collection<SinkRecord> sinkRecords)
+      throws InterruptedException {
+    List<SinkRecord> records =
+        sinkRecords instanceof List ? (List<SinkRecord>) sinkRecords : new ArrayList<>(sinkRecords);
+    int size = records.size();
+    int chunks =
+        Math.min(instanceState.getMappingParallelism(), size / MIN_RECORDS_PER_MAPPING_CHUNK);
+    if (chunks <= 1) {
+      mapAndQueueChunk(boundStatementsQueue, records);
+      return;
+    }
+    CompletableFuture<?>[] chunkFutures = new CompletableFuture<?>[chunks - 1];
+    for (int i = 0; i < chunks - 1; i++) {
+      List<SinkRecord> chunk = records.subList(size * i / chunks, size * (i + 1) / chunks);
+      chunkFutures[i] =
+          CompletableFuture.runAsync(
+              () -> {
+                try {
+                  mapAndQueueChunk(boundStatementsQueue, chunk);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                  throw new CompletionException(e);
+                }
+              },
+              instanceState.getMappingExecutor());
+    }
+    try {
+      mapAndQueueChunk(boundStatementsQueue, records.subList(size * (chunks - 1) / chunks, size));
+    } finally {
+      try {
+        CompletableFuture.allOf(chunkFutures).join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof InterruptedException) {
+          throw (InterruptedException) e.getCause();
+        }
+        throw e;
+      }
+    }
+  }
+
+  private void mapAndQueueChunk(
+      BlockingQueue<RecordAndStatement> boundStatementsQueue, List<SinkRecord> chunk)
+      throws InterruptedException {
+    for (int i = 0; i < chunk.size(); i++) {
+      mapAndQueueRecord(boundStatementsQueue, chunk.get(i));
+    }
+  }
+
   /**
    * Map the given Kafka record based on its topic and the table mappings. Add result {@link
    * BoundStatement}'s to the given queue for further processing.
    *
    * @param boundStatementsQueue the queue that processes {@link RecordAndStatement}'s
    * @param record the {@link SinkRecord} to map
+   * @throws InterruptedException if interrupted while waiting for room in the queue; the record is
+   *     then not counted as failed, and the interrupt flag is set again
    */
   @VisibleForTesting
-  void mapAndQueueRecord(
-      BlockingQueue<RecordAndStatement> boundStatementsQueue, SinkRecord record) {
+  void mapAndQueueRecord(BlockingQueue<RecordAndStatement> boundStatementsQueue, SinkRecord record)
+      throws InterruptedException {
     try {
       String topicName = record.topic();
       TopicConfig topicConfig = instanceState.getTopicConfig(topicName);
+      RecordHandle recordHandle = null;
+      // The writes of the record to the tables are only queued once it is mapped to all of them, so
+      // that they are all counted before the first one may complete.
+      RecordAndStatement firstWrite = null;
+      List<RecordAndStatement> otherWrites = null;
 
       for (TableConfig tableConfig : topicConfig.getTableConfigs()) {
         Runnable failedRecordIncrement =
             () ->
                 instanceState.incrementFailedCounter(topicName, tableConfig.getKeyspaceAndTable());
         try {
+          long mappingStart = System.nanoTime();
           InnerDataAndMetadata key = MetadataCreator.makeMeta(record.key());
           InnerDataAndMetadata value = MetadataCreator.makeMeta(record.value());
           Headers headers = record.headers();
@@ -227,45 +449,147 @@ public class CassandraSinkTask extends SinkTask {
               new KeyValueRecord(
                   key.getInnerData(), value.getInnerData(), record.timestamp(), headers);
           RecordMapper mapper = instanceState.getRecordMapper(tableConfig);
-          boundStatementsQueue.offer(
+          BoundStatement statement =
+              mapper
+                  .map(
+                      new KeyValueRecordMetadata(
+                          key.getInnerMetadata(),
+                          value.getInnerMetadata(),
+                          new HeadersDataMetadata(headers)),
+                      keyValueRecord)
+                  .setConsistencyLevel(tableConfig.getConsistencyLevel());
+          instanceState
+              .getMappingTimer(topicName, tableConfig.getKeyspaceAndTable())
+              .update(System.nanoTime() - mappingStart, TimeUnit.NANOSECONDS);
+          if (recordHandle == null) {
+            recordHandle = newRecordHandle(record);
+          }
+          RollupAggregator aggregator = aggregators.get(tableConfig);
+          if (aggregator != null) {
+            for (RecordAndStatement row :
+                aggregator.absorb(recordHandle, statement, mapper.getPrimaryKey())) {
+              queueWrite(boundStatementsQueue, row);
+            }
+            continue;
+          }
+          UnchangedRowCache.Candidate unchangedRowCandidate = null;
+          UnchangedRowCache unchangedRowCache = instanceState.getUnchangedRowCache(tableConfig);
+          if (unchangedRowCache != null) {
+            unchangedRowCandidate = unchangedRowCache.check(statement, mapper.getPrimaryKey());
+            if (unchangedRowCandidate == null) {
+              // The last write of the row bound the same values.
+              continue;
+            }
+          }
+          RecordAndStatement write =
               new RecordAndStatement(
-                  record,
+                  recordHandle,
                   tableConfig.getKeyspaceAndTable(),
-                  mapper
-                      .map(
-                          new KeyValueRecordMetadata(
-                              key.getInnerMetadata(),
-                              value.getInnerMetadata(),
-                              new HeadersDataMetadata(headers)),
-                          keyValueRecord)
-                      .setConsistencyLevel(tableConfig.getConsistencyLevel())));
+                  statement,
+                  unchangedRowCandidate);
+          if (firstWrite == null) {
+            firstWrite = write;
+          } else {
+            if (otherWrites == null) {
+              otherWrites = new ArrayList<>();
+            }
+            otherWrites.add(write);
+          }
+        } catch (InterruptedException ex) {
+          // Waiting for room in the queue is not a failure of the record.
+          Thread.currentThread().interrupt();
+          throw ex;
         } catch (Exception ex) {
           // An IOException can theoretically happen when processing json data. But bad json
           // won't result in this exception. We're not pulling data from a file or any other kind of
           // IO.
           // KAF-200: expand failure handling to all runtime and checked exceptions when parsing
           // and mapping records.
-          handleFailure(record, ex, null, failedRecordIncrement);
+          handleFailure(RecordHandle.retaining(record), ex, null, failedRecordIncrement);
+        }
+      }
+      if (firstWrite != null) {
+        int pending = otherWrites == null ? 1 : otherWrites.size() + 1;
+        instanceState.recordWritesQueued(recordHandle, pending);
+        try {
+          // Waits for room if the queue is full.
+          boundStatementsQueue.put(firstWrite);
+          pending--;
+          if (otherWrites != null) {
+            for (RecordAndStatement write : otherWrites) {
+              boundStatementsQueue.put(write);
+              pending--;
+            }
+          }
+        } catch (InterruptedException ex) {
+          abandonWrites(recordHandle, pending);
+          Thread.currentThread().interrupt();
+          throw ex;
         }
       }
+    } catch (InterruptedException e) {
+      throw e;
     } catch (Exception e) {
       // A KafkaException could occur if the record references an unknown topic.
       // Most likely this error can't occur in this application...but we try to protect ourselves
       // anyway just in case.
-      handleFailure(record, e, null, instanceState::incrementFailedWithUnknownTopicCounter);
+      handleFailure(
+          RecordHandle.retaining(record),
+          e,
+          null,
+          instanceState::incrementFailedWithUnknownTopicCounter);
     }
   }
 
+  /**
+   * Queue a single write of a record, such as a rollup row.
+   *
+   * @param boundStatementsQueue the queue that processes {@link RecordAndStatement}'s
+   * @param write the write
+   * @throws InterruptedException if interrupted while waiting for room in the queue
+   */
+  private void queueWrite(
+      BlockingQueue<RecordAndStatement> boundStatementsQueue, RecordAndStatement write)
+      throws InterruptedException {
+    instanceState.recordWritesQueued(write.getRecordHandle(), 1);
+    try {
+      // Waits for room if the queue is full.
+      boundStatementsQueue.put(write);
+    } catch (InterruptedException ex) {
+      abandonWrites(write.getRecordHandle(), 1);
+      throw ex;
+    }
+  }
+
+  /** Complete as failed the given number of counted writes that could not be queued. */
+  private void abandonWrites(RecordHandle recordHandle, int count) {
+    for (int i = 0; i < count; i++) {
+      instanceState.recordWriteCompleted(recordHandle, false);
+    }
+  }
+
+  /**
+   * @return a handle of the given record, which keeps the whole record for one record out of
+   *     failedRecordLogSamplingInterval, so that it is logged in full should its write fail
+   */
+  private RecordHandle newRecordHandle(SinkRecord record) {
+    int samplingInterval = failedRecordLogSamplingInterval;
+    return samplingInterval == 1
+            || (samplingInterval > 1 && ThreadLocalRandom.current().nextInt(samplingInterval) == 0)
+        ? RecordHandle.retaining(record)
+        : RecordHandle.of(record);
+  }
+
   /**
    * Handle a failed record.
    *
-   * @param record the {@link SinkRecord} that failed to process
+   * @param record the handle of the {@link SinkRecord} that failed to process
    * @param e the exception
    * @param cql the cql statement that failed to execute
    * @param failCounter the metric that keeps track of number of failures encountered
    */
   synchronized void handleFailure(
-      SinkRecord record, Throwable e, String cql, Runnable failCounter) {
+      RecordHandle record, Throwable e, String cql, Runnable failCounter) {
     // Store the topic-partition and offset that had an error. However, we want
     // to keep track of the *lowest* offset in a topic-partition that failed. Because
     // requests are sent in parallel and response ordering is non-deterministic,
@@ -295,6 +619,18 @@ public class CassandraSinkTask extends SinkTask {
 
     failCounter.run();
 
+    Object failureEvent = FlightRecorderEvent.FAILURE.begin();
+    if (failureEvent != null) {
+      FlightRecorderEvent.FAILURE.commit(
+          failureEvent,
+          record.topic(),
+          record.kafkaPartition() == null ? -1 : record.kafkaPartition(),
+          record.kafkaOffset(),
+          driverFailure,
+          e.getClass().getName(),
+          e.getMessage());
+    }
+
     if (driverFailure) {
       log.warn(
           "Error inserting/updating row for Kafka record {}: {}\n   statement: {}}",
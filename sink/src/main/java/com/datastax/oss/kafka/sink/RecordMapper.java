@@ -39,12 +39,14 @@ import com.datastax.oss.kafka.sink.util.SinkUtil;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.NumericNode;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.apache.kafka.common.config.ConfigException;
 import org.slf4j.Logger;
@@ -70,6 +72,12 @@ public class RecordMapper {
 
   private final boolean isQueryProvided;
 
+  /**
+   * Provides insert statements that only list the given columns, or null if records should always
+   * be bound to {@link #insertUpdateStatement}.
+   */
+  @Nullable private final Function<Set<CqlIdentifier>, PreparedStatement> columnSubsetStatements;
+
   public RecordMapper(
       PreparedStatement insertUpdateStatement,
       PreparedStatement deleteStatement,
@@ -78,11 +86,34 @@ public class RecordMapper {
       boolean allowExtraFields,
       boolean allowMissingFields,
       TableConfig tableConfig) {
+    this(
+        insertUpdateStatement,
+        deleteStatement,
+        primaryKey,
+        mapping,
+        allowExtraFields,
+        allowMissingFields,
+        tableConfig,
+        null);
+  }
+
+  public RecordMapper(
+      PreparedStatement insertUpdateStatement,
+      PreparedStatement deleteStatement,
+      List<CqlIdentifier> primaryKey,
+      Mapping mapping,
+      boolean allowExtraFields,
+      boolean allowMissingFields,
+      TableConfig tableConfig,
+      @Nullable Function<Set<CqlIdentifier>, PreparedStatement> columnSubsetStatements) {
     this.insertUpdateStatement = insertUpdateStatement;
     this.deleteStatement = deleteStatement;
     this.primaryKey = new LinkedHashSet<>(primaryKey);
     this.mapping = mapping;
-    this.nullToUnset = tableConfig.isNullToUnset();
+    this.columnSubsetStatements = columnSubsetStatements;
+    // Leaving null columns out of the statement only makes sense if they are not written as
+    // tombstones.
+    this.nullToUnset = tableConfig.isNullToUnset() || columnSubsetStatements != null;
     this.allowExtraFields = allowExtraFields;
     this.allowMissingFields = allowMissingFields;
     this.ttlTimeUnit = tableConfig.getTtlTimeUnit();
@@ -142,6 +173,10 @@ public class RecordMapper {
           GenericType.LONG);
     }
 
+    if (isInsertUpdate && columnSubsetStatements != null) {
+      builder = rebindToColumnSubset(builder, variableDefinitions);
+    }
+
     BoundStatement bs = builder.build();
     // if user provided custom query we are not validating PKs because they may have different names
     // in prepared statement than column definition on CQL table
@@ -208,6 +243,44 @@ public class RecordMapper {
     }
   }
 
+  /**
+   * If some columns of the insert statement were left unset, move the bound values to the variant
+   * of the statement that only lists the set columns. The USING clause variables are always part of
+   * the variant, so they don't count towards the subset.
+   */
+  private BoundStatementBuilder rebindToColumnSubset(
+      BoundStatementBuilder builder, ColumnDefinitions variableDefinitions) {
+    Set<CqlIdentifier> setColumns = new LinkedHashSet<>();
+    boolean allColumnsSet = true;
+    for (int i = 0; i < variableDefinitions.size(); i++) {
+      CqlIdentifier variable = variableDefinitions.get(i).getName();
+      if (SinkUtil.isTimestampMappingColumn(variable) || SinkUtil.isTtlMappingColumn(variable)) {
+        continue;
+      }
+      if (builder.isSet(variable)) {
+        setColumns.add(variable);
+      } else if (isPrimaryKey(variable)) {
+        // Let ensurePrimaryKeySet report the unmapped key on the full statement.
+        return builder;
+      } else {
+        allColumnsSet = false;
+      }
+    }
+    if (allColumnsSet) {
+      return builder;
+    }
+    PreparedStatement variant = columnSubsetStatements.apply(setColumns);
+    BoundStatementBuilder variantBuilder = variant.boundStatementBuilder();
+    ColumnDefinitions variantDefinitions = variant.getVariableDefinitions();
+    for (int i = 0; i < variantDefinitions.size(); i++) {
+      CqlIdentifier variable = variantDefinitions.get(i).getName();
+      if (builder.isSet(variable)) {
+        variantBuilder = variantBuilder.setBytesUnsafe(variable, builder.getBytesUnsafe(variable));
+      }
+    }
+    return variantBuilder;
+  }
+
   // Walk through each record field and check if any non-null fields map to a non-primary-key
   // column. If so, this is an insert; otherwise it is a delete. However, there is a
   // special case: if the table only has primary key columns, there is no case for delete.
@@ -323,6 +396,12 @@ public class RecordMapper {
     }
   }
 
+  /** @return the primary key columns of the table, in the order of the table definition. */
+  @NonNull
+  public Set<CqlIdentifier> getPrimaryKey() {
+    return primaryKey;
+  }
+
   private boolean isPrimaryKey(CqlIdentifier variable) {
     return primaryKey.contains(variable);
   }
@@ -0,0 +1,558 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodec;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.config.TableConfig.AggregateFunction;
+import com.datastax.oss.kafka.sink.record.RecordAndStatement;
+import com.datastax.oss.kafka.sink.record.RecordHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates the statements bound for a table configured with an {@link
+ * TableConfig#AGGREGATE_WINDOW_OPT aggregateWindow} into one row per primary key and time window,
+ * so that a window is written once instead of once per record.
+ *
+ * <p>The time column is truncated to the start of its window, and the other primary key columns are
+ * kept as they are. Regular columns are combined with their {@link AggregateFunction}. A window
+ * closes when a record at least window length plus allowed lateness past its start is seen, and its
+ * rows are then written; the oldest row not written yet is also written early when the table holds
+ * too many of them. A row is kept until its window closes and its last write is acknowledged, so
+ * that records arriving after an early write are merged into the complete aggregates; records
+ * arriving once their window is closed and its rows are gone are ignored.
+ *
+ * <p>Until a row is dropped, the offsets of its records must not be committed: see {@link
+ * #pendingOffsets()}. A row ignores the records it already absorbed in a previous put, so that
+ * partitions may be rewound to replay the failed records of other statements without aggregating
+ * its records twice; rows whose write failed are written again from their aggregates.
+ *
+ * <p>Rows are only complete if all the records of a primary key are consumed by the same task, that
+ * is if the records are keyed by the primary key columns other than the time column.
+ *
+ * <p>Instances are used concurrently by the mapping threads and are synchronized.
+ */
+class RollupAggregator {
+  private static final Logger log = LoggerFactory.getLogger(RollupAggregator.class);
+
+  private final String keyspaceAndTable;
+  private final CqlIdentifier timeColumn;
+  private final Map<CqlIdentifier, AggregateFunction> functions;
+  private final long windowMillis;
+  private final long allowedLatenessMillis;
+  private final int maxRows;
+
+  /** Rows being aggregated, oldest first. */
+  private final Map<List<ByteBuffer>, Row> rows = new LinkedHashMap<>();
+
+  /** Rows with records not written yet, in the order they got their first such record. */
+  private final Map<List<ByteBuffer>, Row> unwrittenRows = new LinkedHashMap<>();
+
+  /** Rows written since the last {@link #settle(boolean)}. */
+  private final List<Row> writtenRows = new ArrayList<>();
+
+  /** The latest time seen in the records, in milliseconds. */
+  private long latestTime = Long.MIN_VALUE;
+
+  /** The layout of the last statement absorbed. */
+  private Layout layout;
+
+  private boolean warnedOfSeveralPartitions;
+
+  RollupAggregator(TableConfig tableConfig) {
+    this.keyspaceAndTable = tableConfig.getKeyspaceAndTable();
+    this.timeColumn = tableConfig.getAggregateTimeColumn();
+    this.functions = tableConfig.getAggregateFunctions();
+    this.windowMillis = tableConfig.getAggregateWindow().toMillis();
+    this.allowedLatenessMillis = tableConfig.getAggregateAllowedLateness().toMillis();
+    this.maxRows = tableConfig.getAggregateMaxRows();
+  }
+
+  /**
+   * Add a record to the row of its primary key and window.
+   *
+   * @param record the handle of the record
+   * @param statement the statement the record is bound to
+   * @param primaryKey the primary key columns of the table
+   * @return the rows to write now, because too many rows are not written or because the layout of
+   *     the statements changed; usually none
+   */
+  synchronized List<RecordAndStatement> absorb(
+      RecordHandle record, BoundStatement statement, Set<CqlIdentifier> primaryKey) {
+    Layout layout = this.layout;
+    if (layout == null || layout.statement != statement.getPreparedStatement()) {
+      layout = Layout.of(statement.getPreparedStatement(), timeColumn, primaryKey, functions);
+      this.layout = layout;
+    }
+    long time = toMillis(statement.getObject(layout.timeIndex));
+    long windowStart = Math.floorDiv(time, windowMillis) * windowMillis;
+    ByteBuffer windowStartBytes =
+        encode(statement, layout.timeIndex, fromMillis(windowStart, statement, layout.timeIndex));
+
+    List<ByteBuffer> key = new ArrayList<>(layout.keyIndices.length);
+    for (int i : layout.keyIndices) {
+      key.add(i == layout.timeIndex ? windowStartBytes : statement.getBytesUnsafe(i));
+    }
+
+    TopicPartition partition = new TopicPartition(record.topic(), record.kafkaPartition());
+    List<RecordAndStatement> toWrite = Collections.emptyList();
+    Row row = rows.get(key);
+    if (row != null && row.isAbsorbed(partition, record.kafkaOffset())) {
+      // Replayed after a rewind.
+      return toWrite;
+    }
+    if (row != null && row.layout != layout) {
+      // The table was altered: don't mix statements bound to different variables. The aggregates
+      // of the row start over.
+      rows.remove(key);
+      if (unwrittenRows.containsKey(key)) {
+        toWrite = new ArrayList<>();
+        toWrite.add(write(row));
+      }
+      row = null;
+    }
+    if (row == null) {
+      if (isClosed(windowStart)) {
+        // Its row, if any, was written and dropped already: writing a row of this record alone
+        // would overwrite it.
+        log.debug("Ignoring record {} of closed window {} of {}", record, windowStart, key);
+        return toWrite;
+      }
+      row =
+          new Row(
+              key,
+              layout,
+              statement.setBytesUnsafe(layout.timeIndex, windowStartBytes),
+              windowStart);
+      rows.put(key, row);
+    }
+    latestTime = Math.max(latestTime, time);
+    row.add(record, partition, time, statement);
+    if (row.firstOffsets.size() > 1 && !warnedOfSeveralPartitions) {
+      warnedOfSeveralPartitions = true;
+      log.warn(
+          "Records of the same row of {} come from several partitions: tasks may overwrite each "
+              + "other's rows unless records are keyed by the primary key columns",
+          keyspaceAndTable);
+    }
+    if (unwrittenRows.putIfAbsent(key, row) == null && unwrittenRows.size() > maxRows) {
+      Row oldest = unwrittenRows.values().iterator().next();
+      if (toWrite.isEmpty()) {
+        toWrite = new ArrayList<>();
+      }
+      toWrite.add(write(oldest));
+    }
+    return toWrite;
+  }
+
+  /** @return the rows whose window closed and that have records not written yet, to write now. */
+  synchronized List<RecordAndStatement> flushClosedWindows() {
+    List<RecordAndStatement> toWrite = new ArrayList<>();
+    for (Row row : new ArrayList<>(unwrittenRows.values())) {
+      if (isClosed(row.windowStart)) {
+        toWrite.add(write(row));
+      }
+    }
+    return toWrite;
+  }
+
+  private boolean isClosed(long windowStart) {
+    // Subtract rather than add, to not overflow with windows near Long.MAX_VALUE.
+    return latestTime != Long.MIN_VALUE
+        && latestTime - windowMillis - allowedLatenessMillis >= windowStart;
+  }
+
+  /** @return for each topic partition, the lowest offset of a record in a row not dropped yet */
+  synchronized Map<TopicPartition, Long> pendingOffsets() {
+    Map<TopicPartition, Long> offsets = new HashMap<>();
+    rows.values().forEach(row -> row.mergeFirstOffsets(offsets));
+    return offsets;
+  }
+
+  /**
+   * Settle the rows written since the last call, once their writes completed: rows ignore the
+   * records absorbed so far if they are replayed, and rows whose window closed are dropped once
+   * written.
+   *
+   * @param failed whether a write may have failed, in which case the rows are written again
+   */
+  synchronized void settle(boolean failed) {
+    if (failed) {
+      writtenRows.forEach(row -> unwrittenRows.putIfAbsent(row.key, row));
+    }
+    writtenRows.clear();
+    for (Iterator<Row> it = rows.values().iterator(); it.hasNext(); ) {
+      Row row = it.next();
+      row.settle();
+      if (isClosed(row.windowStart) && !unwrittenRows.containsKey(row.key)) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * Drop the rows with records of the given partitions, which will be replayed by the task they are
+   * assigned to.
+   *
+   * @return the lowest offsets of the records of the dropped rows in the other partitions, from
+   *     which they must be replayed
+   */
+  synchronized Map<TopicPartition, Long> drop(Collection<TopicPartition> partitions) {
+    Map<TopicPartition, Long> offsets = new HashMap<>();
+    for (Iterator<Row> it = rows.values().iterator(); it.hasNext(); ) {
+      Row row = it.next();
+      if (!Collections.disjoint(row.firstOffsets.keySet(), partitions)) {
+        it.remove();
+        unwrittenRows.remove(row.key);
+        writtenRows.remove(row);
+        row.mergeFirstOffsets(offsets);
+      }
+    }
+    offsets.keySet().removeAll(partitions);
+    return offsets;
+  }
+
+  /**
+   * Drop all the rows, whether written or not, when it is unknown which records they absorbed. Rows
+   * dropped earlier, whose window closed, may then be written again from only the records replayed.
+   *
+   * @return the {@link #pendingOffsets()} before the reset, from which the records of the dropped
+   *     rows must be replayed
+   */
+  synchronized Map<TopicPartition, Long> reset() {
+    Map<TopicPartition, Long> offsets = pendingOffsets();
+    rows.clear();
+    unwrittenRows.clear();
+    writtenRows.clear();
+    latestTime = Long.MIN_VALUE;
+    return offsets;
+  }
+
+  private RecordAndStatement write(Row row) {
+    unwrittenRows.remove(row.key);
+    writtenRows.add(row);
+    // The latest record, so that a failure of the write rewinds its partition no further than
+    // needed: the row itself is written again from its aggregates.
+    return new RecordAndStatement(row.lastRecord, keyspaceAndTable, row.toStatement());
+  }
+
+  private static long toMillis(Object time) {
+    if (time instanceof Instant) {
+      return ((Instant) time).toEpochMilli();
+    }
+    if (time instanceof Long) {
+      return (Long) time;
+    }
+    throw new IllegalArgumentException(
+        time == null
+            ? "The time column of an aggregated record cannot be null"
+            : "The time column of an aggregated table must be a timestamp or a bigint, got "
+                + time.getClass().getSimpleName());
+  }
+
+  private static Object fromMillis(long millis, BoundStatement statement, int i) {
+    return statement.getObject(i) instanceof Instant ? Instant.ofEpochMilli(millis) : millis;
+  }
+
+  private static ByteBuffer encode(BoundStatement statement, int i, Object value) {
+    TypeCodec<Object> codec = statement.codecRegistry().codecFor(statement.getType(i));
+    return codec.encode(value, statement.protocolVersion());
+  }
+
+  /** Where the key columns of a statement are, and how its other variables are aggregated. */
+  private static final class Layout {
+    private final PreparedStatement statement;
+    private final int timeIndex;
+    private final int[] keyIndices;
+
+    /** The function of each variable, null for key columns. */
+    private final AggregateFunction[] functions;
+
+    private Layout(
+        PreparedStatement statement,
+        int timeIndex,
+        int[] keyIndices,
+        AggregateFunction[] functions) {
+      this.statement = statement;
+      this.timeIndex = timeIndex;
+      this.keyIndices = keyIndices;
+      this.functions = functions;
+    }
+
+    private static Layout of(
+        PreparedStatement statement,
+        CqlIdentifier timeColumn,
+        Set<CqlIdentifier> primaryKey,
+        Map<CqlIdentifier, AggregateFunction> functions) {
+      ColumnDefinitions variables = statement.getVariableDefinitions();
+      AggregateFunction[] variableFunctions = new AggregateFunction[variables.size()];
+      int[] keyIndices = new int[variables.size()];
+      int keyCount = 0;
+      int timeIndex = -1;
+      for (int i = 0; i < variables.size(); i++) {
+        CqlIdentifier variable = variables.get(i).getName();
+        if (variable.equals(timeColumn) || primaryKey.contains(variable)) {
+          keyIndices[keyCount++] = i;
+          if (variable.equals(timeColumn)) {
+            timeIndex = i;
+          }
+        } else {
+          variableFunctions[i] = functions.getOrDefault(variable, AggregateFunction.LAST);
+        }
+      }
+      if (timeIndex < 0) {
+        throw new IllegalArgumentException(
+            String.format("The statement does not bind time column %s", timeColumn.asCql(true)));
+      }
+      return new Layout(
+          statement, timeIndex, Arrays.copyOf(keyIndices, keyCount), variableFunctions);
+    }
+  }
+
+  /** The aggregates of the records of a primary key and window. */
+  private static final class Row {
+    private final List<ByteBuffer> key;
+    private final Layout layout;
+
+    /** The first statement of the row, with its time column truncated. */
+    private final BoundStatement template;
+
+    private final long windowStart;
+
+    /** The aggregate of each variable, or null if none of the records set it. */
+    private final Object[] values;
+
+    /** The lowest offset of the records of each partition. */
+    private final Map<TopicPartition, Long> firstOffsets = new HashMap<>(2);
+
+    /** The highest offset of the records of each partition absorbed by previous puts. */
+    private final Map<TopicPartition, Long> settledOffsets = new HashMap<>(2);
+
+    /** The highest offset of the records of each partition absorbed since the last settle. */
+    private final Map<TopicPartition, Long> lastOffsets = new HashMap<>(2);
+
+    private RecordHandle lastRecord;
+
+    private Row(List<ByteBuffer> key, Layout layout, BoundStatement template, long windowStart) {
+      this.key = key;
+      this.layout = layout;
+      this.template = template;
+      this.windowStart = windowStart;
+      this.values = new Object[layout.functions.length];
+    }
+
+    private boolean isAbsorbed(TopicPartition partition, long offset) {
+      Long settledOffset = settledOffsets.get(partition);
+      return settledOffset != null && offset <= settledOffset;
+    }
+
+    private void add(
+        RecordHandle record, TopicPartition partition, long time, BoundStatement statement) {
+      long offset = record.kafkaOffset();
+      firstOffsets.merge(partition, offset, Math::min);
+      lastOffsets.merge(partition, offset, Math::max);
+      lastRecord = record;
+      for (int i = 0; i < values.length; i++) {
+        AggregateFunction function = layout.functions[i];
+        if (function == null || !statement.isSet(i)) {
+          continue;
+        }
+        if (function == AggregateFunction.LAST) {
+          // Keep the bytes: a null is a value too. The mapping threads absorb records in any
+          // order, hence the value of the latest record, by time and then by offset.
+          LastValue last = (LastValue) values[i];
+          if (last == null || last.isBefore(time, partition, offset)) {
+            values[i] = new LastValue(statement.getBytesUnsafe(i), time, partition, offset);
+          }
+          continue;
+        }
+        Object value = statement.getObject(i);
+        if (value != null) {
+          values[i] = aggregate(function, values[i], value);
+        }
+      }
+    }
+
+    private void settle() {
+      lastOffsets.forEach(
+          (partition, offset) -> settledOffsets.merge(partition, offset, Math::max));
+      lastOffsets.clear();
+    }
+
+    private void mergeFirstOffsets(Map<TopicPartition, Long> offsets) {
+      firstOffsets.forEach((partition, offset) -> offsets.merge(partition, offset, Math::min));
+    }
+
+    private BoundStatement toStatement() {
+      BoundStatement statement = template;
+      for (int i = 0; i < values.length; i++) {
+        AggregateFunction function = layout.functions[i];
+        if (function == null) {
+          continue;
+        }
+        Object value = values[i];
+        if (value == null) {
+          statement = statement.unset(i);
+        } else if (value instanceof LastValue) {
+          statement = statement.setBytesUnsafe(i, ((LastValue) value).bytes);
+        } else if (function == AggregateFunction.COUNT) {
+          TypeCodec<Object> codec = statement.codecRegistry().codecFor(statement.getType(i));
+          statement =
+              statement.setBytesUnsafe(
+                  i,
+                  codec.encode(
+                      toNumber((Long) value, codec.getJavaType().getRawType()),
+                      statement.protocolVersion()));
+        } else {
+          statement = statement.setBytesUnsafe(i, encode(statement, i, value));
+        }
+      }
+      return statement;
+    }
+  }
+
+  /** The last value of a column, as bound, and the record it comes from. */
+  private static final class LastValue {
+    private final ByteBuffer bytes;
+    private final long time;
+    private final TopicPartition partition;
+    private final long offset;
+
+    private LastValue(ByteBuffer bytes, long time, TopicPartition partition, long offset) {
+      this.bytes = bytes;
+      this.time = time;
+      this.partition = partition;
+      this.offset = offset;
+    }
+
+    private boolean isBefore(long time, TopicPartition partition, long offset) {
+      if (this.time != time) {
+        return this.time < time;
+      }
+      if (this.offset != offset) {
+        return this.offset < offset;
+      }
+      // Same time and offset in different partitions: any order, as long as it is always the same.
+      int byTopic = this.partition.topic().compareTo(partition.topic());
+      return byTopic != 0 ? byTopic < 0 : this.partition.partition() < partition.partition();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Object aggregate(AggregateFunction function, Object aggregate, Object value) {
+    switch (function) {
+      case COUNT:
+        return aggregate == null ? 1L : (Long) aggregate + 1;
+      case SUM:
+        return aggregate == null ? value : sum(aggregate, value);
+      case MIN:
+      case MAX:
+        if (!(value instanceof Comparable)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Cannot take the %s of values of type %s",
+                  function.name().toLowerCase(), value.getClass().getSimpleName()));
+        }
+        if (aggregate == null) {
+          return value;
+        }
+        int comparison = ((Comparable<Object>) value).compareTo(aggregate);
+        return (function == AggregateFunction.MIN ? comparison < 0 : comparison > 0)
+            ? value
+            : aggregate;
+      default:
+        throw new AssertionError("Unexpected aggregate function " + function);
+    }
+  }
+
+  private static Object sum(Object a, Object b) {
+    if (a instanceof Long) {
+      return (Long) a + (Long) b;
+    }
+    if (a instanceof Integer) {
+      return (Integer) a + (Integer) b;
+    }
+    if (a instanceof Short) {
+      return (short) ((Short) a + (Short) b);
+    }
+    if (a instanceof Byte) {
+      return (byte) ((Byte) a + (Byte) b);
+    }
+    if (a instanceof Double) {
+      return (Double) a + (Double) b;
+    }
+    if (a instanceof Float) {
+      return (Float) a + (Float) b;
+    }
+    if (a instanceof BigDecimal) {
+      return ((BigDecimal) a).add((BigDecimal) b);
+    }
+    if (a instanceof BigInteger) {
+      return ((BigInteger) a).add((BigInteger) b);
+    }
+    throw new IllegalArgumentException(
+        String.format("Cannot sum values of type %s", a.getClass().getSimpleName()));
+  }
+
+  private static Object toNumber(long count, Class<?> type) {
+    if (type == Long.class) {
+      return count;
+    }
+    if (type == Integer.class) {
+      return Math.toIntExact(count);
+    }
+    if (type == Short.class) {
+      return (short) count;
+    }
+    if (type == Byte.class) {
+      return (byte) count;
+    }
+    if (type == BigInteger.class) {
+      return BigInteger.valueOf(count);
+    }
+    if (type == BigDecimal.class) {
+      return BigDecimal.valueOf(count);
+    }
+    if (type == Double.class) {
+      return (double) count;
+    }
+    if (type == Float.class) {
+      return (float) count;
+    }
+    throw new IllegalArgumentException(
+        String.format("Cannot write a count to a column of type %s", type.getSimpleName()));
+  }
+}
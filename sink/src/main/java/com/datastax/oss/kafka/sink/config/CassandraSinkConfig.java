@@ -25,15 +25,20 @@ import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.SSL_CI
 import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
 import com.datastax.oss.driver.shaded.guava.common.base.Splitter;
 import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableList;
+import com.datastax.oss.kafka.sink.util.MpscRingBuffer.WaitStrategy;
 import com.datastax.oss.kafka.sink.util.SinkUtil;
 import com.datastax.oss.kafka.sink.util.StringUtil;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -50,7 +55,7 @@ public class CassandraSinkConfig {
   private static final Logger log = LoggerFactory.getLogger(CassandraSinkConfig.class);
   private static final Pattern TOPIC_KS_TABLE_SETTING_PATTERN =
       Pattern.compile(
-          "topic\\.([a-zA-Z0-9._-]+)\\.([^.]+|\"[\"]+\")\\.([^.]+|\"[\"]+\")\\.(mapping|consistencyLevel|ttl|nullToUnset|deletesEnabled|ttlTimeUnit|timestampTimeUnit|query)$");
+          "topic\\.([a-zA-Z0-9._-]+)\\.([^.]+|\"[\"]+\")\\.([^.]+|\"[\"]+\")\\.(mapping|consistencyLevel|ttl|nullToUnset|deletesEnabled|ttlTimeUnit|timestampTimeUnit|query|columnSubsetStatements)$");
   public static final Pattern TOPIC_CODEC_PATTERN =
       Pattern.compile(
           "topic\\.([a-zA-Z0-9._-]+)\\.(codec)\\.(locale|timeZone|timestamp|date|time|unit)$");
@@ -87,6 +92,7 @@ public class CassandraSinkConfig {
   public static final String COMPRESSION_DEFAULT = "none";
 
   static final String MAX_NUMBER_OF_RECORDS_IN_BATCH = "maxNumberOfRecordsInBatch";
+  static final String BATCH_ACROSS_TABLES_OPT = "batchAcrossTables";
 
   static final String METRICS_HIGHEST_LATENCY_OPT = "metricsHighestLatency";
   static final String METRICS_HIGHEST_LATENCY_DRIVER_SETTINGS =
@@ -95,6 +101,38 @@ public class CassandraSinkConfig {
 
   static final String IGNORE_ERRORS = "ignoreErrors";
 
+  static final String SHARE_SESSION_OPT = "shareSession";
+
+  static final String INSTANCE_STATE_GRACE_PERIOD_OPT = "instanceStateGracePeriod";
+
+  static final String METRICS_HTTP_PORT_OPT = "metricsHttpPort";
+  static final String METRICS_HTTP_HOST_OPT = "metricsHttpHost";
+
+  static final String LOW_OVERHEAD_METRICS_OPT = "lowOverheadMetrics";
+
+  static final String BATCH_SIZE_IN_BYTES_SAMPLING_INTERVAL_OPT =
+      "batchSizeInBytesSamplingInterval";
+
+  static final String MAX_PARTITION_METRICS_PER_TOPIC_OPT = "maxPartitionMetricsPerTopic";
+  public static final int MAX_PARTITION_METRICS_PER_TOPIC_DEFAULT = 1000;
+
+  static final String SCHEMA_SNAPSHOT_DIRECTORY_OPT = "schemaSnapshotDirectory";
+
+  static final String COLUMN_SUBSET_STATEMENTS_CACHE_SIZE_OPT = "columnSubsetStatementsCacheSize";
+  public static final int COLUMN_SUBSET_STATEMENTS_CACHE_SIZE_DEFAULT = 100;
+
+  static final String DRY_RUN_OPT = "dryRun";
+
+  static final String MAPPING_THREADS_OPT = "mappingThreads";
+  static final String SHARED_MAPPING_EXECUTOR_OPT = "sharedMappingExecutor";
+  static final String MAPPING_WEIGHT_OPT = "mappingWeight";
+  static final String VIRTUAL_THREADS_OPT = "virtualThreads";
+
+  static final String STATEMENT_QUEUE_CAPACITY_OPT = "statementQueueCapacity";
+  static final String STATEMENT_QUEUE_WAIT_STRATEGY_OPT = "statementQueueWaitStrategy";
+
+  static final String FAILED_RECORD_LOG_SAMPLING_INTERVAL_OPT = "failedRecordLogSamplingInterval";
+
   public static final String SECURE_CONNECT_BUNDLE_OPT = "cloud.secureConnectBundle";
   static final String SECURE_CONNECT_BUNDLE_DRIVER_SETTING =
       withDriverPrefix(DefaultDriverOption.CLOUD_SECURE_CONNECT_BUNDLE);
@@ -169,6 +207,14 @@ public class CassandraSinkConfig {
               ConfigDef.Range.atLeast(1),
               ConfigDef.Importance.HIGH,
               "Maximum number of records that could be send in one batch request")
+          .define(
+              BATCH_ACROSS_TABLES_OPT,
+              ConfigDef.Type.BOOLEAN,
+              false,
+              ConfigDef.Importance.LOW,
+              "Whether statements of a topic for different tables of the same keyspace are batched "
+                  + "together when their partition keys are equal, instead of batching each table "
+                  + "separately")
           .define(
               CONNECTION_POOL_LOCAL_SIZE,
               ConfigDef.Type.INT,
@@ -186,6 +232,145 @@ public class CassandraSinkConfig {
                   + "None (never ignore errors), "
                   + "All (ignore all errors), "
                   + "Driver (ignore driver errors only, i.e. errors when writing to the database).")
+          .define(
+              SHARE_SESSION_OPT,
+              ConfigDef.Type.BOOLEAN,
+              false,
+              ConfigDef.Importance.MEDIUM,
+              "Whether to share the session with other connector instances in this worker that "
+                  + "have equivalent contact points, authentication, ssl and driver settings")
+          .define(
+              INSTANCE_STATE_GRACE_PERIOD_OPT,
+              ConfigDef.Type.INT,
+              0,
+              ConfigDef.Range.atLeast(0),
+              ConfigDef.Importance.MEDIUM,
+              "How long, in seconds, to keep the session and prepared statements of the connector "
+                  + "after its last task stopped, so that tasks restarted by a rebalance can reuse "
+                  + "them; 0 releases them immediately")
+          .define(
+              METRICS_HTTP_PORT_OPT,
+              ConfigDef.Type.INT,
+              0,
+              ConfigDef.Range.between(0, 65535),
+              ConfigDef.Importance.LOW,
+              "Port of an embedded HTTP server exposing connector and driver metrics in the "
+                  + "OpenMetrics text format on /metrics; 0 disables it")
+          .define(
+              METRICS_HTTP_HOST_OPT,
+              ConfigDef.Type.STRING,
+              "127.0.0.1",
+              ConfigDef.Importance.LOW,
+              "Host or address the metrics HTTP server binds to")
+          .define(
+              LOW_OVERHEAD_METRICS_OPT,
+              ConfigDef.Type.BOOLEAN,
+              false,
+              ConfigDef.Importance.LOW,
+              "Whether connector histograms and timers use lock-free HdrHistogram recorders "
+                  + "instead of the default reservoir; their snapshots then cover the last 30 "
+                  + "seconds")
+          .define(
+              BATCH_SIZE_IN_BYTES_SAMPLING_INTERVAL_OPT,
+              ConfigDef.Type.INT,
+              1,
+              ConfigDef.Range.atLeast(1),
+              ConfigDef.Importance.LOW,
+              "Measure the size in bytes of one statement out of this many for the "
+                  + "batchSizeInBytes metric; 1 measures every statement")
+          .define(
+              MAX_PARTITION_METRICS_PER_TOPIC_OPT,
+              ConfigDef.Type.INT,
+              MAX_PARTITION_METRICS_PER_TOPIC_DEFAULT,
+              ConfigDef.Range.atLeast(0),
+              ConfigDef.Importance.LOW,
+              "Maximum number of partitions per topic for which record lag, last written offset "
+                  + "and in-flight record metrics are exposed; 0 disables them")
+          .define(
+              SCHEMA_SNAPSHOT_DIRECTORY_OPT,
+              ConfigDef.Type.STRING,
+              "",
+              ConfigDef.Importance.LOW,
+              "Directory where the connector saves a snapshot of the schema of its mapped tables, "
+                  + "so that a restart at an unchanged schema version can skip waiting for schema "
+                  + "metadata, at the cost of writes not routed to replicas until it is fetched; "
+                  + "empty disables snapshots. Ignored when shareSession is enabled")
+          .define(
+              COLUMN_SUBSET_STATEMENTS_CACHE_SIZE_OPT,
+              ConfigDef.Type.INT,
+              COLUMN_SUBSET_STATEMENTS_CACHE_SIZE_DEFAULT,
+              ConfigDef.Range.atLeast(1),
+              ConfigDef.Importance.LOW,
+              "Maximum number of prepared statement variants kept per topic for tables with "
+                  + "columnSubsetStatements enabled; least recently used variants are evicted")
+          .define(
+              DRY_RUN_OPT,
+              ConfigDef.Type.BOOLEAN,
+              false,
+              ConfigDef.Importance.LOW,
+              "Whether records are mapped, bound and grouped into batches without executing the "
+                  + "statements, to measure the throughput of the connector itself; no data is "
+                  + "written, and no offset is committed")
+          .define(
+              MAPPING_THREADS_OPT,
+              ConfigDef.Type.INT,
+              8,
+              ConfigDef.Range.atLeast(1),
+              ConfigDef.Importance.LOW,
+              "Number of threads mapping records to statements for this connector instance; "
+                  + "ignored when sharedMappingExecutor is enabled")
+          .define(
+              SHARED_MAPPING_EXECUTOR_OPT,
+              ConfigDef.Type.BOOLEAN,
+              false,
+              ConfigDef.Importance.LOW,
+              "Whether records are mapped by a work-stealing pool with one thread per core, "
+                  + "shared by all the connector instances of the worker that enable it")
+          .define(
+              MAPPING_WEIGHT_OPT,
+              ConfigDef.Type.INT,
+              1,
+              ConfigDef.Range.atLeast(1),
+              ConfigDef.Importance.LOW,
+              "Share of the shared mapping pool guaranteed to this connector instance, relative "
+                  + "to the weights of the other instances using it; beyond it, the instance uses "
+                  + "the threads the others leave idle. Ignored unless sharedMappingExecutor is "
+                  + "enabled")
+          .define(
+              VIRTUAL_THREADS_OPT,
+              ConfigDef.Type.BOOLEAN,
+              false,
+              ConfigDef.Importance.LOW,
+              "Whether records are mapped, and statements dispatched, on virtual threads instead "
+                  + "of platform thread pools, on Java 21 or later; ignored on earlier versions. "
+                  + "Mapping uses the shared pool instead when sharedMappingExecutor is enabled")
+          .define(
+              STATEMENT_QUEUE_CAPACITY_OPT,
+              ConfigDef.Type.INT,
+              32768,
+              ConfigDef.Range.between(1, 1 << 30),
+              ConfigDef.Importance.LOW,
+              "Maximum number of bound statements waiting for the statement processor of a task, "
+                  + "rounded up to a power of two; mapping threads wait when it is full")
+          .define(
+              STATEMENT_QUEUE_WAIT_STRATEGY_OPT,
+              ConfigDef.Type.STRING,
+              "Park",
+              ConfigDef.Importance.LOW,
+              "How the statement processor waits for statements, and mapping threads for room in "
+                  + "the statement queue. Valid values are: "
+                  + "Spin (busy-spin, lowest latency but keeps a core busy), "
+                  + "Yield (yield the core between checks), "
+                  + "Park (park the thread, lowest CPU usage).")
+          .define(
+              FAILED_RECORD_LOG_SAMPLING_INTERVAL_OPT,
+              ConfigDef.Type.INT,
+              1,
+              ConfigDef.Range.atLeast(0),
+              ConfigDef.Importance.LOW,
+              "Keep one record out of this many in memory until its statements are executed, so "
+                  + "that it is logged in full should the write fail; the others are logged by "
+                  + "topic, partition, offset and timestamp. 0 keeps none, 1 keeps all")
           .define(
               SECURE_CONNECT_BUNDLE_OPT,
               ConfigDef.Type.STRING,
@@ -198,9 +383,11 @@ public class CassandraSinkConfig {
   static final String METRICS_INTERVAL_DEFAULT = "30 seconds";
 
   private final String instanceName;
+  private final Map<String, String> settings;
   private final AbstractConfig globalConfig;
   private final Map<String, TopicConfig> topicConfigs;
   private final Map<String, String> javaDriverSettings;
+  private final Set<String> defaultRefreshedKeyspaces;
 
   @Nullable private SslConfig sslConfig;
 
@@ -209,6 +396,7 @@ public class CassandraSinkConfig {
   public CassandraSinkConfig(Map<String, String> settings) {
     log.debug("create CassandraSinkConfig for settings:{} ", settings);
     instanceName = settings.get(SinkUtil.NAME_OPT);
+    this.settings = Collections.unmodifiableMap(new HashMap<>(settings));
     // Walk through the settings and separate out "globals" from "topics", "ssl", and "auth".
     Map<String, String> globalSettings = new HashMap<>();
     Map<String, String> sslSettings = new HashMap<>();
@@ -248,6 +436,7 @@ public class CassandraSinkConfig {
     topicSettings.forEach(
         (name, topicConfigMap) ->
             topicConfigs.put(name, new TopicConfig(name, topicConfigMap, cloud)));
+    defaultRefreshedKeyspaces = computeDefaultRefreshedKeyspaces();
 
     validateCompressionType();
 
@@ -286,6 +475,31 @@ public class CassandraSinkConfig {
 
   private static final Splitter COMA_SPLITTER = Splitter.on(",");
 
+  /**
+   * Unless the user configured them, restrict the keyspaces whose schema metadata the driver
+   * fetches and refreshes to the keyspaces the connector writes to. Lower-case variants are kept so
+   * that case mismatches in the configuration can still be reported with a hint.
+   *
+   * <p>They are not added to the driver settings, which must only depend on how to connect to the
+   * cluster, so that instances writing to different keyspaces can share a session.
+   */
+  private Set<String> computeDefaultRefreshedKeyspaces() {
+    String setting = withDriverPrefix(METADATA_SCHEMA_REFRESHED_KEYSPACES);
+    if (topicConfigs.isEmpty()
+        || javaDriverSettings.keySet().stream().anyMatch(key -> key.startsWith(setting))) {
+      return Collections.emptySet();
+    }
+    Set<String> keyspaces = new TreeSet<>();
+    for (TopicConfig topicConfig : topicConfigs.values()) {
+      for (TableConfig tableConfig : topicConfig.getTableConfigs()) {
+        String keyspace = tableConfig.getKeyspace().asInternal();
+        keyspaces.add(keyspace);
+        keyspaces.add(keyspace.toLowerCase());
+      }
+    }
+    return Collections.unmodifiableSet(keyspaces);
+  }
+
   private void addJavaDriverSetting(Map.Entry<String, String> entry) {
 
     if (JAVA_DRIVER_SETTINGS_LIST_TYPE.contains(entry.getKey())) {
@@ -541,6 +755,93 @@ public class CassandraSinkConfig {
     return globalConfig.getInt(MAX_NUMBER_OF_RECORDS_IN_BATCH);
   }
 
+  public boolean isBatchAcrossTables() {
+    return globalConfig.getBoolean(BATCH_ACROSS_TABLES_OPT);
+  }
+
+  public boolean isShareSession() {
+    return globalConfig.getBoolean(SHARE_SESSION_OPT);
+  }
+
+  public int getInstanceStateGracePeriod() {
+    return globalConfig.getInt(INSTANCE_STATE_GRACE_PERIOD_OPT);
+  }
+
+  public int getMetricsHttpPort() {
+    return globalConfig.getInt(METRICS_HTTP_PORT_OPT);
+  }
+
+  public String getMetricsHttpHost() {
+    return globalConfig.getString(METRICS_HTTP_HOST_OPT);
+  }
+
+  public boolean isLowOverheadMetrics() {
+    return globalConfig.getBoolean(LOW_OVERHEAD_METRICS_OPT);
+  }
+
+  public int getBatchSizeInBytesSamplingInterval() {
+    return globalConfig.getInt(BATCH_SIZE_IN_BYTES_SAMPLING_INTERVAL_OPT);
+  }
+
+  public int getMaxPartitionMetricsPerTopic() {
+    return globalConfig.getInt(MAX_PARTITION_METRICS_PER_TOPIC_OPT);
+  }
+
+  public Optional<Path> getSchemaSnapshotDirectory() {
+    String directory = globalConfig.getString(SCHEMA_SNAPSHOT_DIRECTORY_OPT);
+    return directory.isEmpty() ? Optional.empty() : Optional.of(Paths.get(directory));
+  }
+
+  public Map<String, String> getSettings() {
+    return settings;
+  }
+
+  public int getColumnSubsetStatementsCacheSize() {
+    return globalConfig.getInt(COLUMN_SUBSET_STATEMENTS_CACHE_SIZE_OPT);
+  }
+
+  public boolean isDryRun() {
+    return globalConfig.getBoolean(DRY_RUN_OPT);
+  }
+
+  public int getMappingThreads() {
+    return globalConfig.getInt(MAPPING_THREADS_OPT);
+  }
+
+  public boolean isSharedMappingExecutor() {
+    return globalConfig.getBoolean(SHARED_MAPPING_EXECUTOR_OPT);
+  }
+
+  public int getMappingWeight() {
+    return globalConfig.getInt(MAPPING_WEIGHT_OPT);
+  }
+
+  public boolean isVirtualThreads() {
+    return globalConfig.getBoolean(VIRTUAL_THREADS_OPT);
+  }
+
+  public int getStatementQueueCapacity() {
+    return globalConfig.getInt(STATEMENT_QUEUE_CAPACITY_OPT);
+  }
+
+  public int getFailedRecordLogSamplingInterval() {
+    return globalConfig.getInt(FAILED_RECORD_LOG_SAMPLING_INTERVAL_OPT);
+  }
+
+  public WaitStrategy getStatementQueueWaitStrategy() {
+    String waitStrategy = globalConfig.getString(STATEMENT_QUEUE_WAIT_STRATEGY_OPT);
+    for (WaitStrategy value : WaitStrategy.values()) {
+      if (value.name().equalsIgnoreCase(waitStrategy)) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException(
+        "Invalid value for setting "
+            + STATEMENT_QUEUE_WAIT_STRATEGY_OPT
+            + ", expecting either Spin, Yield or Park, got: "
+            + waitStrategy);
+  }
+
   @Override
   public String toString() {
     return String.format(
@@ -605,4 +906,13 @@ public class CassandraSinkConfig {
   public Map<String, String> getJavaDriverSettings() {
     return javaDriverSettings;
   }
+
+  /**
+   * @return the keyspaces whose schema metadata the driver should refresh, if the driver settings
+   *     do not list them; empty if they do
+   */
+  @NonNull
+  public Set<String> getDefaultRefreshedKeyspaces() {
+    return defaultRefreshedKeyspaces;
+  }
 }
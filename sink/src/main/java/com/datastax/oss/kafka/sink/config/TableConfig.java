@@ -24,8 +24,11 @@ import com.datastax.oss.kafka.sink.util.StringUtil;
 import com.datastax.oss.kafka.sink.util.TimeUnitConverter;
 import com.datastax.oss.protocol.internal.ProtocolConstants;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -51,6 +54,14 @@ public class TableConfig extends AbstractConfig {
 
   static final String DELETES_ENABLED_OPT = "deletesEnabled";
   private static final String NULL_TO_UNSET_OPT = "nullToUnset";
+  public static final String COLUMN_SUBSET_STATEMENTS_OPT = "columnSubsetStatements";
+  public static final String AGGREGATE_WINDOW_OPT = "aggregateWindow";
+  public static final String AGGREGATE_TIME_COLUMN_OPT = "aggregateTimeColumn";
+  public static final String AGGREGATE_FUNCTIONS_OPT = "aggregateFunctions";
+  public static final String AGGREGATE_ALLOWED_LATENESS_OPT = "aggregateAllowedLateness";
+  public static final String AGGREGATE_MAX_ROWS_OPT = "aggregateMaxRows";
+  public static final String UNCHANGED_ROW_CACHE_SIZE_OPT = "unchangedRowCacheSize";
+  public static final String UNCHANGED_ROW_CACHE_TTL_OPT = "unchangedRowCacheTtl";
   private static final Pattern DELIM_PAT = Pattern.compile(", *");
 
   private final String topicName;
@@ -64,7 +75,24 @@ public class TableConfig extends AbstractConfig {
   private final TimeUnit timestampTimeUnit;
   private final boolean nullToUnset;
   private final boolean deletesEnabled;
+  private final boolean columnSubsetStatements;
   private final String query;
+  private final Duration aggregateWindow;
+  private final CqlIdentifier aggregateTimeColumn;
+  private final Map<CqlIdentifier, AggregateFunction> aggregateFunctions;
+  private final Duration aggregateAllowedLateness;
+  private final int aggregateMaxRows;
+  private final int unchangedRowCacheSize;
+  private final Duration unchangedRowCacheTtl;
+
+  /** How the records aggregated into a row combine the values of a column. */
+  public enum AggregateFunction {
+    SUM,
+    COUNT,
+    MIN,
+    MAX,
+    LAST
+  }
 
   private TableConfig(
       @NonNull String topicName,
@@ -103,11 +131,112 @@ public class TableConfig extends AbstractConfig {
         TimeUnit.valueOf(
             getString(getTableSettingPath(topicName, keyspace, table, TIMESTAMP_TIME_UNIT_OPT)));
 
+    aggregateWindow =
+        Duration.ofSeconds(
+            getLong(getTableSettingPath(topicName, keyspace, table, AGGREGATE_WINDOW_OPT)));
+    aggregateAllowedLateness =
+        Duration.ofSeconds(
+            getLong(
+                getTableSettingPath(topicName, keyspace, table, AGGREGATE_ALLOWED_LATENESS_OPT)));
+    aggregateMaxRows =
+        getInt(getTableSettingPath(topicName, keyspace, table, AGGREGATE_MAX_ROWS_OPT));
+    aggregateTimeColumn =
+        parseAggregateTimeColumn(
+            getTableSettingPath(topicName, keyspace, table, AGGREGATE_TIME_COLUMN_OPT));
+    aggregateFunctions =
+        parseAggregateFunctions(
+            getTableSettingPath(topicName, keyspace, table, AGGREGATE_FUNCTIONS_OPT));
+
+    unchangedRowCacheSize =
+        getInt(getTableSettingPath(topicName, keyspace, table, UNCHANGED_ROW_CACHE_SIZE_OPT));
+    unchangedRowCacheTtl =
+        Duration.ofSeconds(
+            getLong(getTableSettingPath(topicName, keyspace, table, UNCHANGED_ROW_CACHE_TTL_OPT)));
+
     nullToUnset = getBoolean(getTableSettingPath(topicName, keyspace, table, NULL_TO_UNSET_OPT));
+    // A row of aggregates never stands for a deleted record.
     deletesEnabled =
-        getBoolean(getTableSettingPath(topicName, keyspace, table, DELETES_ENABLED_OPT));
+        getBoolean(getTableSettingPath(topicName, keyspace, table, DELETES_ENABLED_OPT))
+            && !isAggregated();
+    columnSubsetStatements =
+        getBoolean(getTableSettingPath(topicName, keyspace, table, COLUMN_SUBSET_STATEMENTS_OPT));
     query = getString(getTableSettingPath(topicName, keyspace, table, QUERY_OPT));
     validateQuery();
+    validateAggregation();
+  }
+
+  private CqlIdentifier parseAggregateTimeColumn(String settingPath) {
+    String value = getString(settingPath);
+    if (!isAggregated()) {
+      return null;
+    }
+    if (value == null) {
+      throw new ConfigException(
+          settingPath, null, String.format("must be set when %s is set", AGGREGATE_WINDOW_OPT));
+    }
+    CqlIdentifier column = parseLoosely(value);
+    if (!mapping.containsKey(column)) {
+      throw new ConfigException(
+          settingPath, StringUtil.singleQuote(value), "the column is not mapped");
+    }
+    return column;
+  }
+
+  @NonNull
+  private Map<CqlIdentifier, AggregateFunction> parseAggregateFunctions(String settingPath) {
+    String value = getString(settingPath);
+    if (value.trim().isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<CqlIdentifier, AggregateFunction> functions = new LinkedHashMap<>();
+    for (String entry : Splitter.on(DELIM_PAT).trimResults().omitEmptyStrings().split(value)) {
+      int separator = entry.indexOf('=');
+      if (separator < 0) {
+        throw new ConfigException(
+            settingPath,
+            StringUtil.singleQuote(value),
+            String.format("expected 'column=function' but got %s", StringUtil.singleQuote(entry)));
+      }
+      CqlIdentifier column = parseLoosely(entry.substring(0, separator).trim());
+      if (!mapping.containsKey(column)) {
+        throw new ConfigException(
+            settingPath,
+            StringUtil.singleQuote(value),
+            String.format("column %s is not mapped", column.asCql(true)));
+      }
+      String function = entry.substring(separator + 1).trim();
+      try {
+        functions.put(column, AggregateFunction.valueOf(function.toUpperCase()));
+      } catch (IllegalArgumentException e) {
+        throw new ConfigException(
+            settingPath,
+            StringUtil.singleQuote(value),
+            String.format(
+                "unknown function %s, valid values include: %s",
+                StringUtil.singleQuote(function),
+                Arrays.stream(AggregateFunction.values())
+                    .map(f -> f.name().toLowerCase())
+                    .collect(Collectors.joining(", "))));
+      }
+    }
+    return functions;
+  }
+
+  private void validateAggregation() {
+    if (isAggregated() && columnSubsetStatements) {
+      throw new ConfigException(
+          String.format(
+              "You cannot provide both %s and %s.",
+              getSettingPath(AGGREGATE_WINDOW_OPT), getSettingPath(COLUMN_SUBSET_STATEMENTS_OPT)));
+    }
+    if (aggregateFunctions.containsKey(aggregateTimeColumn)) {
+      throw new ConfigException(
+          String.format(
+              "The %s %s cannot be listed in %s.",
+              AGGREGATE_TIME_COLUMN_OPT,
+              aggregateTimeColumn.asCql(true),
+              getSettingPath(AGGREGATE_FUNCTIONS_OPT)));
+    }
   }
 
   private void validateQuery() {
@@ -121,6 +250,19 @@ public class TableConfig extends AbstractConfig {
               QUERY_OPT,
               DELETES_ENABLED_OPT));
     }
+    if (isQueryProvided() && columnSubsetStatements) {
+      throw new ConfigException(
+          String.format(
+              "You cannot provide both %s and %s. If you want to provide own %s, set the %s to false.",
+              getTableSettingPath(topicName, keyspace.asInternal(), table.asInternal(), QUERY_OPT),
+              getTableSettingPath(
+                  topicName,
+                  keyspace.asInternal(),
+                  table.asInternal(),
+                  COLUMN_SUBSET_STATEMENTS_OPT),
+              QUERY_OPT,
+              COLUMN_SUBSET_STATEMENTS_OPT));
+    }
   }
 
   private ConsistencyLevel convertToCloudCLIfNeeded(boolean cloud, ConsistencyLevel cl) {
@@ -222,6 +364,63 @@ public class TableConfig extends AbstractConfig {
     return deletesEnabled;
   }
 
+  public boolean isColumnSubsetStatements() {
+    return columnSubsetStatements;
+  }
+
+  /** @return whether records are aggregated by time window before being written. */
+  public boolean isAggregated() {
+    return !aggregateWindow.isZero();
+  }
+
+  /** @return the length of the time windows records are aggregated over. */
+  @NonNull
+  public Duration getAggregateWindow() {
+    return aggregateWindow;
+  }
+
+  /**
+   * @return the column whose value is truncated to the start of its window, or null if records are
+   *     not aggregated
+   */
+  public CqlIdentifier getAggregateTimeColumn() {
+    return aggregateTimeColumn;
+  }
+
+  /**
+   * @return the function of each aggregated column; columns that are neither listed nor part of the
+   *     primary key keep their last value
+   */
+  @NonNull
+  public Map<CqlIdentifier, AggregateFunction> getAggregateFunctions() {
+    return aggregateFunctions;
+  }
+
+  /** @return how long after its end a window is still open to late records. */
+  @NonNull
+  public Duration getAggregateAllowedLateness() {
+    return aggregateAllowedLateness;
+  }
+
+  /** @return the maximum number of rows being aggregated at any time, per task. */
+  public int getAggregateMaxRows() {
+    return aggregateMaxRows;
+  }
+
+  /**
+   * @return the number of primary keys whose last write is remembered, to skip writing the same
+   *     values again; 0 if disabled
+   */
+  public int getUnchangedRowCacheSize() {
+    return unchangedRowCacheSize;
+  }
+
+  /** @return how long the last write of a primary key is remembered. */
+  @NonNull
+  public Duration getUnchangedRowCacheTtl() {
+    return unchangedRowCacheTtl;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -256,7 +455,7 @@ public class TableConfig extends AbstractConfig {
   public String toString() {
     return String.format(
         "{keyspace: %s, table: %s, cl: %s, ttl: %d, nullToUnset: %b, "
-            + "deletesEnabled: %b, mapping:\n%s\n"
+            + "deletesEnabled: %b, columnSubsetStatements: %b, mapping:\n%s\n"
             + "}",
         keyspace,
         table,
@@ -264,6 +463,7 @@ public class TableConfig extends AbstractConfig {
         ttl,
         nullToUnset,
         deletesEnabled,
+        columnSubsetStatements,
         Splitter.on(DELIM_PAT)
             .splitToList(mappingString)
             .stream()
@@ -314,6 +514,13 @@ public class TableConfig extends AbstractConfig {
             true,
             ConfigDef.Importance.HIGH,
             "Whether nulls in Kafka should be treated as UNSET in the database")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, COLUMN_SUBSET_STATEMENTS_OPT),
+            ConfigDef.Type.BOOLEAN,
+            false,
+            ConfigDef.Importance.LOW,
+            "Whether to insert records with a statement that only lists their non-null columns, "
+                + "instead of leaving the other columns unset; implies nullToUnset")
         .define(
             getTableSettingPath(topicName, keyspace, table, TTL_TIME_UNIT_OPT),
             ConfigDef.Type.STRING,
@@ -331,7 +538,61 @@ public class TableConfig extends AbstractConfig {
             ConfigDef.Type.STRING,
             null,
             ConfigDef.Importance.HIGH,
-            "Custom query to use as a Prepared Statement for insert to this table.");
+            "Custom query to use as a Prepared Statement for insert to this table.")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, AGGREGATE_WINDOW_OPT),
+            ConfigDef.Type.LONG,
+            0L,
+            ConfigDef.Range.atLeast(0),
+            ConfigDef.Importance.LOW,
+            "Length in seconds of the time windows records are aggregated over before being "
+                + "written; 0 disables aggregation")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, AGGREGATE_TIME_COLUMN_OPT),
+            ConfigDef.Type.STRING,
+            null,
+            ConfigDef.Importance.LOW,
+            "Mapped timestamp or bigint (milliseconds) column that assigns records to windows; "
+                + "its value is written truncated to the start of the window")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, AGGREGATE_FUNCTIONS_OPT),
+            ConfigDef.Type.STRING,
+            "",
+            ConfigDef.Importance.LOW,
+            "Aggregate function of regular columns, in the form of 'col1=sum, col2=count'; "
+                + "one of sum, count, min, max or last, which is the default")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, AGGREGATE_ALLOWED_LATENESS_OPT),
+            ConfigDef.Type.LONG,
+            0L,
+            ConfigDef.Range.atLeast(0),
+            ConfigDef.Importance.LOW,
+            "Number of seconds a window stays open after its end, measured against the latest "
+                + "time seen in the records")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, AGGREGATE_MAX_ROWS_OPT),
+            ConfigDef.Type.INT,
+            10000,
+            ConfigDef.Range.atLeast(1),
+            ConfigDef.Importance.LOW,
+            "Maximum number of rows with records not written yet in a task; the oldest such row "
+                + "is written early when it is exceeded")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, UNCHANGED_ROW_CACHE_SIZE_OPT),
+            ConfigDef.Type.INT,
+            0,
+            ConfigDef.Range.between(0, 1 << 30),
+            ConfigDef.Importance.LOW,
+            "Number of primary keys whose last write is remembered, so that records binding the "
+                + "same values again are not written; 0 disables the cache")
+        .define(
+            getTableSettingPath(topicName, keyspace, table, UNCHANGED_ROW_CACHE_TTL_OPT),
+            ConfigDef.Type.LONG,
+            3600L,
+            ConfigDef.Range.atLeast(1),
+            ConfigDef.Importance.LOW,
+            "Number of seconds the last write of a primary key is remembered, which bounds how "
+                + "long changes made by other writers can hide a record");
   }
 
   @NonNull
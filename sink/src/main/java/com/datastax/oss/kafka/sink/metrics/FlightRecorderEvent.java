@@ -0,0 +1,276 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableList;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Java Flight Recorder event type of the connector.
+ *
+ * <p>The connector targets Java 8, which has no {@code jdk.jfr} API, so event types are defined at
+ * runtime through {@code jdk.jfr.EventFactory} when the JVM provides it, and are no-ops otherwise.
+ * {@link #begin()} returns null unless a recording has the event enabled; callers skip all other
+ * work, including computing the field values, in that case:
+ *
+ * <pre>
+ * Object event = FlightRecorderEvent.PUT.begin();
+ * ...
+ * if (event != null) {
+ *   FlightRecorderEvent.PUT.commit(event, records, failures);
+ * }
+ * </pre>
+ */
+public final class FlightRecorderEvent {
+  private static final Logger log = LoggerFactory.getLogger(FlightRecorderEvent.class);
+  private static final String[] CATEGORY = {"Kafka Connect", "Cassandra Sink"};
+
+  /**
+   * A batch or single statement executed; its duration is the time until the driver answered.
+   * Fields: topic, keyspaceAndTable, statements, bytes, success.
+   */
+  public static final FlightRecorderEvent BATCH =
+      new FlightRecorderEvent(
+          "com.datastax.oss.kafka.sink.Batch",
+          "Batch Executed",
+          "A batch or single statement written to the database",
+          field(String.class, "topic", "Topic"),
+          field(String.class, "keyspaceAndTable", "Table"),
+          field(int.class, "statements", "Statements"),
+          field(long.class, "bytes", "Size In Bytes"),
+          field(boolean.class, "success", "Success"));
+
+  /** A put() cycle of a task. Fields: records, failures. */
+  public static final FlightRecorderEvent PUT =
+      new FlightRecorderEvent(
+          "com.datastax.oss.kafka.sink.Put",
+          "Put",
+          "A batch of records handed to the task by the Connect framework",
+          field(int.class, "records", "Records"),
+          field(int.class, "failures", "Failed Records"));
+
+  /**
+   * A wait for a permit of the request barrier, only emitted when no permit was immediately
+   * available. Fields: topic, keyspaceAndTable.
+   */
+  public static final FlightRecorderEvent REQUEST_BARRIER_WAIT =
+      new FlightRecorderEvent(
+          "com.datastax.oss.kafka.sink.RequestBarrierWait",
+          "Request Barrier Wait",
+          "Wait for one of the maxConcurrentRequests permits",
+          field(String.class, "topic", "Topic"),
+          field(String.class, "keyspaceAndTable", "Table"));
+
+  /**
+   * A failed record. Fields: topic, partition (-1 if the record has none), offset, driverFailure,
+   * exception, message.
+   */
+  public static final FlightRecorderEvent FAILURE =
+      new FlightRecorderEvent(
+          "com.datastax.oss.kafka.sink.Failure",
+          "Record Failure",
+          "A record that could not be mapped or written",
+          field(String.class, "topic", "Topic"),
+          field(int.class, "partition", "Partition"),
+          field(long.class, "offset", "Offset"),
+          field(boolean.class, "driverFailure", "Driver Failure"),
+          field(String.class, "exception", "Exception"),
+          field(String.class, "message", "Message"));
+
+  @Nullable private final Object factory;
+  private final MethodHandle isEnabled;
+  private final MethodHandle newEvent;
+  private final MethodHandle eventBegin;
+  private final MethodHandle eventEnd;
+  private final MethodHandle eventShouldCommit;
+  private final MethodHandle eventSet;
+  private final MethodHandle eventCommit;
+
+  @VisibleForTesting
+  FlightRecorderEvent(String name, String label, String description, Field... fields) {
+    Object factory = null;
+    MethodHandle isEnabled = null;
+    MethodHandle newEvent = null;
+    MethodHandle eventBegin = null;
+    MethodHandle eventEnd = null;
+    MethodHandle eventShouldCommit = null;
+    MethodHandle eventSet = null;
+    MethodHandle eventCommit = null;
+    try {
+      ClassLoader loader = ClassLoader.getSystemClassLoader();
+      Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", true, loader);
+      Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor", true, loader);
+      Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory", true, loader);
+      Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType", true, loader);
+      Class<?> eventClass = Class.forName("jdk.jfr.Event", true, loader);
+      Constructor<?> annotationElement =
+          annotationElementClass.getConstructor(Class.class, Object.class);
+      Constructor<?> valueDescriptor =
+          valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+
+      List<Object> annotations = new ArrayList<>();
+      annotations.add(annotationElement.newInstance(annotation("Name", loader), name));
+      annotations.add(annotationElement.newInstance(annotation("Label", loader), label));
+      annotations.add(
+          annotationElement.newInstance(annotation("Description", loader), description));
+      annotations.add(annotationElement.newInstance(annotation("Category", loader), CATEGORY));
+      annotations.add(annotationElement.newInstance(annotation("StackTrace", loader), false));
+      List<Object> descriptors = new ArrayList<>();
+      for (Field field : fields) {
+        Object fieldLabel = annotationElement.newInstance(annotation("Label", loader), field.label);
+        descriptors.add(
+            valueDescriptor.newInstance(field.type, field.name, ImmutableList.of(fieldLabel)));
+      }
+      Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+      factory = create.invoke(null, annotations, descriptors);
+
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      MethodType objectToVoid = MethodType.methodType(void.class, Object.class);
+      Object eventType = eventFactoryClass.getMethod("getEventType").invoke(factory);
+      isEnabled =
+          lookup
+              .findVirtual(eventTypeClass, "isEnabled", MethodType.methodType(boolean.class))
+              .bindTo(eventType);
+      newEvent =
+          lookup
+              .findVirtual(eventFactoryClass, "newEvent", MethodType.methodType(eventClass))
+              .bindTo(factory)
+              .asType(MethodType.methodType(Object.class));
+      eventBegin =
+          lookup
+              .findVirtual(eventClass, "begin", MethodType.methodType(void.class))
+              .asType(objectToVoid);
+      eventEnd =
+          lookup
+              .findVirtual(eventClass, "end", MethodType.methodType(void.class))
+              .asType(objectToVoid);
+      eventCommit =
+          lookup
+              .findVirtual(eventClass, "commit", MethodType.methodType(void.class))
+              .asType(objectToVoid);
+      eventShouldCommit =
+          lookup
+              .findVirtual(eventClass, "shouldCommit", MethodType.methodType(boolean.class))
+              .asType(MethodType.methodType(boolean.class, Object.class));
+      eventSet =
+          lookup
+              .findVirtual(
+                  eventClass, "set", MethodType.methodType(void.class, int.class, Object.class))
+              .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+    } catch (ClassNotFoundException e) {
+      log.debug("Java Flight Recorder is not available, {} events are disabled", name);
+      factory = null;
+    } catch (Exception | LinkageError e) {
+      log.warn("Could not define Java Flight Recorder event {}, it is disabled", name, e);
+      factory = null;
+    }
+    this.factory = factory;
+    this.isEnabled = isEnabled;
+    this.newEvent = newEvent;
+    this.eventBegin = eventBegin;
+    this.eventEnd = eventEnd;
+    this.eventShouldCommit = eventShouldCommit;
+    this.eventSet = eventSet;
+    this.eventCommit = eventCommit;
+  }
+
+  /** Whether the event type could be defined in this JVM. */
+  public boolean isAvailable() {
+    return factory != null;
+  }
+
+  /**
+   * Starts timing a new event.
+   *
+   * @return the event, or null if Flight Recorder is unavailable or no recording has the event
+   *     enabled.
+   */
+  @Nullable
+  @IgnoreJRERequirement // invokeExact is signature polymorphic, unknown to the java18 signature
+  public Object begin() {
+    if (factory == null) {
+      return null;
+    }
+    try {
+      if (!(boolean) isEnabled.invokeExact()) {
+        return null;
+      }
+      Object event = (Object) newEvent.invokeExact();
+      eventBegin.invokeExact(event);
+      return event;
+    } catch (Throwable t) {
+      log.debug("Could not begin Java Flight Recorder event", t);
+      return null;
+    }
+  }
+
+  /**
+   * Ends the given event and commits it with the given field values, in the order the fields were
+   * declared.
+   *
+   * @param event the event returned by {@link #begin()}; null is ignored.
+   * @param values the field values.
+   */
+  @IgnoreJRERequirement // see begin()
+  public void commit(@Nullable Object event, Object... values) {
+    if (event == null) {
+      return;
+    }
+    try {
+      eventEnd.invokeExact(event);
+      if ((boolean) eventShouldCommit.invokeExact(event)) {
+        for (int i = 0; i < values.length; i++) {
+          eventSet.invokeExact(event, i, values[i]);
+        }
+        eventCommit.invokeExact(event);
+      }
+    } catch (Throwable t) {
+      log.debug("Could not commit Java Flight Recorder event", t);
+    }
+  }
+
+  private static Class<?> annotation(String simpleName, ClassLoader loader)
+      throws ClassNotFoundException {
+    return Class.forName("jdk.jfr." + simpleName, true, loader);
+  }
+
+  private static Field field(Class<?> type, String name, String label) {
+    return new Field(type, name, label);
+  }
+
+  static final class Field {
+    private final Class<?> type;
+    private final String name;
+    private final String label;
+
+    Field(Class<?> type, String name, String label) {
+      this.type = type;
+      this.name = name;
+      this.label = label;
+    }
+  }
+}
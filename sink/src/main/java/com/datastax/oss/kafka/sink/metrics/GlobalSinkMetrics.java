@@ -18,13 +18,26 @@ package com.datastax.oss.kafka.sink.metrics;
 import avro.shaded.com.google.common.annotations.VisibleForTesting;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 
+/**
+ * Metrics that are not specific to a topic. As the metric registry is shared by all the connector
+ * instances of the worker, so are these metrics: putDuration, for instance, times the puts of all
+ * the tasks of the worker.
+ */
 public class GlobalSinkMetrics {
   private static final String FAILED_RECORDS_WITH_UNKNOWN_TOPIC = "failedRecordsWithUnknownTopic";
   private final Meter failedRecordsWithUnknownTopicCounter;
+  private final Timer putDurationTimer;
 
   public GlobalSinkMetrics(MetricRegistry metricRegistry) {
+    this(metricRegistry, HistogramFactory.DEFAULT);
+  }
+
+  public GlobalSinkMetrics(MetricRegistry metricRegistry, HistogramFactory histogramFactory) {
     failedRecordsWithUnknownTopicCounter = metricRegistry.meter(FAILED_RECORDS_WITH_UNKNOWN_TOPIC);
+    putDurationTimer =
+        histogramFactory.timer(metricRegistry, MetricNamesCreator.createPutDurationMetricName());
   }
 
   @VisibleForTesting
@@ -32,6 +45,10 @@ public class GlobalSinkMetrics {
     return failedRecordsWithUnknownTopicCounter;
   }
 
+  public Timer getPutDurationTimer() {
+    return putDurationTimer;
+  }
+
   public void incrementFailedWithUnknownTopicCounter() {
     failedRecordsWithUnknownTopicCounter.mark();
   }
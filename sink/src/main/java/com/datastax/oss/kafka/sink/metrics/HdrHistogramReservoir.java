@@ -0,0 +1,174 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+/**
+ * A {@link Reservoir} backed by an HdrHistogram {@link Recorder}, whose updates are wait-free,
+ * unlike the default exponentially decaying reservoir that takes a lock.
+ *
+ * <p>Snapshots cover the values recorded during the last complete refresh interval. Intervals are
+ * consecutive and of fixed length, starting when the reservoir is created; the recorder is flipped
+ * by the first update or snapshot past the end of the current interval. Values recorded
+ * concurrently with a flip may be counted in either interval.
+ */
+public class HdrHistogramReservoir implements Reservoir {
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+  private final long refreshIntervalNanos;
+  private final LongSupplier nanoClock;
+
+  /** The histogram of the last complete interval; guarded by this. */
+  private Histogram lastInterval;
+
+  /** When the current interval ends; only written while holding this. */
+  private volatile long intervalEndNanos;
+
+  public HdrHistogramReservoir(long refreshInterval, TimeUnit unit) {
+    this(refreshInterval, unit, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  HdrHistogramReservoir(long refreshInterval, TimeUnit unit, LongSupplier nanoClock) {
+    this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+    this.nanoClock = nanoClock;
+    this.lastInterval = recorder.getIntervalHistogram();
+    this.intervalEndNanos = nanoClock.getAsLong() + refreshIntervalNanos;
+  }
+
+  @Override
+  public synchronized int size() {
+    return (int) Math.min(Integer.MAX_VALUE, lastIntervalHistogram().getTotalCount());
+  }
+
+  @Override
+  public void update(long value) {
+    if (nanoClock.getAsLong() - intervalEndNanos >= 0) {
+      flipIfIntervalEnded();
+    }
+    recorder.recordValue(Math.max(0, value));
+  }
+
+  @Override
+  public synchronized Snapshot getSnapshot() {
+    // Snapshots get their own copy, as the histogram is recycled on the next flip.
+    return new HdrSnapshot(lastIntervalHistogram().copy());
+  }
+
+  private Histogram lastIntervalHistogram() {
+    flipIfIntervalEnded();
+    return lastInterval;
+  }
+
+  private synchronized void flipIfIntervalEnded() {
+    long now = nanoClock.getAsLong();
+    long elapsedSinceEnd = now - intervalEndNanos;
+    if (elapsedSinceEnd < 0) {
+      return;
+    }
+    lastInterval = recorder.getIntervalHistogram(lastInterval);
+    if (elapsedSinceEnd >= refreshIntervalNanos) {
+      // Nothing flipped the recorder during the last complete interval, so nothing was recorded
+      // in it: the values are those of an older interval.
+      lastInterval.reset();
+    }
+    intervalEndNanos = now - elapsedSinceEnd % refreshIntervalNanos + refreshIntervalNanos;
+  }
+
+  private static class HdrSnapshot extends Snapshot {
+    private final Histogram histogram;
+
+    private HdrSnapshot(Histogram histogram) {
+      this.histogram = histogram;
+    }
+
+    @Override
+    public double getValue(double quantile) {
+      return histogram.getValueAtPercentile(quantile * 100);
+    }
+
+    /**
+     * @return the distinct recorded values, in ascending order; each value represents the values of
+     *     its HdrHistogram bucket.
+     */
+    @Override
+    public long[] getValues() {
+      long[] values = new long[countDistinctValues()];
+      int i = 0;
+      for (HistogramIterationValue value : histogram.recordedValues()) {
+        values[i++] = histogram.highestEquivalentValue(value.getValueIteratedTo());
+      }
+      return values;
+    }
+
+    private int countDistinctValues() {
+      int count = 0;
+      for (HistogramIterationValue ignored : histogram.recordedValues()) {
+        count++;
+      }
+      return count;
+    }
+
+    @Override
+    public int size() {
+      return (int) Math.min(Integer.MAX_VALUE, histogram.getTotalCount());
+    }
+
+    @Override
+    public long getMax() {
+      return histogram.getTotalCount() == 0 ? 0 : histogram.getMaxValue();
+    }
+
+    @Override
+    public double getMean() {
+      return histogram.getTotalCount() == 0 ? 0 : histogram.getMean();
+    }
+
+    @Override
+    public long getMin() {
+      return histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue();
+    }
+
+    @Override
+    public double getStdDev() {
+      return histogram.getTotalCount() == 0 ? 0 : histogram.getStdDeviation();
+    }
+
+    @Override
+    public void dump(OutputStream output) {
+      try (PrintWriter out =
+          new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+        for (long value : getValues()) {
+          out.printf("%d%n", value);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets or creates the histograms and timers of the connector, backed either by the default
+ * reservoir of the metrics library or, for the low overhead metrics mode, by an {@link
+ * HdrHistogramReservoir}.
+ */
+public class HistogramFactory {
+
+  /** Factory of histograms and timers with the default reservoir. */
+  public static final HistogramFactory DEFAULT = new HistogramFactory(false);
+
+  /** The interval covered by the snapshots of HdrHistogram-backed metrics. */
+  private static final long HDR_REFRESH_INTERVAL_SECONDS = 30;
+
+  private final boolean lowOverhead;
+
+  public HistogramFactory(boolean lowOverhead) {
+    this.lowOverhead = lowOverhead;
+  }
+
+  public Histogram histogram(MetricRegistry metricRegistry, String name) {
+    return lowOverhead
+        ? metricRegistry.histogram(name, () -> new Histogram(newHdrReservoir()))
+        : metricRegistry.histogram(name);
+  }
+
+  public Timer timer(MetricRegistry metricRegistry, String name) {
+    return lowOverhead
+        ? metricRegistry.timer(name, () -> new Timer(newHdrReservoir()))
+        : metricRegistry.timer(name);
+  }
+
+  private static HdrHistogramReservoir newHdrReservoir() {
+    return new HdrHistogramReservoir(HDR_REFRESH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+}
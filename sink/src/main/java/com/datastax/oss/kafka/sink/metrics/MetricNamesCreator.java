@@ -35,6 +35,34 @@ public class MetricNamesCreator {
     return topicKeyspacePrefix(tableConfig, "failedRecordCount");
   }
 
+  public static String createMappingTimeMetricName(TableConfig tableConfig) {
+    return topicKeyspacePrefix(tableConfig, "mappingTime");
+  }
+
+  public static String createQueueWaitTimeMetricName(TableConfig tableConfig) {
+    return topicKeyspacePrefix(tableConfig, "queueWaitTime");
+  }
+
+  public static String createRequestBarrierWaitTimeMetricName(TableConfig tableConfig) {
+    return topicKeyspacePrefix(tableConfig, "requestBarrierWaitTime");
+  }
+
+  public static String createExecuteTimeMetricName(TableConfig tableConfig) {
+    return topicKeyspacePrefix(tableConfig, "executeTime");
+  }
+
+  public static String createUnchangedRowCacheHitsMetricName(TableConfig tableConfig) {
+    return topicKeyspacePrefix(tableConfig, "unchangedRowCacheHits");
+  }
+
+  public static String createUnchangedRowCacheMissesMetricName(TableConfig tableConfig) {
+    return topicKeyspacePrefix(tableConfig, "unchangedRowCacheMisses");
+  }
+
+  public static String createUnchangedRowCacheEvictionsMetricName(TableConfig tableConfig) {
+    return topicKeyspacePrefix(tableConfig, "unchangedRowCacheEvictions");
+  }
+
   private static String topicKeyspacePrefix(TableConfig tableConfig, String metricName) {
     return String.format(
         "%s/%s/%s/%s",
@@ -44,6 +72,34 @@ public class MetricNamesCreator {
         metricName);
   }
 
+  public static String createRecordLagMetricName(String topicName, int partition) {
+    return topicPartitionPrefix(topicName, partition, "recordLag");
+  }
+
+  public static String createLastWrittenOffsetMetricName(String topicName, int partition) {
+    return topicPartitionPrefix(topicName, partition, "lastWrittenOffset");
+  }
+
+  public static String createInFlightRecordsMetricName(String topicName, int partition) {
+    return topicPartitionPrefix(topicName, partition, "inFlightRecords");
+  }
+
+  private static String topicPartitionPrefix(String topicName, int partition, String metricName) {
+    return String.format("%s/%d/%s", topicName, partition, metricName);
+  }
+
+  public static String createPutDurationMetricName() {
+    return "putDuration";
+  }
+
+  public static String createStartupPhaseMetricName(String phase) {
+    return "startup/" + phase;
+  }
+
+  public static String createSaturationMetricName(String name) {
+    return "saturation/" + name;
+  }
+
   public static String createDriverMetricName(String name) {
     return "driver/" + name;
   }
@@ -0,0 +1,149 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.kafka.common.KafkaException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded HTTP server that exposes a {@link MetricRegistry} in the OpenMetrics text format on the
+ * /metrics path.
+ *
+ * <p>Connector instances of a worker that are configured with the same address share one server.
+ * Scrapes are handled one at a time on the server thread, reusing the same buffers.
+ */
+public class MetricsHttpServer {
+  private static final Logger log = LoggerFactory.getLogger(MetricsHttpServer.class);
+  private static final String CONTENT_TYPE =
+      "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  /** The running servers by address; guarded by MetricsHttpServer.class. */
+  private static final Map<InetSocketAddress, MetricsHttpServer> SERVERS = new HashMap<>();
+
+  private final InetSocketAddress address;
+  private final HttpServer server;
+  private final MetricRegistry metricRegistry;
+  private final OpenMetricsWriter writer = new OpenMetricsWriter();
+  private final StringBuilder text = new StringBuilder();
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+  private ByteBuffer bytes = ByteBuffer.allocate(0);
+
+  /** The number of connector instances using this server; guarded by MetricsHttpServer.class. */
+  private int references;
+
+  private MetricsHttpServer(InetSocketAddress address, MetricRegistry metricRegistry)
+      throws IOException {
+    this.address = address;
+    this.metricRegistry = metricRegistry;
+    server = HttpServer.create(address, 0);
+    server.createContext("/metrics", this::handle);
+    server.start();
+  }
+
+  /**
+   * Get the server listening on the given address, starting it if needed.
+   *
+   * @param host the host or address to bind to
+   * @param port the port to bind to
+   * @param metricRegistry the registry to expose, if the server is started
+   * @return the server; {@link #release()} it when it is no longer needed.
+   * @throws KafkaException if the server can't be started
+   */
+  public static synchronized MetricsHttpServer acquire(
+      String host, int port, MetricRegistry metricRegistry) {
+    InetSocketAddress address = new InetSocketAddress(host, port);
+    MetricsHttpServer server = SERVERS.get(address);
+    if (server == null) {
+      try {
+        server = new MetricsHttpServer(address, metricRegistry);
+      } catch (IOException e) {
+        throw new KafkaException(
+            String.format("Could not start metrics HTTP server on %s:%d", host, port), e);
+      }
+      log.info("Exposing metrics on http://{}:{}/metrics", host, server.getPort());
+      SERVERS.put(address, server);
+    }
+    server.references++;
+    return server;
+  }
+
+  /** Release this server, and stop it if no other connector instance uses it. */
+  public void release() {
+    synchronized (MetricsHttpServer.class) {
+      if (--references > 0) {
+        return;
+      }
+      SERVERS.remove(address);
+    }
+    server.stop(0);
+  }
+
+  @VisibleForTesting
+  int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private synchronized void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      text.setLength(0);
+      writer.write(metricRegistry, text);
+      encode();
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, bytes.remaining());
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(bytes.array(), 0, bytes.limit());
+      }
+    } catch (RuntimeException e) {
+      log.warn("Could not render metrics", e);
+      exchange.sendResponseHeaders(500, -1);
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /** Encode the text into the byte buffer, which only grows when the output does. */
+  private void encode() {
+    int maxBytes = (int) (text.length() * encoder.maxBytesPerChar());
+    if (bytes.capacity() < maxBytes) {
+      bytes = ByteBuffer.allocate(maxBytes);
+    }
+    // Through Buffer, as ByteBuffer only overrides these methods from Java 9 on.
+    ((Buffer) bytes).clear();
+    encoder.reset();
+    encoder.encode(CharBuffer.wrap(text), bytes, true);
+    encoder.flush(bytes);
+    ((Buffer) bytes).flip();
+  }
+}
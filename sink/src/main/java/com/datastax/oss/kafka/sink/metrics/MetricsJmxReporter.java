@@ -19,9 +19,14 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.jmx.JmxReporter;
 import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
 import com.datastax.oss.driver.shaded.guava.common.base.Splitter;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableSet;
 import com.datastax.oss.kafka.sink.util.JMXUtil;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import org.slf4j.Logger;
@@ -30,6 +35,26 @@ import org.slf4j.LoggerFactory;
 public class MetricsJmxReporter {
   private static final String CONNECTOR_DOMAIN = "com.datastax.oss.kafka.sink";
   private static final Logger log = LoggerFactory.getLogger(MetricsJmxReporter.class);
+  private static final String NODES_PREFIX = "nodes.";
+
+  /** The names of the metrics exposed per topic, keyspace and table. */
+  private static final Set<String> TABLE_METRICS =
+      ImmutableSet.of(
+          "batchSize",
+          "batchSizeInBytes",
+          "failedRecordCount",
+          "recordCount",
+          "mappingTime",
+          "queueWaitTime",
+          "requestBarrierWaitTime",
+          "executeTime",
+          "unchangedRowCacheHits",
+          "unchangedRowCacheMisses",
+          "unchangedRowCacheEvictions");
+
+  /** The names of the metrics exposed per topic and partition. */
+  private static final Set<String> PARTITION_METRICS =
+      ImmutableSet.of("recordLag", "lastWrittenOffset", "inFlightRecords");
 
   public static JmxReporter createJmxReporter(String instanceName, MetricRegistry metricRegistry) {
     return JmxReporter.forRegistry(metricRegistry)
@@ -51,50 +76,68 @@ public class MetricsJmxReporter {
       StringBuilder sb =
           new StringBuilder(jmxDomain)
               .append(":connector=")
-              .append(JMXUtil.quoteJMXIfNecessary(instanceName))
-              .append(',');
-      Iterator<String> tokens = Splitter.on("/").split(metricName).iterator();
-      if (metricName.contains("batchSize")
-          || metricName.contains("batchSizeInBytes")
-          || metricName.contains("failedRecordCount")
-          || metricName.contains("recordCount")) {
-        // special-case batchSize, batchSizeInBytes, failedRecordCount, recordCount metrics
-        // and expose them per topic, ks and table
-        sb.append("topic=")
-            .append(JMXUtil.quoteJMXIfNecessary(tokens.next()))
-            .append(",keyspace=")
-            .append(JMXUtil.quoteJMXIfNecessary(tokens.next()))
-            .append(",table=")
-            .append(JMXUtil.quoteJMXIfNecessary(tokens.next()))
-            .append(",name=")
-            .append(JMXUtil.quoteJMXIfNecessary(tokens.next()));
-      } else if (metricName.contains("driver")) {
-        // special-case driver metrics and expose them per session
-        sb.append("driver=").append(tokens.next());
-        Iterator<String> sessionAndMetric = Splitter.on('.').split(tokens.next()).iterator();
-        sb.append(",session=")
-            .append(JMXUtil.quoteJMXIfNecessary(sessionAndMetric.next()))
-            .append(",name=")
-            .append(JMXUtil.quoteJMXIfNecessary(sessionAndMetric.next()));
-      } else {
-        // other metrics get a generic path
-        int i = 1;
-        while (tokens.hasNext()) {
-          String token = tokens.next();
-          if (tokens.hasNext()) {
-            sb.append("level").append(i++);
-          } else {
-            sb.append("name");
-          }
-          sb.append('=').append(JMXUtil.quoteJMXIfNecessary(token));
-          if (tokens.hasNext()) {
-            sb.append(',');
-          }
-        }
-      }
+              .append(JMXUtil.quoteJMXIfNecessary(instanceName));
+      getNameProperties(metricName)
+          .forEach(
+              (key, value) ->
+                  sb.append(',')
+                      .append(key)
+                      .append('=')
+                      .append(JMXUtil.quoteJMXIfNecessary(value)));
       return new ObjectName(sb.toString());
     } catch (MalformedObjectNameException e) {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Split a metric name into the keys of its JMX object name, in order; other reporters use them as
+   * labels. The last key is always "name".
+   *
+   * @param metricName the name of the metric in the registry
+   * @return the keys and unquoted values
+   */
+  @NonNull
+  public static Map<String, String> getNameProperties(String metricName) {
+    Map<String, String> properties = new LinkedHashMap<>();
+    List<String> path = Splitter.on("/").splitToList(metricName);
+    String name = path.get(path.size() - 1);
+    Iterator<String> tokens = path.iterator();
+    // Match names exactly: a topic, keyspace or table may contain the name of another metric.
+    if (path.size() == 4 && TABLE_METRICS.contains(name)) {
+      // special-case batchSize, batchSizeInBytes, failedRecordCount, recordCount metrics
+      // and the write pipeline timers, and expose them per topic, ks and table
+      properties.put("topic", tokens.next());
+      properties.put("keyspace", tokens.next());
+      properties.put("table", tokens.next());
+      properties.put("name", tokens.next());
+    } else if (path.size() == 3 && PARTITION_METRICS.contains(name)) {
+      // special-case freshness metrics and expose them per topic and partition
+      properties.put("topic", tokens.next());
+      properties.put("partition", tokens.next());
+      properties.put("name", tokens.next());
+    } else if (path.size() == 2 && path.get(0).equals("driver")) {
+      // special-case driver metrics and expose them per session, and per node for node metrics
+      // (named <session>.nodes.<node>.<metric>)
+      properties.put("driver", tokens.next());
+      List<String> sessionAndMetric = Splitter.on('.').limit(2).splitToList(tokens.next());
+      properties.put("session", sessionAndMetric.get(0));
+      String metric = sessionAndMetric.get(1);
+      if (metric.startsWith(NODES_PREFIX)) {
+        List<String> nodeAndMetric =
+            Splitter.on('.').limit(2).splitToList(metric.substring(NODES_PREFIX.length()));
+        properties.put("node", nodeAndMetric.get(0));
+        metric = nodeAndMetric.get(1);
+      }
+      properties.put("name", metric);
+    } else {
+      // other metrics get a generic path
+      int i = 1;
+      while (tokens.hasNext()) {
+        String token = tokens.next();
+        properties.put(tokens.hasNext() ? "level" + i++ : "name", token);
+      }
+    }
+    return properties;
+  }
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Renders the metrics of a {@link MetricRegistry} in the OpenMetrics text format. The keys of the
+ * JMX object name of each metric (see {@link MetricsJmxReporter#getNameProperties(String)}) become
+ * labels, and its "name" key the metric family.
+ *
+ * <p>Scrapes should not disturb the write path: the families and label sets are only computed again
+ * when metrics are added to or removed from the registry, and output is appended to a
+ * caller-provided buffer that can be reused. Not thread-safe.
+ */
+class OpenMetricsWriter {
+
+  private static final String PREFIX = "cassandra_sink_";
+  private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.98, 0.99, 0.999};
+  private static final String[] QUANTILE_LABELS = {
+    "quantile=\"0.5\"",
+    "quantile=\"0.75\"",
+    "quantile=\"0.95\"",
+    "quantile=\"0.98\"",
+    "quantile=\"0.99\"",
+    "quantile=\"0.999\""
+  };
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  /** The metrics the layout was computed from, by name. */
+  private Map<String, Metric> layoutMetrics = Collections.emptyMap();
+
+  private List<Family> layout = Collections.emptyList();
+
+  void write(MetricRegistry registry, StringBuilder out) {
+    Map<String, Metric> metrics = registry.getMetrics();
+    if (!isLayoutOf(metrics)) {
+      layout = computeLayout(metrics);
+      layoutMetrics = new HashMap<>(metrics);
+    }
+    for (Family family : layout) {
+      family.write(out);
+    }
+    out.append("# EOF\n");
+  }
+
+  /**
+   * @return whether the layout was computed from the same metrics, which are removed as well as
+   *     added, and may be replaced by other metrics of the same name
+   */
+  private boolean isLayoutOf(Map<String, Metric> metrics) {
+    if (metrics.size() != layoutMetrics.size()) {
+      return false;
+    }
+    for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+      if (layoutMetrics.get(entry.getKey()) != entry.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<Family> computeLayout(Map<String, Metric> metrics) {
+    Map<String, Family> families = new TreeMap<>();
+    // Sorted by metric name, so that the series of a family have a stable order.
+    for (Map.Entry<String, Metric> entry : new TreeMap<>(metrics).entrySet()) {
+      Metric metric = entry.getValue();
+      Type type = Type.of(metric);
+      if (type == null) {
+        continue;
+      }
+      Map<String, String> properties = MetricsJmxReporter.getNameProperties(entry.getKey());
+      StringBuilder familyName = new StringBuilder(PREFIX);
+      if (properties.remove("driver") != null) {
+        familyName.append("driver_");
+      }
+      appendSnakeCase(familyName, properties.remove("name"));
+      if (type == Type.TIMER) {
+        familyName.append("_seconds");
+      }
+      String name = familyName.toString();
+      Family family = families.get(name);
+      if (family != null && family.type != type) {
+        // Another kind of metric uses the same name; keep families homogeneous.
+        name = name + '_' + type.name().toLowerCase(Locale.ROOT);
+        family = families.get(name);
+      }
+      if (family == null) {
+        family = new Family(name, type);
+        families.put(name, family);
+      }
+      family.series.add(new Series(labels(properties), metric));
+    }
+    return new ArrayList<>(families.values());
+  }
+
+  private static String labels(Map<String, String> properties) {
+    StringBuilder labels = new StringBuilder();
+    properties.forEach(
+        (key, value) -> {
+          if (labels.length() > 0) {
+            labels.append(',');
+          }
+          labels.append(key).append("=\"");
+          for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+              labels.append('\\').append(c);
+            } else if (c == '\n') {
+              labels.append("\\n");
+            } else {
+              labels.append(c);
+            }
+          }
+          labels.append('"');
+        });
+    return labels.toString();
+  }
+
+  /** Appends camelCase or dash-separated names as snake_case, e.g. batchSizeInBytes. */
+  private static void appendSnakeCase(StringBuilder out, String name) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isUpperCase(c)) {
+        if (i > 0) {
+          out.append('_');
+        }
+        out.append(Character.toLowerCase(c));
+      } else if (Character.isLetterOrDigit(c)) {
+        out.append(c);
+      } else {
+        out.append('_');
+      }
+    }
+  }
+
+  private enum Type {
+    GAUGE("gauge"),
+    COUNTER("counter"),
+    SUMMARY("summary"),
+    TIMER("summary");
+
+    private final String openMetricsType;
+
+    Type(String openMetricsType) {
+      this.openMetricsType = openMetricsType;
+    }
+
+    private static Type of(Metric metric) {
+      if (metric instanceof Gauge || metric instanceof Counter) {
+        // Counters can be decremented (e.g. inFlightRecords), so they are gauges.
+        return GAUGE;
+      } else if (metric instanceof Meter) {
+        return COUNTER;
+      } else if (metric instanceof Timer) {
+        return TIMER;
+      } else if (metric instanceof Histogram) {
+        return SUMMARY;
+      }
+      return null;
+    }
+  }
+
+  private static class Family {
+    private final String name;
+    private final Type type;
+    private final List<Series> series = new ArrayList<>();
+
+    private Family(String name, Type type) {
+      this.name = name;
+      this.type = type;
+    }
+
+    private void write(StringBuilder out) {
+      out.append("# TYPE ").append(name).append(' ').append(type.openMetricsType).append('\n');
+      if (type == Type.TIMER) {
+        out.append("# UNIT ").append(name).append(" seconds\n");
+      }
+      for (Series s : series) {
+        switch (type) {
+          case GAUGE:
+            s.writeGauge(name, out);
+            break;
+          case COUNTER:
+            s.writeSample(name, "_total", null, out).append(((Meter) s.metric).getCount());
+            out.append('\n');
+            break;
+          case TIMER:
+            s.writeSummary(name, ((Timer) s.metric).getSnapshot(), NANOS_PER_SECOND, out);
+            s.writeSample(name, "_count", null, out).append(((Timer) s.metric).getCount());
+            out.append('\n');
+            break;
+          case SUMMARY:
+            s.writeSummary(name, ((Histogram) s.metric).getSnapshot(), 1, out);
+            s.writeSample(name, "_count", null, out).append(((Histogram) s.metric).getCount());
+            out.append('\n');
+            break;
+          default:
+            throw new AssertionError("Unexpected type " + type);
+        }
+      }
+    }
+  }
+
+  private static class Series {
+    private final String labels;
+    private final Metric metric;
+
+    private Series(String labels, Metric metric) {
+      this.labels = labels;
+      this.metric = metric;
+    }
+
+    private StringBuilder writeSample(
+        String name, String suffix, String extraLabel, StringBuilder out) {
+      out.append(name);
+      if (suffix != null) {
+        out.append(suffix);
+      }
+      if (!labels.isEmpty() || extraLabel != null) {
+        out.append('{').append(labels);
+        if (extraLabel != null) {
+          if (!labels.isEmpty()) {
+            out.append(',');
+          }
+          out.append(extraLabel);
+        }
+        out.append('}');
+      }
+      return out.append(' ');
+    }
+
+    private void writeGauge(String name, StringBuilder out) {
+      long value;
+      if (metric instanceof Counter) {
+        value = ((Counter) metric).getCount();
+      } else {
+        Object gaugeValue = ((Gauge<?>) metric).getValue();
+        if (gaugeValue instanceof Double || gaugeValue instanceof Float) {
+          writeSample(name, null, null, out).append(((Number) gaugeValue).doubleValue());
+          out.append('\n');
+          return;
+        } else if (gaugeValue instanceof Number) {
+          value = ((Number) gaugeValue).longValue();
+        } else {
+          // Not a numeric gauge, it has no OpenMetrics representation.
+          return;
+        }
+      }
+      writeSample(name, null, null, out).append(value);
+      out.append('\n');
+    }
+
+    private void writeSummary(String name, Snapshot snapshot, double divisor, StringBuilder out) {
+      for (int i = 0; i < QUANTILES.length; i++) {
+        writeSample(name, null, QUANTILE_LABELS[i], out)
+            .append(snapshot.getValue(QUANTILES[i]) / divisor);
+        out.append('\n');
+      }
+    }
+  }
+}
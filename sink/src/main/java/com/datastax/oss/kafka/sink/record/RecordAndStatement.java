@@ -16,22 +16,49 @@
 package com.datastax.oss.kafka.sink.record;
 
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.kafka.sink.state.UnchangedRowCache;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import org.apache.kafka.connect.sink.SinkRecord;
 
-/** Simple container class to hold a SinkRecord and its associated BoundStatement. */
+/**
+ * Simple container class to hold the handle of a SinkRecord and its associated BoundStatement,
+ * along with the time it was created at, from which its queue wait time is measured.
+ */
 public class RecordAndStatement {
-  private final SinkRecord record;
+  private final RecordHandle recordHandle;
   private final String keyspaceAndTable;
   private final BoundStatement statement;
+  private final long createdNanos;
+  @Nullable private final UnchangedRowCache.Candidate unchangedRowCandidate;
 
-  public RecordAndStatement(SinkRecord record, String keyspaceAndTable, BoundStatement statement) {
-    this.record = record;
+  public RecordAndStatement(
+      RecordHandle recordHandle, String keyspaceAndTable, BoundStatement statement) {
+    this(recordHandle, keyspaceAndTable, statement, null);
+  }
+
+  /**
+   * @param unchangedRowCandidate if non-null, the row to remember in the unchanged row cache of the
+   *     table once the statement is written
+   */
+  public RecordAndStatement(
+      RecordHandle recordHandle,
+      String keyspaceAndTable,
+      BoundStatement statement,
+      @Nullable UnchangedRowCache.Candidate unchangedRowCandidate) {
+    this.recordHandle = recordHandle;
     this.keyspaceAndTable = keyspaceAndTable;
     this.statement = statement;
+    this.createdNanos = System.nanoTime();
+    this.unchangedRowCandidate = unchangedRowCandidate;
   }
 
-  public SinkRecord getRecord() {
-    return record;
+  /** Create an instance whose handle doesn't keep the given record. */
+  public RecordAndStatement(SinkRecord record, String keyspaceAndTable, BoundStatement statement) {
+    this(RecordHandle.of(record), keyspaceAndTable, statement);
+  }
+
+  public RecordHandle getRecordHandle() {
+    return recordHandle;
   }
 
   public String getKeyspaceAndTable() {
@@ -41,4 +68,16 @@ public class RecordAndStatement {
   public BoundStatement getStatement() {
     return statement;
   }
+
+  /** Record that the statement was written. */
+  public void written() {
+    if (unchangedRowCandidate != null) {
+      unchangedRowCandidate.written();
+    }
+  }
+
+  /** @return the value of {@link System#nanoTime()} when this object was created. */
+  public long getCreatedNanos() {
+    return createdNanos;
+  }
 }
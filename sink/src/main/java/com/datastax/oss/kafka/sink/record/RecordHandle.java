@@ -0,0 +1,137 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.record;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.sink.SinkRecord;
+
+/**
+ * What the connector keeps of a {@link SinkRecord} once its statements are bound: the coordinates
+ * of the record, needed to track offsets, metrics and failures, but not its key, value and headers,
+ * so that the connector itself does not hold on to them while the statements are executed.
+ *
+ * <p>A handle may optionally keep the whole record, to log it should it fail.
+ *
+ * <p>The statements of all the tables a record maps to share its handle, which counts the writes of
+ * the record not completed yet. The writes are tables apart, and executed at different times, so
+ * they are all counted before the first one is queued.
+ */
+public class RecordHandle {
+  private static final AtomicIntegerFieldUpdater<RecordHandle> WRITES_IN_FLIGHT =
+      AtomicIntegerFieldUpdater.newUpdater(RecordHandle.class, "writesInFlight");
+
+  private final String topic;
+  private final Integer kafkaPartition;
+  private final long kafkaOffset;
+  private final Long timestamp;
+  private final TimestampType timestampType;
+  @Nullable private final SinkRecord record;
+  private volatile int writesInFlight;
+  private volatile boolean writeFailed;
+
+  private RecordHandle(SinkRecord record, boolean retainRecord) {
+    this.topic = record.topic();
+    this.kafkaPartition = record.kafkaPartition();
+    this.kafkaOffset = record.kafkaOffset();
+    this.timestamp = record.timestamp();
+    this.timestampType = record.timestampType();
+    this.record = retainRecord ? record : null;
+  }
+
+  /** @return a handle that doesn't keep the given record. */
+  public static RecordHandle of(SinkRecord record) {
+    return new RecordHandle(record, false);
+  }
+
+  /** @return a handle that keeps the given record, to log it in full should it fail. */
+  public static RecordHandle retaining(SinkRecord record) {
+    return new RecordHandle(record, true);
+  }
+
+  public String topic() {
+    return topic;
+  }
+
+  public Integer kafkaPartition() {
+    return kafkaPartition;
+  }
+
+  public long kafkaOffset() {
+    return kafkaOffset;
+  }
+
+  public Long timestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Record that writes of the record are about to be queued.
+   *
+   * @param count the number of writes
+   * @return whether no other write of the record was pending
+   */
+  public boolean writesQueued(int count) {
+    return WRITES_IN_FLIGHT.getAndAdd(this, count) == 0;
+  }
+
+  /**
+   * Record that a write of the record completed.
+   *
+   * @param acknowledged whether the write succeeded
+   * @return whether no other write of the record is pending
+   */
+  public boolean writeCompleted(boolean acknowledged) {
+    if (!acknowledged) {
+      writeFailed = true;
+    }
+    return WRITES_IN_FLIGHT.decrementAndGet(this) == 0;
+  }
+
+  /** @return whether a write of the record failed. */
+  public boolean isWriteFailed() {
+    return writeFailed;
+  }
+
+  /** @return the whole record, if this handle keeps it. */
+  @Nullable
+  public SinkRecord getRecord() {
+    return record;
+  }
+
+  /**
+   * @return the string representation of the record if this handle keeps it, or else the same
+   *     representation without key, value and headers
+   */
+  @Override
+  public String toString() {
+    if (record != null) {
+      return record.toString();
+    }
+    return "SinkRecord{kafkaOffset="
+        + kafkaOffset
+        + ", timestampType="
+        + timestampType
+        + "} ConnectRecord{topic='"
+        + topic
+        + "', kafkaPartition="
+        + kafkaPartition
+        + ", timestamp="
+        + timestamp
+        + '}';
+  }
+}
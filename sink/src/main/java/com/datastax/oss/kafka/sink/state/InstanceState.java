@@ -17,28 +17,36 @@ package com.datastax.oss.kafka.sink.state;
 
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
+import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.jmx.JmxReporter;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.ProtocolVersion;
 import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
 import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
 import com.datastax.oss.driver.shaded.guava.common.collect.Sets;
-import com.datastax.oss.driver.shaded.guava.common.util.concurrent.ThreadFactoryBuilder;
 import com.datastax.oss.kafka.sink.CassandraSinkTask;
 import com.datastax.oss.kafka.sink.RecordMapper;
 import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
 import com.datastax.oss.kafka.sink.config.TableConfig;
 import com.datastax.oss.kafka.sink.config.TopicConfig;
 import com.datastax.oss.kafka.sink.metrics.GlobalSinkMetrics;
+import com.datastax.oss.kafka.sink.metrics.HistogramFactory;
 import com.datastax.oss.kafka.sink.metrics.MetricNamesCreator;
+import com.datastax.oss.kafka.sink.metrics.MetricsHttpServer;
 import com.datastax.oss.kafka.sink.metrics.MetricsJmxReporter;
+import com.datastax.oss.kafka.sink.record.RecordHandle;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import org.apache.kafka.common.KafkaException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,24 +62,50 @@ public class InstanceState {
   private final Semaphore requestBarrier;
 
   private final Set<CassandraSinkTask> tasks;
-  private final Executor mappingExecutor;
+  private final MappingExecutor mappingExecutor;
   private final JmxReporter reporter;
+  @Nullable private final MetricsHttpServer metricsHttpServer;
   private final GlobalSinkMetrics globalSinkMetrics;
+  private final SaturationMetrics saturationMetrics;
+
+  /** Closes the session, or releases it if it is shared with other connector instances. */
+  private final Runnable sessionCloser;
+
+  /** Whether this InstanceState has been closed; guarded by this. */
+  private boolean closed;
+
+  /** The delayed close of this InstanceState while it is idle, if any; guarded by this. */
+  private ScheduledFuture<?> pendingClose;
 
   public InstanceState(
       @NonNull CassandraSinkConfig config,
       @NonNull CqlSession session,
       @NonNull Map<String, TopicState> topicStates,
       @NonNull MetricRegistry metricRegistry) {
+    this(config, session, topicStates, metricRegistry, () -> closeQuietly(session));
+  }
+
+  InstanceState(
+      @NonNull CassandraSinkConfig config,
+      @NonNull CqlSession session,
+      @NonNull Map<String, TopicState> topicStates,
+      @NonNull MetricRegistry metricRegistry,
+      @NonNull Runnable sessionCloser) {
+    // Acquired before the mapping threads and the metrics, which would leak should it fail (e.g.
+    // if the port is in use).
+    metricsHttpServer =
+        config.getMetricsHttpPort() > 0
+            ? MetricsHttpServer.acquire(
+                config.getMetricsHttpHost(), config.getMetricsHttpPort(), metricRegistry)
+            : null;
     this.session = session;
+    this.sessionCloser = sessionCloser;
     this.config = config;
     this.topicStates = topicStates;
     this.requestBarrier = new Semaphore(getConfig().getMaxConcurrentRequests());
     tasks = Sets.newConcurrentHashSet();
-    mappingExecutor =
-        Executors.newFixedThreadPool(
-            8, new ThreadFactoryBuilder().setNameFormat("mapping-%d").build());
-    // Add driver metrics to our registry.
+    mappingExecutor = MappingExecutor.create(config);
+    // Add driver metrics to our registry. A shared session's metrics are only registered once.
     session
         .getMetrics()
         .ifPresent(
@@ -80,20 +114,46 @@ public class InstanceState {
                     .getMetrics()
                     .forEach(
                         (name, metric) ->
-                            metricRegistry.register(
-                                MetricNamesCreator.createDriverMetricName(name), metric)));
+                            registerIfAbsent(
+                                metricRegistry,
+                                MetricNamesCreator.createDriverMetricName(name),
+                                metric)));
 
-    topicStates.values().forEach(ts -> ts.initializeMetrics(metricRegistry));
-    globalSinkMetrics = new GlobalSinkMetrics(metricRegistry);
+    HistogramFactory histogramFactory = new HistogramFactory(config.isLowOverheadMetrics());
+    topicStates
+        .values()
+        .forEach(
+            ts ->
+                ts.initializeMetrics(
+                    metricRegistry, config.getMaxPartitionMetricsPerTopic(), histogramFactory));
+    globalSinkMetrics = new GlobalSinkMetrics(metricRegistry, histogramFactory);
+    saturationMetrics = new SaturationMetrics(metricRegistry, mappingExecutor, requestBarrier);
     reporter = MetricsJmxReporter.createJmxReporter(config.getInstanceName(), metricRegistry);
-
     if (config.getJmx()) {
       reporter.start();
     }
   }
 
-  void registerTask(CassandraSinkTask task) {
-    tasks.add(task);
+  /**
+   * Register the given task, cancelling the pending close of this InstanceState if it was idle.
+   *
+   * @param task the task
+   * @return true if the task was registered, false if this InstanceState is already closed and the
+   *     caller must create a new one.
+   */
+  synchronized boolean registerTask(CassandraSinkTask task) {
+    if (closed) {
+      return false;
+    }
+    if (pendingClose != null) {
+      log.info("Reusing idle state of connector instance {}", config.getInstanceName());
+      pendingClose.cancel(false);
+      pendingClose = null;
+    }
+    if (tasks.add(task)) {
+      saturationMetrics.processorStarted();
+    }
+    return true;
   }
 
   /**
@@ -106,11 +166,10 @@ public class InstanceState {
    * @return true if this is the last task to be unregistered in the InstanceState, false otherwise.
    */
   synchronized boolean unregisterTaskAndCheckIfLast(CassandraSinkTask task) {
-    tasks.remove(task);
+    removeTask(task);
     if (tasks.isEmpty()) {
       log.debug("last task unregister close");
-      closeQuietly(session);
-      reporter.stop();
+      close();
       // Indicate to the caller that this is the last task in the InstanceState.
       return true;
     }
@@ -119,6 +178,71 @@ public class InstanceState {
     return false;
   }
 
+  /**
+   * Unregister the given task. If this is the last task, the InstanceState is kept open for the
+   * given grace period, and closed afterwards unless a new task registered in the meantime.
+   *
+   * @param task the task
+   * @param scheduler the scheduler of the delayed close
+   * @param gracePeriod the grace period
+   * @param unit the time unit of the grace period
+   * @param onClose action to run once the InstanceState has been closed
+   */
+  synchronized void unregisterTaskAndScheduleClose(
+      CassandraSinkTask task,
+      ScheduledExecutorService scheduler,
+      long gracePeriod,
+      TimeUnit unit,
+      Runnable onClose) {
+    removeTask(task);
+    if (tasks.isEmpty() && pendingClose == null && !closed) {
+      log.debug("last task unregistered, closing in {} {}", gracePeriod, unit);
+      pendingClose =
+          scheduler.schedule(
+              () -> {
+                if (closeIfIdle()) {
+                  onClose.run();
+                }
+              },
+              gracePeriod,
+              unit);
+    }
+  }
+
+  /**
+   * Close this InstanceState if no task is registered.
+   *
+   * @return true if this call closed the InstanceState, false otherwise.
+   */
+  synchronized boolean closeIfIdle() {
+    if (closed || !tasks.isEmpty()) {
+      return false;
+    }
+    close();
+    return true;
+  }
+
+  private void removeTask(CassandraSinkTask task) {
+    if (tasks.remove(task)) {
+      saturationMetrics.processorStopped();
+    }
+  }
+
+  private void close() {
+    closed = true;
+    if (pendingClose != null) {
+      pendingClose.cancel(false);
+      pendingClose = null;
+    }
+    sessionCloser.run();
+    mappingExecutor.close();
+    reporter.stop();
+    saturationMetrics.close();
+    if (metricsHttpServer != null) {
+      metricsHttpServer.release();
+    }
+  }
+
   @NonNull
   public CassandraSinkConfig getConfig() {
     return config;
@@ -138,6 +262,10 @@ public class InstanceState {
     return config.getMaxNumberOfRecordsInBatch();
   }
 
+  public boolean isBatchAcrossTables() {
+    return config.isBatchAcrossTables();
+  }
+
   @NonNull
   public TopicConfig getTopicConfig(String topicName) {
     TopicConfig topicConfig = this.config.getTopicConfigs().get(topicName);
@@ -160,16 +288,85 @@ public class InstanceState {
     return getTopicState(topicName).getBatchSizeInBytesHistogram(keyspaceAndTable);
   }
 
+  @NonNull
+  public Timer getMappingTimer(String topicName, String keyspaceAndTable) {
+    return getTopicState(topicName).getMappingTimer(keyspaceAndTable);
+  }
+
+  @NonNull
+  public Timer getQueueWaitTimer(String topicName, String keyspaceAndTable) {
+    return getTopicState(topicName).getQueueWaitTimer(keyspaceAndTable);
+  }
+
+  @NonNull
+  public Timer getRequestBarrierWaitTimer(String topicName, String keyspaceAndTable) {
+    return getTopicState(topicName).getRequestBarrierWaitTimer(keyspaceAndTable);
+  }
+
+  @NonNull
+  public Timer getExecuteTimer(String topicName, String keyspaceAndTable) {
+    return getTopicState(topicName).getExecuteTimer(keyspaceAndTable);
+  }
+
+  @NonNull
+  public Timer getPutDurationTimer() {
+    return globalSinkMetrics.getPutDurationTimer();
+  }
+
+  /** @return whether statements are only built, and not executed. */
+  public boolean isDryRun() {
+    return config.isDryRun();
+  }
+
+  /** @return one out of how many statements to measure for the batchSizeInBytes metric. */
+  public int getBatchSizeInBytesSamplingInterval() {
+    return config.getBatchSizeInBytesSamplingInterval();
+  }
+
+  /**
+   * Include the given queue of a task in the boundStatementsQueueDepth gauge until {@link
+   * #removeBoundStatementsQueue} is called.
+   */
+  public void addBoundStatementsQueue(Collection<?> boundStatementsQueue) {
+    saturationMetrics.addBoundStatementsQueue(boundStatementsQueue);
+  }
+
+  public void removeBoundStatementsQueue(Collection<?> boundStatementsQueue) {
+    saturationMetrics.removeBoundStatementsQueue(boundStatementsQueue);
+  }
+
+  /** Record time the bound statement processor of a task spent working rather than waiting. */
+  public void recordProcessorBusyTime(long nanos) {
+    saturationMetrics.recordProcessorBusyTime(nanos);
+  }
+
   @NonNull
   public Executor getMappingExecutor() {
     return mappingExecutor;
   }
 
+  /** @return the number of records the mapping executor maps at the same time for this instance. */
+  public int getMappingParallelism() {
+    return mappingExecutor.getParallelism();
+  }
+
   @NonNull
   public RecordMapper getRecordMapper(TableConfig tableConfig) {
     return getTopicState(tableConfig.getTopicName()).getRecordMapper(tableConfig);
   }
 
+  /**
+   * @return the cache of the rows last written to the given table, or null if unchanged rows are
+   *     written again
+   */
+  @Nullable
+  public UnchangedRowCache getUnchangedRowCache(TableConfig tableConfig) {
+    if (tableConfig.getUnchangedRowCacheSize() == 0) {
+      return null;
+    }
+    return getTopicState(tableConfig.getTopicName()).getUnchangedRowCache(tableConfig);
+  }
+
   public void incrementRecordCounter(String topicName, String keyspaceAndTable, int incrementBy) {
     getTopicState(topicName).incrementRecordCount(keyspaceAndTable, incrementBy);
   }
@@ -188,6 +385,63 @@ public class InstanceState {
     return getTopicState(topicName).getFailedRecordCounter(keyspaceAndTable);
   }
 
+  /**
+   * Record that writes of the given record are about to be queued, for its partition's in-flight
+   * count, which counts a record once however many tables it is written to. All the writes of a
+   * record must be counted before the first one is queued, since it may complete before the next
+   * one is queued.
+   *
+   * @param record the record
+   * @param count the number of writes
+   */
+  public void recordWritesQueued(RecordHandle record, int count) {
+    if (!record.writesQueued(count)) {
+      return;
+    }
+    PartitionMetrics metrics = getPartitionMetrics(record);
+    if (metrics != null) {
+      metrics.writeStarted(1);
+    }
+  }
+
+  /**
+   * Record the completion of a write of the given record. Once all its queued writes completed, and
+   * if they were all acknowledged, also record the lag between the record timestamp and now, and
+   * the offset of the record.
+   *
+   * @param record the record
+   * @param acknowledged whether the write succeeded
+   */
+  public void recordWriteCompleted(RecordHandle record, boolean acknowledged) {
+    if (!record.writeCompleted(acknowledged)) {
+      return;
+    }
+    PartitionMetrics metrics = getPartitionMetrics(record);
+    if (metrics != null) {
+      metrics.writeCompleted();
+      if (!record.isWriteFailed()) {
+        Long timestamp = record.timestamp();
+        metrics.writeAcknowledged(
+            record.kafkaOffset(),
+            timestamp == null ? -1 : Math.max(0, System.currentTimeMillis() - timestamp));
+      }
+    }
+  }
+
+  @Nullable
+  private PartitionMetrics getPartitionMetrics(RecordHandle record) {
+    Integer partition = record.kafkaPartition();
+    return partition == null
+        ? null
+        : getTopicState(record.topic()).getPartitionMetrics(record.topic(), partition);
+  }
+
+  @VisibleForTesting
+  @Nullable
+  PartitionMetrics getPartitionMetrics(String topicName, int partition) {
+    return getTopicState(topicName).getPartitionMetrics(topicName, partition);
+  }
+
   public void incrementFailedWithUnknownTopicCounter() {
     globalSinkMetrics.incrementFailedWithUnknownTopicCounter();
   }
@@ -209,12 +463,20 @@ public class InstanceState {
     return topicState;
   }
 
+  private static void registerIfAbsent(MetricRegistry metricRegistry, String name, Metric metric) {
+    try {
+      metricRegistry.register(name, metric);
+    } catch (IllegalArgumentException e) {
+      log.debug("Metric {} is already registered", name);
+    }
+  }
+
   /**
    * Close the given closeable without reporting errors if any occur.
    *
    * @param closeable the object close
    */
-  private static void closeQuietly(AutoCloseable closeable) {
+  static void closeQuietly(AutoCloseable closeable) {
     if (closeable != null) {
       try {
         closeable.close();
@@ -20,6 +20,8 @@ import static com.datastax.dse.driver.api.core.config.DseDriverOption.AUTH_PROVI
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.AUTH_PROVIDER_CLASS;
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.AUTH_PROVIDER_PASSWORD;
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.AUTH_PROVIDER_USER_NAME;
+import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.METADATA_SCHEMA_ENABLED;
+import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.METADATA_SCHEMA_REFRESHED_KEYSPACES;
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.SSL_CIPHER_SUITES;
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.SSL_ENGINE_FACTORY_CLASS;
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.SSL_HOSTNAME_VALIDATION;
@@ -39,15 +41,14 @@ import com.datastax.oss.driver.api.core.CqlSessionBuilder;
 import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.metadata.Metadata;
-import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
 import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
 import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
-import com.datastax.oss.driver.api.core.type.DataTypes;
 import com.datastax.oss.driver.internal.core.auth.PlainTextAuthProvider;
 import com.datastax.oss.driver.internal.core.config.typesafe.DefaultDriverConfigLoader;
 import com.datastax.oss.driver.internal.core.config.typesafe.DefaultProgrammaticDriverConfigLoaderBuilder;
 import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
 import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableMap;
+import com.datastax.oss.driver.shaded.guava.common.util.concurrent.ThreadFactoryBuilder;
 import com.datastax.oss.dsbulk.codecs.api.ConvertingCodecFactory;
 import com.datastax.oss.kafka.sink.CassandraSinkTask;
 import com.datastax.oss.kafka.sink.config.AuthenticatorConfig;
@@ -56,24 +57,38 @@ import com.datastax.oss.kafka.sink.config.ContactPointsValidator;
 import com.datastax.oss.kafka.sink.config.SslConfig;
 import com.datastax.oss.kafka.sink.config.TableConfig;
 import com.datastax.oss.kafka.sink.config.TopicConfig;
+import com.datastax.oss.kafka.sink.metrics.MetricNamesCreator;
 import com.datastax.oss.kafka.sink.ssl.SessionBuilder;
 import com.datastax.oss.kafka.sink.util.SinkUtil;
 import com.datastax.oss.kafka.sink.util.StringUtil;
+import com.datastax.oss.kafka.sink.util.VirtualThreads;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
+import com.typesafe.config.ConfigValueFactory;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import java.net.InetSocketAddress;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.kafka.common.config.ConfigException;
 import org.slf4j.Logger;
@@ -89,6 +104,21 @@ public class LifeCycleManager {
   private static final ConcurrentMap<String, InstanceState> INSTANCE_STATES =
       new ConcurrentHashMap<>();
   private static MetricRegistry metricRegistry = new MetricRegistry();
+  private static final SessionRegistry SESSIONS = new SessionRegistry();
+  private static final ScheduledExecutorService BACKGROUND_EXECUTOR =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("life-cycle-manager-%d")
+              .setDaemon(true)
+              .build());
+  // Verifications wait for their prepares: they get threads of their own, so that they don't delay
+  // the scheduled closes of the background executor, nor each other.
+  private static final ExecutorService SNAPSHOT_VERIFICATION_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("schema-snapshot-verification-%d")
+              .setDaemon(true)
+              .build());
 
   public static final String KAFKA_CONNECTOR_APPLICATION_NAME = "DataStax Apache Kafka Connector";
 
@@ -105,16 +135,85 @@ public class LifeCycleManager {
    * @return the {@link InstanceState} that owns this task.
    */
   public static InstanceState startTask(CassandraSinkTask task, Map<String, String> props) {
-    InstanceState instanceState =
-        INSTANCE_STATES.computeIfAbsent(
-            props.get(SinkUtil.NAME_OPT),
-            x -> {
-              CassandraSinkConfig config = new CassandraSinkConfig(props);
-              CqlSession session = buildCqlSession(config, task.version());
-              return buildInstanceState(session, config);
-            });
-    instanceState.registerTask(task);
-    return instanceState;
+    String instanceName = props.get(SinkUtil.NAME_OPT);
+    while (true) {
+      InstanceState instanceState =
+          INSTANCE_STATES.computeIfAbsent(
+              instanceName,
+              x -> createInstanceState(new CassandraSinkConfig(props), task.version()));
+      if (!instanceState.getConfig().getSettings().equals(props) && instanceState.closeIfIdle()) {
+        // The connector was reconfigured while its previous state was kept for the grace period.
+        log.info(
+            "Configuration of connector instance {} changed, discarding its idle state",
+            instanceName);
+        INSTANCE_STATES.remove(instanceName, instanceState);
+      } else if (instanceState.registerTask(task)) {
+        return instanceState;
+      } else {
+        // The grace period expired concurrently and the state was closed; create a new one.
+        INSTANCE_STATES.remove(instanceName, instanceState);
+      }
+    }
+  }
+
+  @NonNull
+  private static InstanceState createInstanceState(CassandraSinkConfig config, String version) {
+    Map<String, Long> startupPhases = new LinkedHashMap<>();
+    long sessionStart = System.nanoTime();
+    CqlSession session;
+    Runnable sessionCloser;
+    // A shared session may already have (and need) schema metadata, so snapshots only apply to
+    // sessions owned by this instance.
+    SchemaSnapshotStore snapshotStore = null;
+    if (config.isShareSession()) {
+      String sessionKey = SessionRegistry.sessionKey(config);
+      session =
+          SESSIONS.acquire(
+              sessionKey,
+              config.getDefaultRefreshedKeyspaces(),
+              refreshedKeyspaces -> buildCqlSession(config, version, true, refreshedKeyspaces));
+      sessionCloser = () -> SESSIONS.release(sessionKey);
+    } else {
+      snapshotStore = SchemaSnapshotStore.forConfig(config);
+      session =
+          buildCqlSession(
+              config, version, snapshotStore == null, config::getDefaultRefreshedKeyspaces);
+      sessionCloser = () -> InstanceState.closeQuietly(session);
+    }
+    recordStartupPhase(startupPhases, "session", sessionStart);
+    try {
+      InstanceState instanceState =
+          buildInstanceState(session, config, snapshotStore, sessionCloser, startupPhases);
+      recordStartupPhase(startupPhases, "total", sessionStart);
+      log.info(
+          "Connector instance {} started in {}",
+          config.getInstanceName(),
+          startupPhases
+              .entrySet()
+              .stream()
+              .map(
+                  phase ->
+                      String.format(
+                          "%s: %d ms",
+                          phase.getKey(), TimeUnit.NANOSECONDS.toMillis(phase.getValue())))
+              .collect(Collectors.joining(", ")));
+      if (config.isVirtualThreads() && !VirtualThreads.isAvailable()) {
+        log.warn(
+            "Connector instance {} has virtualThreads enabled, but virtual threads require Java 21 "
+                + "or later; platform threads are used instead",
+            config.getInstanceName());
+      }
+      if (config.isDryRun()) {
+        log.warn(
+            "Connector instance {} runs in dry-run mode: statements are not executed, "
+                + "and records are not written",
+            config.getInstanceName());
+      }
+      return instanceState;
+    } catch (RuntimeException e) {
+      sessionCloser.run();
+      throw e;
+    }
   }
 
   /**
@@ -125,8 +224,20 @@ public class LifeCycleManager {
    */
   public static void stopTask(InstanceState instanceState, CassandraSinkTask task) {
     log.debug("Unregistering task");
-    if (instanceState != null && instanceState.unregisterTaskAndCheckIfLast(task)) {
-      INSTANCE_STATES.remove(instanceState.getConfig().getInstanceName());
+    if (instanceState == null) {
+      return;
+    }
+    String instanceName = instanceState.getConfig().getInstanceName();
+    int gracePeriod = instanceState.getConfig().getInstanceStateGracePeriod();
+    if (gracePeriod > 0) {
+      instanceState.unregisterTaskAndScheduleClose(
+          task,
+          BACKGROUND_EXECUTOR,
+          gracePeriod,
+          TimeUnit.SECONDS,
+          () -> INSTANCE_STATES.remove(instanceName, instanceState));
+    } else if (instanceState.unregisterTaskAndCheckIfLast(task)) {
+      INSTANCE_STATES.remove(instanceName, instanceState);
     }
     log.debug("Task is no longer registered with Connector instance.");
   }
@@ -141,6 +252,10 @@ public class LifeCycleManager {
    */
   @VisibleForTesting
   static boolean validateMappingColumns(TableMetadata table, TableConfig tableConfig) {
+    return validateMappingColumns(TableSchema.of(table), tableConfig);
+  }
+
+  private static boolean validateMappingColumns(TableSchema table, TableConfig tableConfig) {
     Map<CqlIdentifier, CqlIdentifier> mapping = tableConfig.getMapping();
 
     // The columns in the mapping are the keys. Check that each exists in the table.
@@ -148,7 +263,7 @@ public class LifeCycleManager {
         mapping
             .keySet()
             .stream()
-            .filter(col -> !table.getColumn(col).isPresent())
+            .filter(col -> !table.getColumns().contains(col))
             .filter(col -> !SinkUtil.isTtlMappingColumn(col))
             .filter(col -> !SinkUtil.isTimestampMappingColumn(col))
             .map(c -> c.asCql(true))
@@ -168,8 +283,8 @@ public class LifeCycleManager {
         table
             .getPrimaryKey()
             .stream()
-            .filter(col -> !mapping.containsKey(col.getName()))
-            .map(col -> col.getName().toString())
+            .filter(col -> !mapping.containsKey(col))
+            .map(CqlIdentifier::toString)
             .collect(Collectors.joining(", "));
     if (!StringUtil.isEmpty(nonExistentKeyCols)) {
       throw new ConfigException(
@@ -192,6 +307,20 @@ public class LifeCycleManager {
   @VisibleForTesting
   @NonNull
   static String makeInsertStatement(TableConfig config) {
+    return makeInsertStatement(config, config.getMapping().keySet());
+  }
+
+  /**
+   * Construct an INSERT CQL statement that only lists the given mapped columns of the target table.
+   * The USING clause is the same as for the statement covering the whole mapping.
+   *
+   * @param config the config
+   * @param columns the columns to insert
+   * @return INSERT CQL string
+   */
+  @VisibleForTesting
+  @NonNull
+  static String makeInsertStatement(TableConfig config, Collection<CqlIdentifier> columns) {
     Map<CqlIdentifier, CqlIdentifier> mapping = config.getMapping();
     StringBuilder statementBuilder = new StringBuilder("INSERT INTO ");
     statementBuilder
@@ -205,7 +334,9 @@ public class LifeCycleManager {
     StringBuilder valuesBuilder = new StringBuilder();
     boolean isFirst = true;
     for (CqlIdentifier col : mapping.keySet()) {
-      if (SinkUtil.isTtlMappingColumn(col) || SinkUtil.isTimestampMappingColumn(col)) {
+      if (SinkUtil.isTtlMappingColumn(col)
+          || SinkUtil.isTimestampMappingColumn(col)
+          || !columns.contains(col)) {
         continue;
       }
       if (!isFirst) {
@@ -245,6 +376,11 @@ public class LifeCycleManager {
   @VisibleForTesting
   @NonNull
   static String makeUpdateCounterStatement(TableConfig config, TableMetadata table) {
+    return makeUpdateCounterStatement(config, TableSchema.of(table).getPrimaryKey());
+  }
+
+  @NonNull
+  private static String makeUpdateCounterStatement(TableConfig config, List<CqlIdentifier> pks) {
     if (config.getTtl() != -1 || config.hasTtlMappingColumn()) {
       throw new ConfigException("Cannot set ttl when updating a counter table");
     }
@@ -261,9 +397,6 @@ public class LifeCycleManager {
         .append(config.getTable().asCql(true))
         .append(" SET ");
 
-    List<CqlIdentifier> pks =
-        table.getPrimaryKey().stream().map(ColumnMetadata::getName).collect(Collectors.toList());
-
     // Walk through the columns and add the "col1 = col1 + :col1" fragments for
     // all non-pk columns.
     boolean isFirst = true;
@@ -308,6 +441,11 @@ public class LifeCycleManager {
   @VisibleForTesting
   @NonNull
   static String makeDeleteStatement(TableConfig config, TableMetadata table) {
+    return makeDeleteStatement(config, TableSchema.of(table).getPrimaryKey());
+  }
+
+  @NonNull
+  private static String makeDeleteStatement(TableConfig config, List<CqlIdentifier> pks) {
 
     // Create a DELETE statement that looks like this:
     // DELETE FROM ks.table
@@ -319,9 +457,6 @@ public class LifeCycleManager {
         .append('.')
         .append(config.getTable().asCql(true));
 
-    List<CqlIdentifier> pks =
-        table.getPrimaryKey().stream().map(ColumnMetadata::getName).collect(Collectors.toList());
-
     // Add the WHERE clause, covering pk columns.
     statementBuilder.append(" WHERE ");
     boolean isFirst = true;
@@ -348,9 +483,13 @@ public class LifeCycleManager {
   @VisibleForTesting
   @NonNull
   static TableMetadata getTableMetadata(CqlSession session, TableConfig tableConfig) {
+    return getTableMetadata(session.getMetadata(), tableConfig);
+  }
+
+  @NonNull
+  private static TableMetadata getTableMetadata(Metadata metadata, TableConfig tableConfig) {
     CqlIdentifier keyspaceName = tableConfig.getKeyspace();
     CqlIdentifier tableName = tableConfig.getTable();
-    Metadata metadata = session.getMetadata();
     Optional<? extends KeyspaceMetadata> keyspace = metadata.getKeyspace(keyspaceName);
     if (!keyspace.isPresent()) {
       String lowerCaseKeyspaceName = keyspaceName.asInternal().toLowerCase();
@@ -380,18 +519,65 @@ public class LifeCycleManager {
     return table.get();
   }
 
-  private static boolean isCounterTable(TableMetadata table) {
-    return table.getColumns().values().stream().anyMatch(c -> c.getType() == DataTypes.COUNTER);
+  /**
+   * Resolve the schema of every table mapped to (across topics) from the given metadata.
+   *
+   * @throws ConfigException if a table or keyspace doesn't exist
+   */
+  @NonNull
+  private static Map<TableConfig, TableSchema> resolveTableSchemas(
+      Metadata metadata, CassandraSinkConfig config) {
+    Map<TableConfig, TableSchema> tables = new HashMap<>();
+    Map<String, TableSchema> schemas = new HashMap<>();
+    for (TopicConfig topicConfig : config.getTopicConfigs().values()) {
+      for (TableConfig tableConfig : topicConfig.getTableConfigs()) {
+        tables.put(
+            tableConfig,
+            schemas.computeIfAbsent(
+                tableConfig.getKeyspaceAndTable(),
+                k -> TableSchema.of(getTableMetadata(metadata, tableConfig))));
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Resolve the schema of every mapped table from the schema snapshot of the connector, if it was
+   * taken at the schema version the cluster currently agrees on and covers all mapped tables.
+   *
+   * @return the table schemas, or null if the snapshot can't be used
+   */
+  @Nullable
+  private static Map<TableConfig, TableSchema> loadTableSchemas(
+      Metadata metadata, CassandraSinkConfig config, SchemaSnapshotStore snapshotStore) {
+    Optional<Map<String, TableSchema>> snapshot =
+        snapshotStore.load(SchemaSnapshotStore.agreedSchemaVersion(metadata));
+    if (!snapshot.isPresent()) {
+      return null;
+    }
+    Map<TableConfig, TableSchema> tables = new HashMap<>();
+    for (TopicConfig topicConfig : config.getTopicConfigs().values()) {
+      for (TableConfig tableConfig : topicConfig.getTableConfigs()) {
+        TableSchema table = snapshot.get().get(tableConfig.getKeyspaceAndTable());
+        if (table == null) {
+          return null;
+        }
+        tables.put(tableConfig, table);
+      }
+    }
+    return tables;
   }
 
   /**
    * Perform heavy lifting of creating an InstanceState:
    *
    * <ul>
-   *   <li>Verify that all nodes are DSE or DDAC
+   *   <li>Resolve the schema of every mapped table, from the schema snapshot of the connector if it
+   *       is still current, otherwise from a single metadata snapshot of the session
    *   <li>Walk through each {@link TopicConfig}:
    *       <ul>
-   *         <li>Prepare insert, update, delete statements for each table mapping in each topic
+   *         <li>Prepare insert, update, delete statements for each table mapping in each topic,
+   *             with at most maxConcurrentRequests prepare requests in flight
    *         <li>Deduce the primary key for each table
    *         <li>Create the RecordMapper for each mapping
    *         <li>Create the codec-registry
@@ -400,13 +586,36 @@ public class LifeCycleManager {
    *
    * @param session the session
    * @param config the sink config
+   * @param snapshotStore the schema snapshot store, or null if snapshots are disabled; if set, the
+   *     session must have been built with schema metadata disabled
+   * @param sessionCloser closes or releases the session once the InstanceState is no longer used
+   * @param startupPhases the duration of each startup phase, to which the phases of this method are
+   *     added
    * @return a new InstanceState
    */
   @NonNull
-  private static InstanceState buildInstanceState(CqlSession session, CassandraSinkConfig config) {
+  private static InstanceState buildInstanceState(
+      CqlSession session,
+      CassandraSinkConfig config,
+      @Nullable SchemaSnapshotStore snapshotStore,
+      Runnable sessionCloser,
+      Map<String, Long> startupPhases) {
 
-    // Compute the primary keys of all tables being mapped to (across topics).
-    Map<String, List<CqlIdentifier>> primaryKeys = new HashMap<>();
+    // Resolve the schema of all tables being mapped to (across topics), from the schema snapshot
+    // if it is still current, otherwise from the schema metadata of the session.
+    long metadataStart = System.nanoTime();
+    Map<TableConfig, TableSchema> tables = null;
+    if (snapshotStore != null) {
+      tables = loadTableSchemas(session.getMetadata(), config, snapshotStore);
+      if (tables == null) {
+        session.setSchemaMetadataEnabled(true).toCompletableFuture().join();
+      }
+    }
+    boolean fromSnapshot = tables != null;
+    if (tables == null) {
+      tables = resolveTableSchemas(session.getMetadata(), config);
+    }
+    recordStartupPhase(startupPhases, fromSnapshot ? "snapshot" : "metadata", metadataStart);
 
     // Walk through topic-configs to create TopicState's. This involves computing the
     // codec-registry and the following for each mapped table:
@@ -414,48 +623,46 @@ public class LifeCycleManager {
     // cql for delete statements
     // prepared-statement for insert/update requests
     // prepared-statement for delete requests, if deletesEnabled is true and all columns are mapped.
+    long prepareStart = System.nanoTime();
     Map<String, TopicState> topicStates = new ConcurrentHashMap<>();
-    List<CompletionStage<Void>> futures =
-        config
-            .getTopicConfigs()
-            .values()
-            .stream()
-            .map(
-                topicConfig -> {
-                  ConvertingCodecFactory codecFactory = topicConfig.createCodecFactory();
-                  TopicState topicState = new TopicState(codecFactory);
-                  topicStates.put(topicConfig.getTopicName(), topicState);
-
-                  return topicConfig
-                      .getTableConfigs()
-                      .stream()
-                      .map(
-                          tableConfig -> {
-                            TableMetadata table = getTableMetadata(session, tableConfig);
-                            // Save off the primary key of the table, if we haven't done so
-                            // already.
-                            String keyspaceAndTable = tableConfig.getKeyspaceAndTable();
-                            if (!primaryKeys.containsKey(keyspaceAndTable)) {
-                              primaryKeys.put(
-                                  keyspaceAndTable,
-                                  table
-                                      .getPrimaryKey()
-                                      .stream()
-                                      .map(ColumnMetadata::getName)
-                                      .collect(Collectors.toList()));
-                            }
-
-                            return prepareStatementsAsync(
-                                session,
-                                topicState,
-                                tableConfig,
-                                table,
-                                primaryKeys.get(keyspaceAndTable));
-                          })
-                      .collect(Collectors.toList());
-                })
-            .flatMap(Collection::stream)
-            .collect(Collectors.toList());
+    for (TopicConfig topicConfig : config.getTopicConfigs().values()) {
+      ConvertingCodecFactory codecFactory = topicConfig.createCodecFactory();
+      topicStates.put(
+          topicConfig.getTopicName(),
+          new TopicState(codecFactory, config.getColumnSubsetStatementsCacheSize()));
+    }
+    prepareRecordMappers(session, config, topicStates, tables);
+    recordStartupPhase(startupPhases, "prepare", prepareStart);
+
+    if (snapshotStore != null) {
+      if (fromSnapshot) {
+        verifySnapshotInBackground(session, config, snapshotStore, topicStates, tables);
+      } else {
+        snapshotStore.save(SchemaSnapshotStore.agreedSchemaVersion(session.getMetadata()), tables);
+      }
+    }
+    return new InstanceState(config, session, topicStates, metricRegistry, sessionCloser);
+  }
+
+  /**
+   * Prepare the statements of every table mapping and (re)create their {@link RecordMapper}s, with
+   * at most maxConcurrentRequests prepare requests in flight.
+   */
+  private static void prepareRecordMappers(
+      CqlSession session,
+      CassandraSinkConfig config,
+      Map<String, TopicState> topicStates,
+      Map<TableConfig, TableSchema> tables) {
+    Semaphore prepareLimiter = new Semaphore(config.getMaxConcurrentRequests());
+    List<CompletionStage<Void>> futures = new ArrayList<>();
+    for (TopicConfig topicConfig : config.getTopicConfigs().values()) {
+      TopicState topicState = topicStates.get(topicConfig.getTopicName());
+      for (TableConfig tableConfig : topicConfig.getTableConfigs()) {
+        futures.add(
+            prepareStatementsAsync(
+                session, prepareLimiter, topicState, tableConfig, tables.get(tableConfig)));
+      }
+    }
 
     // Wait for all of the prepares to complete and topicStates to be up-to-date.
     futures.forEach(
@@ -467,8 +674,71 @@ public class LifeCycleManager {
             throw (RuntimeException) e.getCause();
           }
         });
+  }
 
-    return new InstanceState(config, session, topicStates, metricRegistry);
+  /**
+   * Enable schema metadata on a session that was started from a schema snapshot, and once it is
+   * available compare it with the snapshot. If the schema of a mapped table changed in the
+   * meantime, re-prepare the statements from the live schema and save a new snapshot.
+   *
+   * <p>Until then, the driver knows no keyspace replication settings, so token-aware routing can't
+   * find the replicas of a statement and falls back to the other nodes of the local datacenter:
+   * writes are correct but may take an extra hop. The window only lasts for the refresh of the
+   * mapped keyspaces, and is reported as the schemaMetadata startup phase.
+   */
+  private static void verifySnapshotInBackground(
+      CqlSession session,
+      CassandraSinkConfig config,
+      SchemaSnapshotStore snapshotStore,
+      Map<String, TopicState> topicStates,
+      Map<TableConfig, TableSchema> snapshotTables) {
+    long metadataStart = System.nanoTime();
+    session
+        .setSchemaMetadataEnabled(true)
+        .thenAcceptAsync(
+            metadata -> {
+              long elapsed = System.nanoTime() - metadataStart;
+              metricRegistry
+                  .timer(MetricNamesCreator.createStartupPhaseMetricName("schemaMetadata"))
+                  .update(elapsed, TimeUnit.NANOSECONDS);
+              log.info(
+                  "Schema metadata of connector instance {} available after {} ms, "
+                      + "token-aware routing fully enabled",
+                  config.getInstanceName(),
+                  TimeUnit.NANOSECONDS.toMillis(elapsed));
+              Map<TableConfig, TableSchema> tables = resolveTableSchemas(metadata, config);
+              if (!tables.equals(snapshotTables)) {
+                log.info(
+                    "Schema of connector instance {} changed since its snapshot, "
+                        + "preparing statements again",
+                    config.getInstanceName());
+                prepareRecordMappers(session, config, topicStates, tables);
+              }
+              snapshotStore.save(SchemaSnapshotStore.agreedSchemaVersion(metadata), tables);
+            },
+            SNAPSHOT_VERIFICATION_EXECUTOR)
+        .exceptionally(
+            e -> {
+              log.warn(
+                  String.format(
+                      "Could not verify the schema snapshot of connector instance %s",
+                      config.getInstanceName()),
+                  e);
+              return null;
+            });
+  }
+
+  /**
+   * Record the duration of a startup phase that began at the given time, both for the startup log
+   * and in the startup timer of the phase.
+   */
+  private static void recordStartupPhase(
+      Map<String, Long> startupPhases, String phase, long startNanos) {
+    long elapsed = System.nanoTime() - startNanos;
+    startupPhases.put(phase, elapsed);
+    metricRegistry
+        .timer(MetricNamesCreator.createStartupPhaseMetricName(phase))
+        .update(elapsed, TimeUnit.NANOSECONDS);
   }
 
   /**
@@ -480,6 +750,26 @@ public class LifeCycleManager {
   @VisibleForTesting
   @NonNull
   public static CqlSession buildCqlSession(CassandraSinkConfig config, String version) {
+    return buildCqlSession(config, version, true, config::getDefaultRefreshedKeyspaces);
+  }
+
+  /**
+   * Create a new {@link CqlSession} based on the config
+   *
+   * @param config the sink config
+   * @param schemaMetadataEnabled whether the session fetches schema metadata when it starts; if
+   *     false, it can be enabled later with {@link CqlSession#setSchemaMetadataEnabled(Boolean)}
+   * @param refreshedKeyspaces the keyspaces whose schema metadata the session fetches, unless the
+   *     driver settings list them; all keyspaces if empty. It is read again when the driver
+   *     configuration is reloaded.
+   * @return a new CqlSession
+   */
+  @NonNull
+  private static CqlSession buildCqlSession(
+      CassandraSinkConfig config,
+      String version,
+      boolean schemaMetadataEnabled,
+      Supplier<Set<String>> refreshedKeyspaces) {
     log.info("CassandraSinkTask starting with config:\n{}\n", config.toString());
     SslConfig sslConfig = config.getSslConfig();
     CqlSessionBuilder builder =
@@ -507,12 +797,16 @@ public class LifeCycleManager {
 
     ProgrammaticDriverConfigLoaderBuilder configLoaderBuilder =
         dseProgrammaticBuilderWithFallback(
-            ConfigFactory.parseMap(config.getJavaDriverSettings(), "Connector properties"));
+            ConfigFactory.parseMap(config.getJavaDriverSettings(), "Connector properties"),
+            refreshedKeyspaces);
 
     processAuthenticatorConfig(config, configLoaderBuilder);
     if (sslConfig != null) {
       processSslConfig(sslConfig, configLoaderBuilder);
     }
+    if (!schemaMetadataEnabled) {
+      configLoaderBuilder.withBoolean(METADATA_SCHEMA_ENABLED, false);
+    }
     builder.withConfigLoader(configLoaderBuilder.build());
 
     return builder.build();
@@ -605,17 +899,16 @@ public class LifeCycleManager {
    * @param session the session
    * @param topicState the topic state (e.g. topic-related state produced from the config).
    * @param tableConfig the table settings within the topic
-   * @param table the table metadata
-   * @param primaryKey the primary key of the table
+   * @param table the table schema
    * @return a future
    */
   @NonNull
   private static CompletionStage<Void> prepareStatementsAsync(
       CqlSession session,
+      Semaphore prepareLimiter,
       TopicState topicState,
       TableConfig tableConfig,
-      TableMetadata table,
-      List<CqlIdentifier> primaryKey) {
+      TableSchema table) {
 
     // for custom query DELETE not supported yet
     boolean allColumnsMapped = false;
@@ -627,23 +920,29 @@ public class LifeCycleManager {
     String insertUpdateStatement = getInsertUpdateStatement(tableConfig, table);
 
     CompletionStage<? extends PreparedStatement> insertUpdateFuture =
-        session.prepareAsync(insertUpdateStatement);
+        prepareAsync(session, prepareLimiter, insertUpdateStatement);
     CompletionStage<? extends PreparedStatement> deleteFuture;
-    String deleteStatement = makeDeleteStatement(tableConfig, table);
+    String deleteStatement = makeDeleteStatement(tableConfig, table.getPrimaryKey());
     if (tableConfig.isDeletesEnabled() && allColumnsMapped) {
-      deleteFuture = session.prepareAsync(deleteStatement);
+      deleteFuture = prepareAsync(session, prepareLimiter, deleteStatement);
     } else {
       // Make a dummy future that's already completed since there is no work to do here.
       CompletableFuture<PreparedStatement> dummyFuture = new CompletableFuture<>();
       dummyFuture.complete(null);
       deleteFuture = dummyFuture;
     }
+    Function<Set<CqlIdentifier>, CompletionStage<? extends PreparedStatement>> variantPreparer =
+        makeVariantPreparer(session, prepareLimiter, tableConfig, table);
     return insertUpdateFuture
         .thenAcceptBoth(
             deleteFuture,
             (preparedInsertUpdate, preparedDelete) ->
                 topicState.createRecordMapper(
-                    tableConfig, primaryKey, preparedInsertUpdate, preparedDelete))
+                    tableConfig,
+                    table.getPrimaryKey(),
+                    preparedInsertUpdate,
+                    preparedDelete,
+                    variantPreparer))
         .exceptionally(
             e -> {
               String statements =
@@ -655,16 +954,50 @@ public class LifeCycleManager {
             });
   }
 
+  private static CompletionStage<? extends PreparedStatement> prepareAsync(
+      CqlSession session, Semaphore prepareLimiter, String cql) {
+    prepareLimiter.acquireUninterruptibly();
+    CompletionStage<? extends PreparedStatement> future = session.prepareAsync(cql);
+    future.whenComplete((prepared, error) -> prepareLimiter.release());
+    return future;
+  }
+
+  /**
+   * @return a function preparing the variants of the insert statement of the given table, whose
+   *     prepares are bounded by the given limiter, like those of the startup; or null if the table
+   *     doesn't use variants
+   */
+  @Nullable
+  private static Function<Set<CqlIdentifier>, CompletionStage<? extends PreparedStatement>>
+      makeVariantPreparer(
+          CqlSession session,
+          Semaphore prepareLimiter,
+          TableConfig tableConfig,
+          TableSchema table) {
+    if (!tableConfig.isColumnSubsetStatements()) {
+      return null;
+    }
+    if (table.isCounter()) {
+      log.warn(
+          "{} is ignored for counter table {}",
+          tableConfig.getSettingPath(TableConfig.COLUMN_SUBSET_STATEMENTS_OPT),
+          tableConfig.getKeyspaceAndTable());
+      return null;
+    }
+    return columns ->
+        prepareAsync(session, prepareLimiter, makeInsertStatement(tableConfig, columns));
+  }
+
   @NonNull
-  private static String getInsertUpdateStatement(TableConfig tableConfig, TableMetadata table) {
+  private static String getInsertUpdateStatement(TableConfig tableConfig, TableSchema table) {
     // if user provides query explicitly it has priority over any connector specific query
     // construction logic
     return tableConfig
         .getQuery()
         .orElseGet(
             () ->
-                isCounterTable(table)
-                    ? makeUpdateCounterStatement(tableConfig, table)
+                table.isCounter()
+                    ? makeUpdateCounterStatement(tableConfig, table.getPrimaryKey())
                     : makeInsertStatement(tableConfig));
   }
 
@@ -686,14 +1019,26 @@ public class LifeCycleManager {
 
   @NonNull
   private static ProgrammaticDriverConfigLoaderBuilder dseProgrammaticBuilderWithFallback(
-      Config properties) {
+      Config properties, Supplier<Set<String>> refreshedKeyspaces) {
     ConfigFactory.invalidateCaches();
     return new DefaultProgrammaticDriverConfigLoaderBuilder(
         () ->
             ConfigFactory.defaultApplication()
+                .withFallback(refreshedKeyspacesConfig(refreshedKeyspaces.get()))
                 .withFallback(properties)
                 .withFallback(ConfigFactory.parseResourcesAnySyntax("dse-reference"))
                 .withFallback(ConfigFactory.defaultReference()),
         DefaultDriverConfigLoader.DEFAULT_ROOT_PATH);
   }
+
+  @NonNull
+  private static Config refreshedKeyspacesConfig(Set<String> refreshedKeyspaces) {
+    if (refreshedKeyspaces.isEmpty()) {
+      return ConfigFactory.empty();
+    }
+    return ConfigFactory.empty()
+        .withValue(
+            CassandraSinkConfig.withDriverPrefix(METADATA_SCHEMA_REFRESHED_KEYSPACES),
+            ConfigValueFactory.fromIterable(refreshedKeyspaces));
+  }
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
+import com.datastax.oss.driver.shaded.guava.common.util.concurrent.ThreadFactoryBuilder;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import com.datastax.oss.kafka.sink.util.VirtualThreads;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor that maps the records of a connector instance: either a fixed thread pool owned by
+ * the instance, a virtual thread per task, or a share of a work-stealing pool common to all the
+ * instances of the worker.
+ */
+abstract class MappingExecutor implements Executor {
+
+  /**
+   * Create the mapping executor of a connector instance; it must be closed with the instance.
+   *
+   * @param config the configuration of the instance
+   * @return a share of the worker-wide pool if sharedMappingExecutor is enabled, with the
+   *     mappingWeight of the instance, otherwise virtual threads if virtualThreads is enabled and
+   *     supported, or a pool of mappingThreads threads
+   */
+  static MappingExecutor create(CassandraSinkConfig config) {
+    if (config.isSharedMappingExecutor()) {
+      return SharedPool.acquire(config.getMappingWeight());
+    }
+    if (config.isVirtualThreads()) {
+      ThreadFactory threadFactory = VirtualThreads.newThreadFactory("mapping-");
+      if (threadFactory != null) {
+        return new PerTask(threadFactory, config.getMappingThreads());
+      }
+    }
+    return dedicated(config.getMappingThreads());
+  }
+
+  /**
+   * @param threads the number of threads
+   * @return a fixed thread pool for a single connector instance
+   */
+  static MappingExecutor dedicated(int threads) {
+    return new Dedicated(threads);
+  }
+
+  /** @return the maximum number of records of this instance mapped at the same time. */
+  abstract int getParallelism();
+
+  /** @return the number of threads currently mapping records of this instance. */
+  abstract int getActiveCount();
+
+  /** @return the number of records of this instance waiting for a mapping thread. */
+  abstract int getQueuedTaskCount();
+
+  /** Stop the threads owned by this instance, or release its share of the shared pool. */
+  abstract void close();
+
+  /** A fixed thread pool owned by a single connector instance. */
+  private static class Dedicated extends MappingExecutor {
+    private final ThreadPoolExecutor pool;
+
+    private Dedicated(int threads) {
+      // Same as Executors.newFixedThreadPool, but typed so that its saturation can be measured.
+      pool =
+          new ThreadPoolExecutor(
+              threads,
+              threads,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              new ThreadFactoryBuilder().setNameFormat("mapping-%d").build());
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+      pool.execute(command);
+    }
+
+    @Override
+    int getParallelism() {
+      return pool.getMaximumPoolSize();
+    }
+
+    @Override
+    int getActiveCount() {
+      return pool.getActiveCount();
+    }
+
+    @Override
+    int getQueuedTaskCount() {
+      return pool.getQueue().size();
+    }
+
+    @Override
+    void close() {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * A new thread per task, meant for virtual threads. The parallelism only sizes the chunks of
+   * records submitted by the tasks, it is not enforced.
+   */
+  private static class PerTask extends MappingExecutor {
+    private final ThreadFactory threadFactory;
+    private final int parallelism;
+    private final AtomicInteger running = new AtomicInteger();
+
+    private PerTask(ThreadFactory threadFactory, int parallelism) {
+      this.threadFactory = threadFactory;
+      this.parallelism = parallelism;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+      running.incrementAndGet();
+      threadFactory
+          .newThread(
+              () -> {
+                try {
+                  command.run();
+                } finally {
+                  running.decrementAndGet();
+                }
+              })
+          .start();
+    }
+
+    @Override
+    int getParallelism() {
+      return parallelism;
+    }
+
+    @Override
+    int getActiveCount() {
+      return running.get();
+    }
+
+    @Override
+    int getQueuedTaskCount() {
+      return 0;
+    }
+
+    @Override
+    void close() {
+      // Running tasks complete on their own.
+    }
+  }
+
+  /**
+   * A share of the worker-wide pool. The instance is guaranteed to map {@link #limit} records at
+   * the same time; beyond that, it only uses the idle threads of the pool while no other instance
+   * has records waiting, and its other records wait in a queue of the instance, so that an instance
+   * with a backlog cannot take the threads of the others.
+   */
+  @VisibleForTesting
+  static class Share extends MappingExecutor {
+    private final ForkJoinPool pool;
+    private final int weight;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private volatile int limit;
+
+    private Share(ForkJoinPool pool, int weight) {
+      this.pool = pool;
+      this.weight = weight;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+      pending.add(command);
+      drain();
+    }
+
+    /**
+     * Submit pending tasks to the pool while this instance is below its limit, or while the pool
+     * has idle threads no other instance waits for.
+     */
+    private void drain() {
+      while (!pending.isEmpty()) {
+        int current = running.get();
+        if (current >= limit && !mayExceedLimit()) {
+          // A running task will drain the queue when it completes.
+          return;
+        }
+        if (running.compareAndSet(current, current + 1)) {
+          Runnable task = pending.poll();
+          if (task == null) {
+            running.decrementAndGet();
+          } else {
+            pool.execute(
+                () -> {
+                  try {
+                    task.run();
+                  } finally {
+                    running.decrementAndGet();
+                    SharedPool.drainAll(this);
+                  }
+                });
+          }
+        }
+      }
+    }
+
+    /** @return whether no other instance has records waiting, and the pool has idle threads. */
+    private boolean mayExceedLimit() {
+      int busy = 0;
+      for (Share share : SharedPool.SHARES) {
+        if (share != this && !share.pending.isEmpty()) {
+          return false;
+        }
+        busy += share.running.get();
+      }
+      return busy < pool.getParallelism();
+    }
+
+    @VisibleForTesting
+    int getLimit() {
+      return limit;
+    }
+
+    /** @return the whole pool while the other instances leave it idle, otherwise the limit. */
+    @Override
+    int getParallelism() {
+      return mayExceedLimit() ? pool.getParallelism() : limit;
+    }
+
+    @Override
+    int getActiveCount() {
+      return running.get();
+    }
+
+    @Override
+    int getQueuedTaskCount() {
+      return pending.size();
+    }
+
+    @Override
+    void close() {
+      SharedPool.release(this);
+    }
+  }
+
+  /**
+   * The work-stealing pool shared by the connector instances of the worker, with one thread per
+   * available core. It is created by the first instance that uses it, and shut down when the last
+   * one is closed.
+   */
+  @VisibleForTesting
+  static class SharedPool {
+    private static final Set<Share> SHARES = new CopyOnWriteArraySet<>();
+    private static ForkJoinPool pool;
+
+    @VisibleForTesting
+    static synchronized Share acquire(int weight) {
+      if (pool == null) {
+        pool =
+            new ForkJoinPool(
+                Runtime.getRuntime().availableProcessors(),
+                p -> {
+                  ForkJoinWorkerThread thread =
+                      ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                  thread.setName("mapping-shared-" + thread.getPoolIndex());
+                  return thread;
+                },
+                null,
+                true);
+      }
+      Share share = new Share(pool, weight);
+      SHARES.add(share);
+      updateLimits();
+      return share;
+    }
+
+    private static synchronized void release(Share share) {
+      if (SHARES.remove(share)) {
+        if (SHARES.isEmpty()) {
+          pool.shutdown();
+          pool = null;
+        } else {
+          updateLimits();
+        }
+      }
+    }
+
+    /**
+     * Submit the pending tasks of the given instance, then of the others, which may use the thread
+     * it just released.
+     */
+    private static void drainAll(Share first) {
+      first.drain();
+      for (Share share : SHARES) {
+        if (share != first) {
+          share.drain();
+        }
+      }
+    }
+
+    /** Guarantee each instance a number of threads proportional to its weight, at least one. */
+    private static void updateLimits() {
+      int totalWeight = SHARES.stream().mapToInt(share -> share.weight).sum();
+      int parallelism = pool.getParallelism();
+      for (Share share : SHARES) {
+        share.limit = Math.max(1, Math.round((float) parallelism * share.weight / totalWeight));
+        share.drain();
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.oss.kafka.sink.metrics.HistogramFactory;
+import com.datastax.oss.kafka.sink.metrics.MetricNamesCreator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Freshness metrics of the records of one topic-partition written by a connector instance. */
+class PartitionMetrics {
+  private final Histogram recordLag;
+  private final Counter inFlightRecords;
+  private final LastWrittenOffsetGauge lastWrittenOffset;
+
+  PartitionMetrics(
+      MetricRegistry metricRegistry,
+      HistogramFactory histogramFactory,
+      String topicName,
+      int partition) {
+    recordLag =
+        histogramFactory.histogram(
+            metricRegistry, MetricNamesCreator.createRecordLagMetricName(topicName, partition));
+    inFlightRecords =
+        metricRegistry.counter(
+            MetricNamesCreator.createInFlightRecordsMetricName(topicName, partition));
+    // Like the other metrics, the gauge is shared with previous states of the connector instance
+    // that were registered in the same registry.
+    lastWrittenOffset =
+        (LastWrittenOffsetGauge)
+            metricRegistry.gauge(
+                MetricNamesCreator.createLastWrittenOffsetMetricName(topicName, partition),
+                LastWrittenOffsetGauge::new);
+  }
+
+  void writeStarted(int count) {
+    inFlightRecords.inc(count);
+  }
+
+  void writeCompleted() {
+    inFlightRecords.dec();
+  }
+
+  /**
+   * Record the acknowledgement of the write of a record.
+   *
+   * @param offset the offset of the record
+   * @param lagMillis the time between the record timestamp and the acknowledgement, if the record
+   *     has a timestamp, otherwise a negative value.
+   */
+  void writeAcknowledged(long offset, long lagMillis) {
+    if (lagMillis >= 0) {
+      recordLag.update(lagMillis);
+    }
+    lastWrittenOffset.update(offset);
+  }
+
+  Histogram getRecordLag() {
+    return recordLag;
+  }
+
+  Counter getInFlightRecords() {
+    return inFlightRecords;
+  }
+
+  long getLastWrittenOffset() {
+    return lastWrittenOffset.getValue();
+  }
+
+  private static class LastWrittenOffsetGauge implements Gauge<Long> {
+    private final AtomicLong offset = new AtomicLong(-1);
+
+    private void update(long writtenOffset) {
+      offset.accumulateAndGet(writtenOffset, Math::max);
+    }
+
+    @Override
+    public Long getValue() {
+      return offset.get();
+    }
+  }
+}
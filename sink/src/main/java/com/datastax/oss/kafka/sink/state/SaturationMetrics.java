@@ -0,0 +1,171 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.oss.kafka.sink.metrics.MetricNamesCreator;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Saturation metrics of the queues, executors and permits of a connector instance.
+ *
+ * <p>The metric registry is shared by all connector instances of the worker, so each gauge sums the
+ * values of all instances (and of all tasks, for the per-task queues) that are currently registered
+ * in it.
+ */
+class SaturationMetrics {
+
+  /** The minimum interval over which the processor busy ratio is computed. */
+  private static final long BUSY_RATIO_MIN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final SummingGauge boundStatementsQueueDepth;
+  private final SummingGauge mappingActiveThreads;
+  private final SummingGauge mappingQueuedTasks;
+  private final SummingGauge requestBarrierAvailablePermits;
+  private final SummingGauge requestBarrierWaiters;
+  private final BusyRatioGauge processorBusyRatio;
+  private final Collection<Registration> registrations = new CopyOnWriteArrayList<>();
+  private final Map<Collection<?>, Registration> queueRegistrations = new ConcurrentHashMap<>();
+
+  SaturationMetrics(
+      MetricRegistry metricRegistry, MappingExecutor mappingExecutor, Semaphore requestBarrier) {
+    boundStatementsQueueDepth = summingGauge(metricRegistry, "boundStatementsQueueDepth");
+    mappingActiveThreads = summingGauge(metricRegistry, "mappingActiveThreads");
+    mappingQueuedTasks = summingGauge(metricRegistry, "mappingQueuedTasks");
+    requestBarrierAvailablePermits = summingGauge(metricRegistry, "requestBarrierAvailablePermits");
+    requestBarrierWaiters = summingGauge(metricRegistry, "requestBarrierWaiters");
+    processorBusyRatio =
+        (BusyRatioGauge)
+            metricRegistry.gauge(
+                MetricNamesCreator.createSaturationMetricName("processorBusyRatio"),
+                BusyRatioGauge::new);
+
+    register(mappingActiveThreads, mappingExecutor::getActiveCount);
+    register(mappingQueuedTasks, mappingExecutor::getQueuedTaskCount);
+    register(requestBarrierAvailablePermits, requestBarrier::availablePermits);
+    register(requestBarrierWaiters, requestBarrier::getQueueLength);
+  }
+
+  /** Add the depth of the given queue to the queue depth gauge until it is removed. */
+  void addBoundStatementsQueue(Collection<?> boundStatementsQueue) {
+    queueRegistrations.put(
+        boundStatementsQueue, register(boundStatementsQueueDepth, boundStatementsQueue::size));
+  }
+
+  void removeBoundStatementsQueue(Collection<?> boundStatementsQueue) {
+    Registration registration = queueRegistrations.remove(boundStatementsQueue);
+    if (registration != null) {
+      registration.close();
+    }
+  }
+
+  void processorStarted() {
+    processorBusyRatio.processors.incrementAndGet();
+  }
+
+  void processorStopped() {
+    processorBusyRatio.processors.decrementAndGet();
+  }
+
+  void recordProcessorBusyTime(long nanos) {
+    processorBusyRatio.busyNanos.add(nanos);
+  }
+
+  /** Remove the values of this instance from the gauges. */
+  void close() {
+    registrations.forEach(Registration::close);
+    queueRegistrations.clear();
+  }
+
+  private Registration register(SummingGauge gauge, LongSupplier source) {
+    Registration registration = new Registration(gauge, source);
+    gauge.sources.add(source);
+    registrations.add(registration);
+    return registration;
+  }
+
+  private static SummingGauge summingGauge(MetricRegistry metricRegistry, String name) {
+    return (SummingGauge)
+        metricRegistry.gauge(
+            MetricNamesCreator.createSaturationMetricName(name), SummingGauge::new);
+  }
+
+  /** The contribution of one source to a gauge. */
+  private class Registration {
+    private final SummingGauge gauge;
+    private final LongSupplier source;
+
+    private Registration(SummingGauge gauge, LongSupplier source) {
+      this.gauge = gauge;
+      this.source = source;
+    }
+
+    private void close() {
+      gauge.sources.remove(source);
+      registrations.remove(this);
+    }
+  }
+
+  private static class SummingGauge implements Gauge<Long> {
+    private final Collection<LongSupplier> sources = new CopyOnWriteArrayList<>();
+
+    @Override
+    public Long getValue() {
+      long sum = 0;
+      for (LongSupplier source : sources) {
+        sum += source.getAsLong();
+      }
+      return sum;
+    }
+  }
+
+  /**
+   * The fraction of time the bound statement processor threads spent grouping and executing
+   * statements rather than waiting for them. The ratio is computed over the time since the previous
+   * computation, which happens when the gauge is read at least a second after it, so all reporters
+   * see the same value.
+   */
+  private static class BusyRatioGauge implements Gauge<Double> {
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicInteger processors = new AtomicInteger();
+    private long intervalStart = System.nanoTime();
+    private long busyNanosAtIntervalStart;
+    private double ratio;
+
+    @Override
+    public synchronized Double getValue() {
+      long now = System.nanoTime();
+      long elapsed = now - intervalStart;
+      if (elapsed >= BUSY_RATIO_MIN_INTERVAL_NANOS) {
+        long busy = busyNanos.sum();
+        int count = Math.max(1, processors.get());
+        ratio = Math.min(1.0, (double) (busy - busyNanosAtIntervalStart) / (elapsed * count));
+        intervalStart = now;
+        busyNanosAtIntervalStart = busy;
+      }
+      return ratio;
+    }
+  }
+}
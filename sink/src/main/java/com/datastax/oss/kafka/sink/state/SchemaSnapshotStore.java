@@ -0,0 +1,162 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.datastax.oss.driver.api.core.metadata.Metadata;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
+import com.datastax.oss.driver.shaded.guava.common.hash.Hashing;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local on-disk cache of the {@link TableSchema}s of a connector instance, used to build its record
+ * mappers without waiting for the driver to fetch schema metadata.
+ *
+ * <p>A snapshot is stored per connector configuration: its file name contains a hash of the
+ * connector settings, so that any configuration change invalidates it. It also records the schema
+ * version the cluster agreed on when it was taken; it is only used while the cluster still reports
+ * that version.
+ */
+class SchemaSnapshotStore {
+  private static final Logger log = LoggerFactory.getLogger(SchemaSnapshotStore.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Path file;
+
+  @VisibleForTesting
+  SchemaSnapshotStore(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * @param config the sink config
+   * @return the store of the given connector configuration, or null if schema snapshots are
+   *     disabled.
+   */
+  @Nullable
+  static SchemaSnapshotStore forConfig(CassandraSinkConfig config) {
+    Optional<Path> directory = config.getSchemaSnapshotDirectory();
+    if (!directory.isPresent()) {
+      return null;
+    }
+    String settings =
+        new TreeMap<>(config.getSettings())
+            .entrySet()
+            .stream()
+            .map(entry -> entry.getKey() + "=" + entry.getValue())
+            .collect(Collectors.joining("\n"));
+    String configHash =
+        Hashing.sha256().hashString(settings, StandardCharsets.UTF_8).toString().substring(0, 16);
+    String instanceName =
+        String.valueOf(config.getInstanceName()).replaceAll("[^a-zA-Z0-9._-]", "_");
+    return new SchemaSnapshotStore(
+        directory.get().resolve(String.format("%s-%s.json", instanceName, configHash)));
+  }
+
+  /**
+   * @param metadata the session metadata
+   * @return the schema version that all nodes agree on, or null if they don't agree.
+   */
+  @Nullable
+  static UUID agreedSchemaVersion(Metadata metadata) {
+    Set<UUID> versions =
+        metadata
+            .getNodes()
+            .values()
+            .stream()
+            .map(Node::getSchemaVersion)
+            .collect(Collectors.toSet());
+    return versions.size() == 1 ? versions.iterator().next() : null;
+  }
+
+  /**
+   * Load the snapshot, if it exists and was taken at the given schema version.
+   *
+   * @param schemaVersion the current schema version of the cluster
+   * @return the table schemas of the snapshot, keyed by {@link TableConfig#getKeyspaceAndTable()}.
+   */
+  @NonNull
+  Optional<Map<String, TableSchema>> load(@Nullable UUID schemaVersion) {
+    if (schemaVersion == null || !Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    try {
+      JsonNode root = MAPPER.readTree(file.toFile());
+      if (!schemaVersion.toString().equals(root.path("schemaVersion").asText())) {
+        log.info("Ignoring schema snapshot {} taken at another schema version", file);
+        return Optional.empty();
+      }
+      Map<String, TableSchema> tables = new HashMap<>();
+      root.get("tables")
+          .fields()
+          .forEachRemaining(
+              entry -> tables.put(entry.getKey(), TableSchema.fromJson(entry.getValue())));
+      return Optional.of(tables);
+    } catch (IOException | RuntimeException e) {
+      log.warn(String.format("Ignoring unreadable schema snapshot %s", file), e);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Save a snapshot of the given table schemas. Failures are logged and otherwise ignored, as the
+   * snapshot is only an optimization.
+   *
+   * @param schemaVersion the schema version the schemas were read at; nothing is saved if null
+   * @param tables the table schemas, keyed by table config
+   */
+  void save(@Nullable UUID schemaVersion, Map<TableConfig, TableSchema> tables) {
+    if (schemaVersion == null) {
+      return;
+    }
+    ObjectNode root = JsonNodeFactory.instance.objectNode();
+    root.put("schemaVersion", schemaVersion.toString());
+    ObjectNode tablesNode = root.putObject("tables");
+    tables.forEach(
+        (tableConfig, schema) ->
+            tablesNode.set(tableConfig.getKeyspaceAndTable(), schema.toJson()));
+    try {
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      MAPPER.writeValue(tmp.toFile(), root);
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.debug("Saved schema snapshot {}", file);
+    } catch (IOException e) {
+      log.warn(String.format("Could not save schema snapshot %s", file), e);
+    }
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.internal.core.util.concurrent.CompletableFutures;
+import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
+import com.datastax.oss.driver.shaded.guava.common.hash.Hashing;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import com.datastax.oss.kafka.sink.config.SslConfig;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference-counted registry of sessions shared by connector instances whose connection settings
+ * are equivalent. A session is closed when the last instance using it releases it.
+ *
+ * <p>The keyspaces whose schema metadata a shared session refreshes are the union of the keyspaces
+ * of the instances that acquired it, and are extended when an instance needs more of them.
+ */
+class SessionRegistry {
+  private static final Logger log = LoggerFactory.getLogger(SessionRegistry.class);
+
+  private final Map<String, SharedSession> sessions = new HashMap<>();
+
+  /**
+   * Get the session registered under the given key, building it if there is none yet. Each call
+   * that returns must be matched by a call to {@link #release(String)}.
+   *
+   * <p>Only the reference counting holds the lock of the registry: sessions are built, their schema
+   * metadata refreshed and closed outside of it, so that a slow or unreachable cluster only delays
+   * the instances sharing its session. Callers of a session being built wait for it.
+   *
+   * @param key the key of the session, see {@link #sessionKey(CassandraSinkConfig)}
+   * @param refreshedKeyspaces the keyspaces whose schema metadata the caller needs, or empty for
+   *     all keyspaces
+   * @param sessionFactory builds the session if needed, given the keyspaces whose schema metadata
+   *     it should refresh, which must be read again when the driver configuration is reloaded
+   * @return the shared session
+   */
+  @NonNull
+  CqlSession acquire(
+      String key,
+      Set<String> refreshedKeyspaces,
+      Function<Supplier<Set<String>>, CqlSession> sessionFactory) {
+    SharedSession shared;
+    boolean build;
+    Set<String> refreshed = null;
+    synchronized (this) {
+      shared = sessions.get(key);
+      build = shared == null;
+      if (build) {
+        shared = new SharedSession(refreshedKeyspaces);
+        sessions.put(key, shared);
+      } else {
+        Set<String> merged = merge(shared.refreshedKeyspaces, refreshedKeyspaces);
+        if (!merged.equals(shared.refreshedKeyspaces)) {
+          shared.refreshedKeyspaces = merged;
+          refreshed = merged;
+        }
+      }
+      shared.references++;
+    }
+    if (build) {
+      try {
+        CqlSession session = sessionFactory.apply(shared::getRefreshedKeyspaces);
+        shared.session.complete(session);
+        return session;
+      } catch (RuntimeException | Error e) {
+        // Callers waiting for the session fail too, and none of them will release it.
+        synchronized (this) {
+          sessions.remove(key, shared);
+        }
+        shared.session.completeExceptionally(e);
+        throw e;
+      }
+    }
+    CqlSession session = CompletableFutures.getUninterruptibly(shared.session);
+    log.info("Reusing session {} for equivalent connection settings", session.getName());
+    if (refreshed != null) {
+      try {
+        log.info(
+            "Refreshing schema metadata of session {} for keyspaces {}",
+            session.getName(),
+            refreshed.isEmpty() ? "(all)" : refreshed);
+        CompletableFutures.getUninterruptibly(session.getContext().getConfigLoader().reload());
+        session.refreshSchema();
+      } catch (RuntimeException | Error e) {
+        release(key);
+        throw e;
+      }
+    }
+    return session;
+  }
+
+  /**
+   * Release one reference to the session registered under the given key, closing the session if it
+   * was the last one.
+   *
+   * @param key the key of the session
+   */
+  void release(String key) {
+    SharedSession shared;
+    synchronized (this) {
+      shared = sessions.get(key);
+      if (shared == null || --shared.references > 0) {
+        return;
+      }
+      sessions.remove(key);
+    }
+    // A released session was built already.
+    CqlSession session = shared.session.getNow(null);
+    if (session != null) {
+      log.debug("Last reference to session {} released, closing it", session.getName());
+      InstanceState.closeQuietly(session);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized int getReferenceCount(String key) {
+    SharedSession shared = sessions.get(key);
+    return shared == null ? 0 : shared.references;
+  }
+
+  /**
+   * Compute the key under which sessions built from the given config are shared. Two configs yield
+   * the same key if they connect to the same contact points with the same authentication, SSL and
+   * driver settings, regardless of the connector name or topic settings. The settings are hashed so
+   * that credentials do not leak through the key.
+   *
+   * @param config the sink config
+   * @return the session key
+   */
+  @NonNull
+  static String sessionKey(CassandraSinkConfig config) {
+    SortedMap<String, String> settings = new TreeMap<>(config.getJavaDriverSettings());
+    settings.put(
+        "contactPoints",
+        config
+            .getContactPoints()
+            .stream()
+            .map(contactPoint -> contactPoint.trim().toLowerCase())
+            .sorted()
+            .collect(Collectors.joining(",")));
+    settings.put("port", String.valueOf(config.getPort()));
+    settings.putAll(config.getAuthenticatorConfig().originalsStrings());
+    SslConfig sslConfig = config.getSslConfig();
+    if (sslConfig != null) {
+      settings.putAll(sslConfig.originalsStrings());
+    }
+    String canonical =
+        settings
+            .entrySet()
+            .stream()
+            .map(entry -> entry.getKey() + "=" + entry.getValue())
+            .collect(Collectors.joining("\n"));
+    return Hashing.sha256().hashString(canonical, StandardCharsets.UTF_8).toString();
+  }
+
+  /** Merge two sets of refreshed keyspaces, where an empty set stands for all keyspaces. */
+  @NonNull
+  private static Set<String> merge(Set<String> current, Set<String> added) {
+    if (current.isEmpty() || added.isEmpty()) {
+      return Collections.emptySet();
+    }
+    Set<String> merged = new TreeSet<>(current);
+    merged.addAll(added);
+    return Collections.unmodifiableSet(merged);
+  }
+
+  private static class SharedSession {
+    private final CompletableFuture<CqlSession> session = new CompletableFuture<>();
+    private int references;
+    // Read by the driver when its configuration is reloaded.
+    private volatile Set<String> refreshedKeyspaces;
+
+    private SharedSession(Set<String> refreshedKeyspaces) {
+      this.refreshedKeyspaces = refreshedKeyspaces;
+    }
+
+    private Set<String> getRefreshedKeyspaces() {
+      return refreshedKeyspaces;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.metadata.schema.ColumnMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The parts of a table's schema that the connector needs to build the {@link
+ * com.datastax.oss.kafka.sink.RecordMapper} of a table mapping. Unlike {@link TableMetadata}, it
+ * can be saved to and restored from a schema snapshot.
+ */
+class TableSchema {
+  private final List<CqlIdentifier> primaryKey;
+  private final Set<CqlIdentifier> columns;
+  private final boolean counter;
+
+  TableSchema(List<CqlIdentifier> primaryKey, Collection<CqlIdentifier> columns, boolean counter) {
+    this.primaryKey = primaryKey;
+    this.columns = new LinkedHashSet<>(columns);
+    this.counter = counter;
+  }
+
+  @NonNull
+  static TableSchema of(TableMetadata table) {
+    return new TableSchema(
+        table.getPrimaryKey().stream().map(ColumnMetadata::getName).collect(Collectors.toList()),
+        table.getColumns().keySet(),
+        table.getColumns().values().stream().anyMatch(c -> c.getType() == DataTypes.COUNTER));
+  }
+
+  @NonNull
+  List<CqlIdentifier> getPrimaryKey() {
+    return primaryKey;
+  }
+
+  @NonNull
+  Set<CqlIdentifier> getColumns() {
+    return columns;
+  }
+
+  boolean isCounter() {
+    return counter;
+  }
+
+  @NonNull
+  ObjectNode toJson() {
+    ObjectNode node = JsonNodeFactory.instance.objectNode();
+    ArrayNode primaryKeyNode = node.putArray("primaryKey");
+    primaryKey.forEach(column -> primaryKeyNode.add(column.asInternal()));
+    ArrayNode columnsNode = node.putArray("columns");
+    columns.forEach(column -> columnsNode.add(column.asInternal()));
+    node.put("counter", counter);
+    return node;
+  }
+
+  @NonNull
+  static TableSchema fromJson(JsonNode node) {
+    return new TableSchema(
+        identifiers(node.get("primaryKey")),
+        identifiers(node.get("columns")),
+        node.get("counter").asBoolean());
+  }
+
+  private static List<CqlIdentifier> identifiers(JsonNode array) {
+    List<CqlIdentifier> identifiers = new ArrayList<>();
+    array.forEach(element -> identifiers.add(CqlIdentifier.fromInternal(element.asText())));
+    return identifiers;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    TableSchema other = (TableSchema) o;
+    return counter == other.counter
+        && primaryKey.equals(other.primaryKey)
+        && columns.equals(other.columns);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(primaryKey, columns, counter);
+  }
+}
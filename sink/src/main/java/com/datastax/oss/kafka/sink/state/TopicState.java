@@ -18,17 +18,28 @@ package com.datastax.oss.kafka.sink.state;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.datastax.oss.driver.api.core.CqlIdentifier;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.internal.core.util.concurrent.CompletableFutures;
 import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
 import com.datastax.oss.dsbulk.codecs.api.ConvertingCodecFactory;
 import com.datastax.oss.kafka.sink.Mapping;
 import com.datastax.oss.kafka.sink.RecordMapper;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
 import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.metrics.HistogramFactory;
 import com.datastax.oss.kafka.sink.metrics.MetricNamesCreator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -40,14 +51,32 @@ import java.util.stream.Collectors;
 class TopicState {
   private final ConvertingCodecFactory codecFactory;
   private final Map<TableConfig, RecordMapper> recordMappers;
+  private final Cache<StatementVariantKey, CompletableFuture<PreparedStatement>> statementVariants;
+  private final Map<TableConfig, UnchangedRowCache> unchangedRowCaches = new ConcurrentHashMap<>();
   private Map<String, Histogram> batchSizeHistograms;
   private Map<String, Meter> recordCounters;
   private Map<String, Meter> failedRecordCounters;
   private Map<String, Histogram> batchSizeInBytesHistograms;
+  private Map<String, Timer> mappingTimers;
+  private Map<String, Timer> queueWaitTimers;
+  private Map<String, Timer> requestBarrierWaitTimers;
+  private Map<String, Timer> executeTimers;
+  private Map<String, Meter> unchangedRowCacheHits;
+  private Map<String, Meter> unchangedRowCacheMisses;
+  private Map<String, Meter> unchangedRowCacheEvictions;
+  private final Map<Integer, PartitionMetrics> partitionMetrics = new ConcurrentHashMap<>();
+  private MetricRegistry metricRegistry;
+  private int maxPartitionMetrics;
+  private HistogramFactory histogramFactory;
 
   TopicState(ConvertingCodecFactory codecFactory) {
+    this(codecFactory, CassandraSinkConfig.COLUMN_SUBSET_STATEMENTS_CACHE_SIZE_DEFAULT);
+  }
+
+  TopicState(ConvertingCodecFactory codecFactory, int statementVariantsCacheSize) {
     this.codecFactory = codecFactory;
     recordMappers = new ConcurrentHashMap<>();
+    statementVariants = Caffeine.newBuilder().maximumSize(statementVariantsCacheSize).build();
   }
 
   void createRecordMapper(
@@ -55,7 +84,33 @@ class TopicState {
       List<CqlIdentifier> primaryKey,
       PreparedStatement insertUpdateStatement,
       PreparedStatement deleteStatement) {
-    recordMappers.putIfAbsent(
+    createRecordMapper(tableConfig, primaryKey, insertUpdateStatement, deleteStatement, null);
+  }
+
+  /**
+   * Create the {@link RecordMapper} of the given table, replacing any previous one (e.g. after a
+   * schema change).
+   *
+   * @param variantPreparer if non-null, prepares an insert statement restricted to the given
+   *     columns; the mapper then binds records to the variant matching their non-null columns.
+   *     Variants are prepared lazily and shared through a bounded cache.
+   */
+  void createRecordMapper(
+      TableConfig tableConfig,
+      List<CqlIdentifier> primaryKey,
+      PreparedStatement insertUpdateStatement,
+      PreparedStatement deleteStatement,
+      @Nullable
+          Function<Set<CqlIdentifier>, CompletionStage<? extends PreparedStatement>>
+              variantPreparer) {
+    Function<Set<CqlIdentifier>, PreparedStatement> variants =
+        variantPreparer == null
+            ? null
+            : columns -> getStatementVariant(tableConfig, columns, variantPreparer);
+    statementVariants.asMap().keySet().removeIf(key -> key.tableConfig.equals(tableConfig));
+    // The statements may bind other variables now: forget the rows written so far.
+    unchangedRowCaches.remove(tableConfig);
+    recordMappers.put(
         tableConfig,
         new RecordMapper(
             insertUpdateStatement,
@@ -64,23 +119,74 @@ class TopicState {
             new Mapping(tableConfig.getMapping(), codecFactory),
             true,
             false,
-            tableConfig));
+            tableConfig,
+            variants));
+  }
+
+  /**
+   * Get the variant of the insert statement of the given table restricted to the given columns,
+   * preparing it if it is not cached yet. The cache only registers the future of the variant: it is
+   * prepared, and waited for, outside of the cache's locks, so that other lookups don't wait for
+   * it.
+   */
+  @VisibleForTesting
+  PreparedStatement getStatementVariant(
+      TableConfig tableConfig,
+      Set<CqlIdentifier> columns,
+      Function<Set<CqlIdentifier>, CompletionStage<? extends PreparedStatement>> variantPreparer) {
+    StatementVariantKey key = new StatementVariantKey(tableConfig, columns);
+    CompletableFuture<PreparedStatement> variant = statementVariants.getIfPresent(key);
+    if (variant == null) {
+      CompletableFuture<PreparedStatement> created = new CompletableFuture<>();
+      variant = statementVariants.get(key, k -> created);
+      if (variant == created) {
+        variantPreparer
+            .apply(columns)
+            .whenComplete(
+                (prepared, error) -> {
+                  if (error == null) {
+                    created.complete(prepared);
+                  } else {
+                    // Prepare the variant again on its next use.
+                    statementVariants.asMap().remove(key, created);
+                    created.completeExceptionally(error);
+                  }
+                });
+      }
+    }
+    return CompletableFutures.getUninterruptibly(variant);
   }
 
   void initializeMetrics(MetricRegistry metricRegistry) {
+    initializeMetrics(
+        metricRegistry,
+        CassandraSinkConfig.MAX_PARTITION_METRICS_PER_TOPIC_DEFAULT,
+        HistogramFactory.DEFAULT);
+  }
+
+  /**
+   * Create the metrics of all topic-tables. Metrics of topic-partitions are created when the first
+   * record of the partition is written, up to maxPartitionMetrics partitions.
+   */
+  void initializeMetrics(
+      MetricRegistry metricRegistry, int maxPartitionMetrics, HistogramFactory histogramFactory) {
+    this.metricRegistry = metricRegistry;
+    this.maxPartitionMetrics = maxPartitionMetrics;
+    this.histogramFactory = histogramFactory;
+
     // Add batch size histograms for all topic-tables.
     batchSizeHistograms =
         constructMetrics(
             recordMappers,
             MetricNamesCreator::createBatchSizeMetricName,
-            metricRegistry::histogram);
+            name -> histogramFactory.histogram(metricRegistry, name));
 
     // Add batch size in bytes histograms for all topic-tables.
     batchSizeInBytesHistograms =
         constructMetrics(
             recordMappers,
             MetricNamesCreator::createBatchSizeInBytesMetricName,
-            metricRegistry::histogram);
+            name -> histogramFactory.histogram(metricRegistry, name));
 
     // Add recordCounters for all topic-tables.
     recordCounters =
@@ -93,6 +199,51 @@ class TopicState {
             recordMappers,
             MetricNamesCreator::createFailedRecordCountMetricName,
             metricRegistry::meter);
+
+    // Add timers of the stages of the write pipeline for all topic-tables.
+    mappingTimers =
+        constructMetrics(
+            recordMappers,
+            MetricNamesCreator::createMappingTimeMetricName,
+            name -> histogramFactory.timer(metricRegistry, name));
+    queueWaitTimers =
+        constructMetrics(
+            recordMappers,
+            MetricNamesCreator::createQueueWaitTimeMetricName,
+            name -> histogramFactory.timer(metricRegistry, name));
+    requestBarrierWaitTimers =
+        constructMetrics(
+            recordMappers,
+            MetricNamesCreator::createRequestBarrierWaitTimeMetricName,
+            name -> histogramFactory.timer(metricRegistry, name));
+    executeTimers =
+        constructMetrics(
+            recordMappers,
+            MetricNamesCreator::createExecuteTimeMetricName,
+            name -> histogramFactory.timer(metricRegistry, name));
+
+    // Add unchanged row cache meters for the topic-tables that have one.
+    Map<TableConfig, RecordMapper> cachedTables =
+        recordMappers
+            .entrySet()
+            .stream()
+            .filter(e -> e.getKey().getUnchangedRowCacheSize() > 0)
+            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    unchangedRowCacheHits =
+        constructMetrics(
+            cachedTables,
+            MetricNamesCreator::createUnchangedRowCacheHitsMetricName,
+            metricRegistry::meter);
+    unchangedRowCacheMisses =
+        constructMetrics(
+            cachedTables,
+            MetricNamesCreator::createUnchangedRowCacheMissesMetricName,
+            metricRegistry::meter);
+    unchangedRowCacheEvictions =
+        constructMetrics(
+            cachedTables,
+            MetricNamesCreator::createUnchangedRowCacheEvictionsMetricName,
+            metricRegistry::meter);
   }
 
   private <T> Map<String, T> constructMetrics(
@@ -119,6 +270,41 @@ class TopicState {
     return batchSizeInBytesHistograms.get(keyspaceAndTable);
   }
 
+  @NonNull
+  Timer getMappingTimer(String keyspaceAndTable) {
+    return mappingTimers.get(keyspaceAndTable);
+  }
+
+  @NonNull
+  Timer getQueueWaitTimer(String keyspaceAndTable) {
+    return queueWaitTimers.get(keyspaceAndTable);
+  }
+
+  @NonNull
+  Timer getRequestBarrierWaitTimer(String keyspaceAndTable) {
+    return requestBarrierWaitTimers.get(keyspaceAndTable);
+  }
+
+  @NonNull
+  Timer getExecuteTimer(String keyspaceAndTable) {
+    return executeTimers.get(keyspaceAndTable);
+  }
+
+  /**
+   * @return the metrics of the given partition, or null if metrics are already tracked for
+   *     maxPartitionMetrics other partitions of the topic.
+   */
+  @Nullable
+  PartitionMetrics getPartitionMetrics(String topicName, int partition) {
+    PartitionMetrics metrics = partitionMetrics.get(partition);
+    if (metrics == null && partitionMetrics.size() < maxPartitionMetrics) {
+      metrics =
+          partitionMetrics.computeIfAbsent(
+              partition, p -> new PartitionMetrics(metricRegistry, histogramFactory, topicName, p));
+    }
+    return metrics;
+  }
+
   void incrementRecordCount(String keyspaceAndTable, int incrementBy) {
     recordCounters.get(keyspaceAndTable).mark(incrementBy);
   }
@@ -141,4 +327,66 @@ class TopicState {
   RecordMapper getRecordMapper(TableConfig tableConfig) {
     return recordMappers.get(tableConfig);
   }
+
+  /**
+   * @return the unchanged row cache of the given table, created on first use, or null if the table
+   *     has none
+   */
+  @Nullable
+  UnchangedRowCache getUnchangedRowCache(TableConfig tableConfig) {
+    if (tableConfig.getUnchangedRowCacheSize() == 0) {
+      return null;
+    }
+    return unchangedRowCaches.computeIfAbsent(
+        tableConfig,
+        t -> {
+          String keyspaceAndTable = t.getKeyspaceAndTable();
+          return new UnchangedRowCache(
+              t.getUnchangedRowCacheSize(),
+              t.getUnchangedRowCacheTtl(),
+              meter(unchangedRowCacheHits, keyspaceAndTable),
+              meter(unchangedRowCacheMisses, keyspaceAndTable),
+              meter(unchangedRowCacheEvictions, keyspaceAndTable));
+        });
+  }
+
+  /** @return the meter of the given table, or an unregistered one if metrics are not initialized */
+  @NonNull
+  private static Meter meter(@Nullable Map<String, Meter> meters, String keyspaceAndTable) {
+    Meter meter = meters == null ? null : meters.get(keyspaceAndTable);
+    return meter == null ? new Meter() : meter;
+  }
+
+  @VisibleForTesting
+  long getStatementVariantsCount() {
+    statementVariants.cleanUp();
+    return statementVariants.estimatedSize();
+  }
+
+  private static final class StatementVariantKey {
+    private final TableConfig tableConfig;
+    private final Set<CqlIdentifier> columns;
+
+    private StatementVariantKey(TableConfig tableConfig, Set<CqlIdentifier> columns) {
+      this.tableConfig = tableConfig;
+      this.columns = columns;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      StatementVariantKey other = (StatementVariantKey) o;
+      return tableConfig.equals(other.tableConfig) && columns.equals(other.columns);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(tableConfig, columns);
+    }
+  }
 }
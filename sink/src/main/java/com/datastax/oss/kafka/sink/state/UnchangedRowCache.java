@@ -0,0 +1,250 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.codahale.metrics.Meter;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.shaded.guava.common.annotations.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers, for the primary keys written last to a table, a hash of the values of their last
+ * acknowledged write, so that a record binding exactly the same values again is not written.
+ *
+ * <p>The cache is a set-associative table of primitive arrays: a primary key hash maps to a set of
+ * {@link #WAYS} slots, each holding the key hash, a value hash and a deadline, and guarded by a
+ * lock per set. When the set of a new key is full, the entry with the earliest deadline is evicted.
+ * Entries expire {@code ttl} after the write they stand for, which bounds how long a row modified
+ * by another writer can be skipped.
+ *
+ * <p>A write is only remembered once acknowledged: {@link #check} hands out a {@link Candidate} for
+ * every changed row, to be {@link Candidate#written() confirmed} once the write succeeded. Until
+ * then, and forever if the write fails, the row is considered changed. When several writes of the
+ * same key are in flight, only the last one checked is remembered.
+ */
+public class UnchangedRowCache {
+  @VisibleForTesting static final int WAYS = 8;
+  private static final int LOCK_STRIPES = 64;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final long[] keyHashes;
+  private final long[] values;
+
+  /**
+   * The deadline of each slot, in nanoseconds since {@link #origin}: 0 if the slot is empty, and
+   * negated if the slot holds the token of a write in flight instead of a value hash.
+   */
+  private final long[] deadlines;
+
+  private final int setMask;
+  private final Object[] locks = new Object[LOCK_STRIPES];
+  private final long ttlNanos;
+  private final long origin = System.nanoTime();
+  private final AtomicLong tokens = new AtomicLong();
+  private final Meter hits;
+  private final Meter misses;
+  private final Meter evictions;
+  private volatile Layout layout;
+
+  /**
+   * @param size the number of keys to remember, rounded up to a power of two of at least {@link
+   *     #WAYS}
+   * @param ttl how long to remember a write
+   */
+  public UnchangedRowCache(int size, Duration ttl, Meter hits, Meter misses, Meter evictions) {
+    int sets = 1;
+    while ((long) sets * WAYS < size) {
+      sets <<= 1;
+    }
+    keyHashes = new long[sets * WAYS];
+    values = new long[sets * WAYS];
+    deadlines = new long[sets * WAYS];
+    setMask = sets - 1;
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      locks[i] = new Object();
+    }
+    this.ttlNanos = ttl.toNanos();
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+  }
+
+  /** @return the number of keys this cache can hold. */
+  public int capacity() {
+    return keyHashes.length;
+  }
+
+  /**
+   * @param statement the statement a record is bound to
+   * @param primaryKey the primary key columns of the table
+   * @return null if the last acknowledged write of the primary key of the statement bound the same
+   *     values, or else the candidate to confirm once the statement is written
+   */
+  @Nullable
+  public Candidate check(BoundStatement statement, Set<CqlIdentifier> primaryKey) {
+    Layout layout = this.layout;
+    if (layout == null || layout.statement != statement.getPreparedStatement()) {
+      layout = new Layout(statement.getPreparedStatement(), primaryKey);
+      this.layout = layout;
+    }
+    long keyHash = FNV_OFFSET_BASIS;
+    long valueHash = hash(FNV_OFFSET_BASIS, layout.statement.getId());
+    for (int i = 0; i < layout.keyVariables.length; i++) {
+      // Tell unset from null, and null from empty.
+      ByteBuffer bytes = statement.isSet(i) ? statement.getBytesUnsafe(i) : null;
+      long marker = !statement.isSet(i) ? 1 : bytes == null ? 2 : 3;
+      if (layout.keyVariables[i]) {
+        keyHash = hash(mix(keyHash, marker), bytes);
+      }
+      valueHash = hash(mix(valueHash, marker), bytes);
+    }
+    return check(finish(keyHash), finish(valueHash));
+  }
+
+  @VisibleForTesting
+  @Nullable
+  Candidate check(long keyHash, long valueHash) {
+    int set = (int) (keyHash ^ (keyHash >>> 32)) & setMask;
+    long now = now();
+    synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+      int slot = findSlot(set, keyHash, now);
+      if (keyHashes[slot] == keyHash && deadlines[slot] > now && values[slot] == valueHash) {
+        hits.mark();
+        return null;
+      }
+      misses.mark();
+      long token = tokens.incrementAndGet();
+      keyHashes[slot] = keyHash;
+      values[slot] = token;
+      deadlines[slot] = -(now + ttlNanos);
+      return new Candidate(keyHash, valueHash, token);
+    }
+  }
+
+  /**
+   * @return the slot of the given key in the given set if any, or else the slot to store it in: an
+   *     empty or expired one if any, or else the one expiring first
+   */
+  private int findSlot(int set, long keyHash, long now) {
+    int first = set * WAYS;
+    int free = -1;
+    int oldest = first;
+    for (int slot = first; slot < first + WAYS; slot++) {
+      long deadline = Math.abs(deadlines[slot]);
+      if (deadline == 0 || deadline <= now) {
+        if (free < 0) {
+          free = slot;
+        }
+      } else if (keyHashes[slot] == keyHash) {
+        return slot;
+      } else if (deadline < Math.abs(deadlines[oldest])) {
+        oldest = slot;
+      }
+    }
+    if (free >= 0) {
+      if (deadlines[free] != 0) {
+        // Expired.
+        evictions.mark();
+      }
+      return free;
+    }
+    evictions.mark();
+    return oldest;
+  }
+
+  private void written(Candidate candidate) {
+    int set = (int) (candidate.keyHash ^ (candidate.keyHash >>> 32)) & setMask;
+    synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+      for (int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+        if (keyHashes[slot] == candidate.keyHash
+            && deadlines[slot] < 0
+            && values[slot] == candidate.token) {
+          values[slot] = candidate.valueHash;
+          deadlines[slot] = now() + ttlNanos;
+          return;
+        }
+      }
+    }
+  }
+
+  private long now() {
+    // Never 0, which marks empty slots.
+    return System.nanoTime() - origin + 1;
+  }
+
+  private static long hash(long hash, @Nullable ByteBuffer bytes) {
+    if (bytes != null) {
+      for (int i = bytes.position(); i < bytes.limit(); i++) {
+        hash = (hash ^ (bytes.get(i) & 0xff)) * FNV_PRIME;
+      }
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, long value) {
+    return (hash ^ value) * FNV_PRIME;
+  }
+
+  /** The finalizer of MurmurHash3, to spread the FNV-1a hash over all bits. */
+  private static long finish(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  /** Which variables of a statement are primary key columns. */
+  private static final class Layout {
+    private final PreparedStatement statement;
+    private final boolean[] keyVariables;
+
+    private Layout(PreparedStatement statement, Set<CqlIdentifier> primaryKey) {
+      this.statement = statement;
+      ColumnDefinitions variables = statement.getVariableDefinitions();
+      keyVariables = new boolean[variables.size()];
+      for (int i = 0; i < variables.size(); i++) {
+        keyVariables[i] = primaryKey.contains(variables.get(i).getName());
+      }
+    }
+  }
+
+  /** A changed row, to remember once written. */
+  public final class Candidate {
+    private final long keyHash;
+    private final long valueHash;
+    private final long token;
+
+    private Candidate(long keyHash, long valueHash, long token) {
+      this.keyHash = keyHash;
+      this.valueHash = valueHash;
+      this.token = token;
+    }
+
+    /** Remember the row, unless a later write of the same key was checked since. */
+    public void written() {
+      UnchangedRowCache.this.written(this);
+    }
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.util;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, preallocated, lock-free queue for any number of producers and a single consumer.
+ *
+ * <p>Elements are stored in an array whose slots each carry a sequence number, so that producers
+ * claim slots with a single compare-and-set and publish them without locks, and no node is
+ * allocated per element. Only one thread at a time may call the consuming methods ({@link #poll},
+ * {@link #take}, {@link #drainTo}...); {@link #drainTo} takes all the published elements at once.
+ *
+ * <p>The {@link WaitStrategy} decides how a consumer waits for an element and a producer for free
+ * space. Producers waiting for space are not signaled; with {@link WaitStrategy#PARK} they check
+ * again every {@value #PRODUCER_PARK_MICROS} microseconds.
+ *
+ * @param <E> the type of the elements
+ */
+public class MpscRingBuffer<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+  /** How a thread waits for an element, or for free space. */
+  public enum WaitStrategy {
+    /** Busy-spin: lowest latency, but a waiting thread keeps a core busy. */
+    SPIN,
+    /** Yield the core to other threads between checks. */
+    YIELD,
+    /** Park the thread: lowest CPU usage, at the cost of a wake-up latency. */
+    PARK
+  }
+
+  private static final int MAX_CAPACITY = 1 << 30;
+  private static final long PRODUCER_PARK_MICROS = 50;
+
+  private final Object[] elements;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final WaitStrategy waitStrategy;
+
+  /** The position of the next slot claimed by a producer. */
+  private final AtomicLong tail = new AtomicLong();
+
+  /** The position of the next slot read by the consumer. */
+  private final AtomicLong head = new AtomicLong();
+
+  /** The consumer, while it is parked waiting for an element. */
+  private volatile Thread parkedConsumer;
+
+  /**
+   * @param capacity the maximum number of elements, rounded up to the next power of two
+   * @param waitStrategy how waiting threads wait
+   */
+  public MpscRingBuffer(int capacity, @NonNull WaitStrategy waitStrategy) {
+    if (capacity < 1 || capacity > MAX_CAPACITY) {
+      throw new IllegalArgumentException(
+          String.format("Capacity must be between 1 and %d, got %d", MAX_CAPACITY, capacity));
+    }
+    int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    elements = new Object[size];
+    sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+    mask = size - 1;
+    this.waitStrategy = waitStrategy;
+  }
+
+  /** @return the maximum number of elements in this queue. */
+  public int capacity() {
+    return elements.length;
+  }
+
+  @Override
+  public boolean offer(@NonNull E e) {
+    Objects.requireNonNull(e);
+    long position = tail.get();
+    while (true) {
+      long sequence = sequences.get(index(position));
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+        position = tail.get();
+      } else if (sequence < position) {
+        // The slot still holds the element of the previous lap.
+        return false;
+      } else {
+        // Another producer claimed the slot.
+        position = tail.get();
+      }
+    }
+    int index = index(position);
+    elements[index] = e;
+    // A volatile write, ordered before the read of parkedConsumer: either the consumer sees the
+    // element before parking, or this thread sees the consumer and unparks it.
+    sequences.set(index, position + 1);
+    Thread consumer = parkedConsumer;
+    if (consumer != null) {
+      LockSupport.unpark(consumer);
+    }
+    return true;
+  }
+
+  @Override
+  public void put(@NonNull E e) throws InterruptedException {
+    while (!offer(e)) {
+      waitForSpace();
+    }
+  }
+
+  @Override
+  public boolean offer(@NonNull E e, long timeout, @NonNull TimeUnit unit)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!offer(e)) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      waitForSpace();
+    }
+    return true;
+  }
+
+  private void waitForSpace() throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    switch (waitStrategy) {
+      case SPIN:
+        break;
+      case YIELD:
+        Thread.yield();
+        break;
+      case PARK:
+        LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(PRODUCER_PARK_MICROS));
+        break;
+    }
+  }
+
+  @Override
+  public E poll() {
+    long position = head.get();
+    int index = index(position);
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    E e = (E) elements[index];
+    elements[index] = null;
+    sequences.lazySet(index, position + elements.length);
+    head.lazySet(position + 1);
+    return e;
+  }
+
+  @Override
+  @NonNull
+  public E take() throws InterruptedException {
+    E e;
+    while ((e = poll()) == null) {
+      waitForElement(-1L);
+    }
+    return e;
+  }
+
+  @Override
+  public E poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    E e;
+    while ((e = poll()) == null) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return null;
+      }
+      waitForElement(remaining);
+    }
+    return e;
+  }
+
+  /** @param timeoutNanos the maximum time to park, or a negative value to park until signaled */
+  private void waitForElement(long timeoutNanos) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    switch (waitStrategy) {
+      case SPIN:
+        break;
+      case YIELD:
+        Thread.yield();
+        break;
+      case PARK:
+        parkedConsumer = Thread.currentThread();
+        if (!isPublished(head.get())) {
+          if (timeoutNanos < 0) {
+            LockSupport.park(this);
+          } else {
+            LockSupport.parkNanos(this, timeoutNanos);
+          }
+        }
+        parkedConsumer = null;
+        break;
+    }
+  }
+
+  @Override
+  public E peek() {
+    long position = head.get();
+    int index = index(position);
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    E e = (E) elements[index];
+    return e;
+  }
+
+  @Override
+  public int drainTo(@NonNull Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(@NonNull Collection<? super E> c, int maxElements) {
+    if (c == this) {
+      throw new IllegalArgumentException("Cannot drain a queue to itself");
+    }
+    int drained = 0;
+    E e;
+    while (drained < maxElements && (e = poll()) != null) {
+      c.add(e);
+      drained++;
+    }
+    return drained;
+  }
+
+  @Override
+  public int size() {
+    long consumed = head.get();
+    long claimed = tail.get();
+    return (int) Math.max(0, Math.min(claimed - consumed, elements.length));
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return elements.length - size();
+  }
+
+  /**
+   * @return an iterator over a snapshot of the published elements; as the other consuming methods,
+   *     it may only be called by the consumer thread
+   */
+  @Override
+  @NonNull
+  public Iterator<E> iterator() {
+    List<E> snapshot = new ArrayList<>();
+    for (long position = head.get(); isPublished(position); position++) {
+      @SuppressWarnings("unchecked")
+      E e = (E) elements[index(position)];
+      snapshot.add(e);
+    }
+    return Collections.unmodifiableList(snapshot).iterator();
+  }
+
+  private boolean isPublished(long position) {
+    return sequences.get(index(position)) == position + 1;
+  }
+
+  private int index(long position) {
+    return (int) position & mask;
+  }
+}
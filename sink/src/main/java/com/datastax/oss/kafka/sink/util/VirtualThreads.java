@@ -0,0 +1,108 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.util;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ThreadFactory;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factories of virtual threads.
+ *
+ * <p>The connector targets Java 8, which has no {@code Thread.Builder} API, so virtual threads are
+ * created through {@code Thread.ofVirtual()} looked up at runtime when the JVM provides it (Java 21
+ * or later); {@link #newThreadFactory(String)} returns null otherwise, and callers fall back to
+ * platform threads.
+ */
+@IgnoreJRERequirement // invokeExact is signature polymorphic, unknown to the java18 signature
+public final class VirtualThreads {
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+  /** {@code Thread.ofVirtual()}, or null if virtual threads are not available. */
+  @Nullable private static final MethodHandle OF_VIRTUAL;
+
+  /** {@code Thread.Builder.OfVirtual.name(String prefix, long start)}. */
+  @Nullable private static final MethodHandle NAME;
+
+  /** {@code Thread.Builder.factory()}. */
+  @Nullable private static final MethodHandle FACTORY;
+
+  static {
+    MethodHandle ofVirtual = null;
+    MethodHandle name = null;
+    MethodHandle factory = null;
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Class<?> ofVirtualClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      ofVirtual =
+          lookup
+              .findStatic(Thread.class, "ofVirtual", MethodType.methodType(ofVirtualClass))
+              .asType(MethodType.methodType(Object.class));
+      name =
+          lookup
+              .findVirtual(
+                  ofVirtualClass,
+                  "name",
+                  MethodType.methodType(ofVirtualClass, String.class, long.class))
+              .asType(MethodType.methodType(Object.class, Object.class, String.class, long.class));
+      factory =
+          lookup
+              .findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class))
+              .asType(MethodType.methodType(ThreadFactory.class, Object.class));
+      // Virtual threads are a preview feature in Java 19 and 20; this fails unless it is enabled.
+      Object unused = ofVirtual.invokeExact();
+    } catch (ClassNotFoundException e) {
+      log.debug("Virtual threads are not available in this JVM");
+      ofVirtual = null;
+    } catch (Throwable t) {
+      log.debug("Virtual threads are not available in this JVM", t);
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+  }
+
+  private VirtualThreads() {}
+
+  /** Whether this JVM supports virtual threads. */
+  public static boolean isAvailable() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * @param prefix the prefix of the names of the threads, followed by a counter starting at 0
+   * @return a factory of virtual threads, or null if this JVM does not support them
+   */
+  @Nullable
+  public static ThreadFactory newThreadFactory(String prefix) {
+    if (OF_VIRTUAL == null || NAME == null || FACTORY == null) {
+      return null;
+    }
+    try {
+      Object builder = NAME.invokeExact((Object) OF_VIRTUAL.invokeExact(), prefix, 0L);
+      return (ThreadFactory) FACTORY.invokeExact(builder);
+    } catch (Throwable t) {
+      throw new IllegalStateException("Could not create a virtual thread factory", t);
+    }
+  }
+}
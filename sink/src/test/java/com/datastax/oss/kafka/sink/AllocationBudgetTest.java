@@ -0,0 +1,292 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.type.DataType;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableMap;
+import com.datastax.oss.dsbulk.tests.utils.ReflectionUtils;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.config.TopicConfig;
+import com.datastax.oss.kafka.sink.metadata.InnerDataAndMetadata;
+import com.datastax.oss.kafka.sink.metadata.MetadataCreator;
+import com.datastax.oss.kafka.sink.metrics.HistogramFactory;
+import com.datastax.oss.kafka.sink.record.HeadersDataMetadata;
+import com.datastax.oss.kafka.sink.record.KeyValueRecord;
+import com.datastax.oss.kafka.sink.record.KeyValueRecordMetadata;
+import com.datastax.oss.kafka.sink.record.RecordAndStatement;
+import com.datastax.oss.kafka.sink.record.RecordHandle;
+import com.datastax.oss.kafka.sink.state.InstanceState;
+import com.datastax.oss.kafka.sink.state.UnchangedRowCache;
+import com.datastax.oss.kafka.sink.util.SinkUtil;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.connect.data.Schema;
+import org.apache.kafka.connect.data.SchemaBuilder;
+import org.apache.kafka.connect.data.Struct;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ * Allocation budgets of the mapping of records, in bytes allocated per record on the mapping
+ * thread, to catch regressions that increase the GC pressure on mapping threads. Each budget is the
+ * highest of three measured runs on JDK 8 plus about 25%, which absorbs the run-to-run noise of the
+ * per-thread allocation counter. The measured bytes per record are part of the failure message;
+ * when a change legitimately allocates more, measure again and reset the budget the same way.
+ */
+class AllocationBudgetTest {
+  private static final int WARMUP_ITERATIONS = 20_000;
+  private static final int MEASURED_ITERATIONS = 10_000;
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /** The format of the record values. */
+  enum Payload {
+    JSON,
+    STRUCT,
+    RAW
+  }
+
+  @BeforeAll
+  static void enableAllocationMeasurement() {
+    assumeTrue(
+        THREAD_MX_BEAN.isThreadAllocatedMemorySupported(),
+        "Thread allocation measurement is not supported by this JVM");
+    THREAD_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @ParameterizedTest(name = "[{index}] {0} records within {1} bytes")
+  @CsvSource({"JSON, 5900", "STRUCT, 6200", "RAW, 3700"})
+  void should_bind_record_within_budget(Payload payload, long budget) throws Exception {
+    Scenario scenario = new Scenario(payload);
+    KeyValueRecordMetadata[] metadata = new KeyValueRecordMetadata[MEASURED_ITERATIONS];
+    KeyValueRecord[] records = new KeyValueRecord[MEASURED_ITERATIONS];
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      SinkRecord record = scenario.records[i];
+      InnerDataAndMetadata key = MetadataCreator.makeMeta(record.key());
+      InnerDataAndMetadata value = MetadataCreator.makeMeta(record.value());
+      metadata[i] =
+          new KeyValueRecordMetadata(
+              key.getInnerMetadata(),
+              value.getInnerMetadata(),
+              new HeadersDataMetadata(record.headers()));
+      records[i] =
+          new KeyValueRecord(
+              key.getInnerData(), value.getInnerData(), record.timestamp(), record.headers());
+    }
+
+    long bytesPerRecord =
+        allocatedBytesPerIteration(i -> scenario.recordMapper.map(metadata[i], records[i]));
+
+    assertThat(bytesPerRecord)
+        .as("bytes allocated by RecordMapper.map per %s record", payload)
+        .isLessThanOrEqualTo(budget);
+  }
+
+  @ParameterizedTest(name = "[{index}] {0} records within {1} bytes")
+  @CsvSource({"JSON, 14000", "STRUCT, 12400", "RAW, 18100"})
+  void should_map_and_queue_record_within_budget(Payload payload, long budget) throws Exception {
+    Scenario scenario = new Scenario(payload);
+    CassandraSinkTask task = new CassandraSinkTask();
+    ReflectionUtils.setInternalState(task, "instanceState", scenario.instanceState);
+    BlockingQueue<RecordAndStatement> queue = new LinkedBlockingQueue<>();
+
+    long bytesPerRecord =
+        allocatedBytesPerIteration(
+            i -> {
+              task.mapAndQueueRecord(queue, scenario.records[i]);
+              queue.clear();
+            });
+
+    assertThat(scenario.instanceState.failures.get()).isZero();
+    assertThat(bytesPerRecord)
+        .as("bytes allocated by CassandraSinkTask.mapAndQueueRecord per %s record", payload)
+        .isLessThanOrEqualTo(budget);
+  }
+
+  /**
+   * Run the given iteration on the records of the scenario until it is compiled, then measure the
+   * bytes allocated by the current thread.
+   */
+  private static long allocatedBytesPerIteration(Iteration iteration) throws Exception {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      iteration.run(i % MEASURED_ITERATIONS);
+    }
+    long threadId = Thread.currentThread().getId();
+    long start = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      iteration.run(i);
+    }
+    return (THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - start) / MEASURED_ITERATIONS;
+  }
+
+  private interface Iteration {
+    void run(int record) throws Exception;
+  }
+
+  /**
+   * A topic written to a single table, with a bigint key column, and int, text and double value
+   * columns, or a single text column for raw values.
+   */
+  private static class Scenario {
+    private static final Schema VALUE_SCHEMA =
+        SchemaBuilder.struct()
+            .field("f1", Schema.INT32_SCHEMA)
+            .field("f2", Schema.STRING_SCHEMA)
+            .field("f3", Schema.FLOAT64_SCHEMA)
+            .build();
+
+    private final SinkRecord[] records = new SinkRecord[MEASURED_ITERATIONS];
+    private final RecordMapper recordMapper;
+    private final FixedInstanceState instanceState;
+
+    private Scenario(Payload payload) {
+      List<ColumnDefinition> variables = new ArrayList<>();
+      variables.add(column("c0", DataTypes.BIGINT));
+      String mapping;
+      if (payload == Payload.RAW) {
+        mapping = "c0=key, c1=value";
+        variables.add(column("c1", DataTypes.TEXT));
+      } else {
+        mapping = "c0=key, c1=value.f1, c2=value.f2, c3=value.f3";
+        variables.add(column("c1", DataTypes.INT));
+        variables.add(column("c2", DataTypes.TEXT));
+        variables.add(column("c3", DataTypes.DOUBLE));
+      }
+      variables.add(column(SinkUtil.TIMESTAMP_VARNAME, DataTypes.BIGINT));
+
+      TopicConfig topicConfig =
+          new TopicConfig(
+              "mytopic", ImmutableMap.of("topic.mytopic.ks.mytable.mapping", mapping), false);
+      TableConfig tableConfig = topicConfig.getTableConfigs().iterator().next();
+      recordMapper =
+          new RecordMapper(
+              new StubPreparedStatement("INSERT INTO ks.mytable", variables, 1),
+              null,
+              Collections.singletonList(CqlIdentifier.fromInternal("c0")),
+              new Mapping(tableConfig.getMapping(), topicConfig.createCodecFactory()),
+              true,
+              false,
+              tableConfig);
+      instanceState = new FixedInstanceState(topicConfig, recordMapper);
+
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        Object value;
+        switch (payload) {
+          case JSON:
+            value = String.format("{\"f1\":%d,\"f2\":\"text %d\",\"f3\":%d.5}", i, i, i);
+            break;
+          case STRUCT:
+            value = new Struct(VALUE_SCHEMA).put("f1", i).put("f2", "text " + i).put("f3", i + 0.5);
+            break;
+          default:
+            value = "raw text " + i;
+        }
+        records[i] =
+            new SinkRecord(
+                "mytopic",
+                0,
+                Schema.INT64_SCHEMA,
+                (long) i,
+                payload == Payload.STRUCT ? VALUE_SCHEMA : null,
+                value,
+                i,
+                153000987L,
+                TimestampType.CREATE_TIME);
+      }
+    }
+
+    private static ColumnDefinition column(String name, DataType type) {
+      return new StubColumnDefinition("ks", "mytable", name, type);
+    }
+  }
+
+  /**
+   * An instance state with a single topic and table, whose lookups do not allocate, unlike those of
+   * a mock.
+   */
+  private static class FixedInstanceState extends InstanceState {
+    private final TopicConfig topicConfig;
+    private final RecordMapper recordMapper;
+    private final Timer mappingTimer =
+        HistogramFactory.DEFAULT.timer(new MetricRegistry(), "mappingTimer");
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private FixedInstanceState(TopicConfig topicConfig, RecordMapper recordMapper) {
+      super(
+          new CassandraSinkConfig(ImmutableMap.of("name", "allocation", "jmx", "false")),
+          mock(CqlSession.class),
+          Collections.emptyMap(),
+          new MetricRegistry());
+      this.topicConfig = topicConfig;
+      this.recordMapper = recordMapper;
+    }
+
+    @Override
+    public TopicConfig getTopicConfig(String topicName) {
+      return topicConfig;
+    }
+
+    @Override
+    public RecordMapper getRecordMapper(TableConfig tableConfig) {
+      return recordMapper;
+    }
+
+    @Override
+    public Timer getMappingTimer(String topicName, String keyspaceAndTable) {
+      return mappingTimer;
+    }
+
+    @Override
+    public UnchangedRowCache getUnchangedRowCache(TableConfig tableConfig) {
+      return null;
+    }
+
+    @Override
+    public void recordWritesQueued(RecordHandle record, int count) {
+      // No partition metrics without topic states.
+      record.writesQueued(count);
+    }
+
+    @Override
+    public void incrementFailedCounter(String topicName, String keyspaceAndTable) {
+      failures.incrementAndGet();
+    }
+
+    @Override
+    public void incrementFailedWithUnknownTopicCounter() {
+      failures.incrementAndGet();
+    }
+  }
+}
@@ -15,28 +15,50 @@
  */
 package com.datastax.oss.kafka.sink;
 
+import static com.datastax.oss.driver.api.core.DefaultConsistencyLevel.ONE;
+import static com.datastax.oss.driver.api.core.DefaultConsistencyLevel.QUORUM;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.type.DataTypes;
 import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
 import com.datastax.oss.kafka.sink.record.RecordAndStatement;
 import com.datastax.oss.kafka.sink.state.InstanceState;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
 class BoundStatementProcessorTest {
@@ -85,6 +107,53 @@ class BoundStatementProcessorTest {
     assertThat(batchGroup).isSameAs(result2);
   }
 
+  @Test
+  void should_categorize_statements_of_same_keyspace_together_when_batching_across_tables() {
+    ByteBuffer routingKey = ByteBuffer.wrap(new byte[] {1, 2, 3});
+    ByteBuffer otherRoutingKey = ByteBuffer.wrap(new byte[] {4, 5, 6});
+    SinkRecord record = new SinkRecord("mytopic", 0, null, null, null, "value", 1234L);
+    RecordAndStatement table1 =
+        new RecordAndStatement(record, "ks.table1", mockStatement(routingKey, ONE));
+    RecordAndStatement table2 =
+        new RecordAndStatement(record, "ks.table2", mockStatement(routingKey, ONE));
+    RecordAndStatement otherKey =
+        new RecordAndStatement(record, "ks.table2", mockStatement(otherRoutingKey, ONE));
+    RecordAndStatement otherConsistency =
+        new RecordAndStatement(record, "ks.table3", mockStatement(routingKey, QUORUM));
+    RecordAndStatement otherKeyspace =
+        new RecordAndStatement(record, "ks2.table1", mockStatement(routingKey, ONE));
+    CassandraSinkTask task = mockCassandraSinkTask();
+    when(task.getInstanceState().isBatchAcrossTables()).thenReturn(true);
+    BoundStatementProcessor statementProcessor = new BoundStatementProcessor(task, null, null, 32);
+    Map<String, Map<ByteBuffer, List<RecordAndStatement>>> statementGroups = new HashMap<>();
+
+    statementProcessor.categorizeStatement(statementGroups, table1);
+    List<RecordAndStatement> result =
+        statementProcessor.categorizeStatement(statementGroups, table2);
+    statementProcessor.categorizeStatement(statementGroups, otherKey);
+    statementProcessor.categorizeStatement(statementGroups, otherConsistency);
+    statementProcessor.categorizeStatement(statementGroups, otherKeyspace);
+
+    assertThat(result).containsExactly(table1, table2);
+    assertThat(statementGroups)
+        .containsOnlyKeys("mytopic.ks.ONE", "mytopic.ks.QUORUM", "mytopic.ks2.ONE");
+    assertThat(statementGroups.get("mytopic.ks.ONE")).containsOnlyKeys(routingKey, otherRoutingKey);
+  }
+
+  @ParameterizedTest
+  @CsvSource({"ks.tb,ks", "\"my.ks\".\"my.tb\",\"my.ks\"", "\"a\"\"b\".tb,\"a\"\"b\""})
+  void should_extract_keyspace(String keyspaceAndTable, String keyspace) {
+    assertThat(BoundStatementProcessor.keyspaceOf(keyspaceAndTable)).isEqualTo(keyspace);
+  }
+
+  private static BoundStatement mockStatement(
+      ByteBuffer routingKey, ConsistencyLevel consistencyLevel) {
+    BoundStatement statement = mock(BoundStatement.class);
+    when(statement.getRoutingKey()).thenReturn(routingKey);
+    when(statement.getConsistencyLevel()).thenReturn(consistencyLevel);
+    return statement;
+  }
+
   @ParameterizedTest(
     name =
         "[{index}] totalNumberOfRecords={0}, maxNumberOfRecordsInBatch={1}, expectedBatchSizes={2}"
@@ -331,6 +400,84 @@ class BoundStatementProcessorTest {
     assertThat(actualBatches.get(1).size()).isEqualTo(1);
   }
 
+  @Test
+  void should_complete_statements_without_executing_them_in_dry_run() throws Exception {
+    // given
+    CassandraSinkTask task = mockCassandraSinkTask();
+    InstanceState instanceState = task.getInstanceState();
+    CqlSession session = mock(CqlSession.class);
+    when(instanceState.isDryRun()).thenReturn(true);
+    when(instanceState.getSession()).thenReturn(session);
+    when(instanceState.getBatchSizeHistogram(any(), any()))
+        .thenReturn(new Histogram(new UniformReservoir()));
+    when(instanceState.getBatchSizeInBytesHistogram(any(), any()))
+        .thenReturn(new Histogram(new UniformReservoir()));
+    when(instanceState.getRequestBarrier()).thenReturn(new Semaphore(1));
+    when(instanceState.getRequestBarrierWaitTimer(any(), any())).thenReturn(new Timer());
+    when(instanceState.getExecuteTimer(any(), any())).thenReturn(new Timer());
+    BlockingQueue<RecordAndStatement> recordAndStatements = new LinkedBlockingQueue<>();
+    List<CompletionStage<? extends AsyncResultSet>> queryFutures = new ArrayList<>();
+    BoundStatementProcessor statementProcessor =
+        new BoundStatementProcessor(task, recordAndStatements, queryFutures, 32);
+
+    // Dry runs compute the size of the statements, which needs real bound values.
+    StubPreparedStatement insert =
+        new StubPreparedStatement(
+            "INSERT INTO ks.tb (c1) VALUES (?)",
+            Collections.singletonList(new StubColumnDefinition("ks", "tb", "c1", DataTypes.INT)),
+            1);
+
+    // when
+    for (int i = 1; i <= 2; i++) {
+      SinkRecord record = new SinkRecord("topic1", 1, null, i, null, "value_" + i, 1234);
+      BoundStatement statement = insert.boundStatementBuilder().setInt("c1", i).build();
+      recordAndStatements.add(new RecordAndStatement(record, "ks.tb", statement));
+    }
+    statementProcessor.stop();
+    statementProcessor.call();
+
+    // then
+    verify(session, never()).executeAsync(any(Statement.class));
+    assertThat(queryFutures)
+        .hasSize(2)
+        .allSatisfy(future -> assertThat(future.toCompletableFuture()).isCompleted());
+    assertThat(statementProcessor.getSuccessfulRecordCount()).isEqualTo(2);
+    verify(instanceState, times(2)).incrementRecordCounter("topic1", "ks.tb", 1);
+    // The writes are not acknowledged, so that the written offsets don't move.
+    verify(instanceState, times(2)).recordWriteCompleted(any(), eq(false));
+    verify(instanceState, never()).recordWriteCompleted(any(), eq(true));
+    assertThat(instanceState.getRequestBarrier().availablePermits()).isEqualTo(1);
+  }
+
+  @Test
+  void should_not_wait_for_end_already_taken_when_consumer_fails() {
+    // given
+    BlockingQueue<RecordAndStatement> recordAndStatements = new LinkedBlockingQueue<>();
+    BoundStatementProcessor statementProcessor =
+        new BoundStatementProcessor(mockCassandraSinkTask(), recordAndStatements, null, 1);
+    ByteBuffer routingKey = ByteBuffer.wrap(new byte[] {1, 2, 3, 4});
+    addSinkRecord(recordAndStatements, "mytopic", "ks", "tb", 1, "value_1", routingKey);
+    addSinkRecord(recordAndStatements, "mytopic", "ks", "tb", 2, "value_2", routingKey);
+    statementProcessor.stop();
+    Consumer<List<RecordAndStatement>> failingConsumer =
+        statements -> {
+          throw new IllegalStateException("boom");
+        };
+
+    // when
+    // The end marker is drained along with the statements: the processor must not block on the
+    // now empty queue.
+    assertTimeoutPreemptively(
+        Duration.ofSeconds(10),
+        () ->
+            assertThatThrownBy(() -> statementProcessor.runToEnd(failingConsumer))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom"));
+
+    // then
+    assertThat(recordAndStatements).isEmpty();
+  }
+
   private void addSinkRecord(
       BlockingQueue<RecordAndStatement> recordAndStatements,
       String topic,
@@ -359,6 +506,7 @@ class BoundStatementProcessorTest {
     InstanceState instanceState = mock(InstanceState.class);
     when(instanceState.getCodecRegistry()).thenReturn(mock(CodecRegistry.class));
     when(instanceState.getProtocolVersion()).thenReturn(ProtocolVersion.DEFAULT);
+    when(instanceState.getQueueWaitTimer(any(), any())).thenReturn(new Timer());
     CassandraSinkTask sinkTask = mock(CassandraSinkTask.class);
     when(sinkTask.getInstanceState()).thenReturn(instanceState);
     return sinkTask;
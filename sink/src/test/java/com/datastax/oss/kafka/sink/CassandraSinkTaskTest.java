@@ -17,10 +17,12 @@ package com.datastax.oss.kafka.sink;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.codahale.metrics.Timer;
 import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.dsbulk.tests.utils.ReflectionUtils;
@@ -28,32 +30,45 @@ import com.datastax.oss.kafka.sink.config.TableConfig;
 import com.datastax.oss.kafka.sink.config.TopicConfig;
 import com.datastax.oss.kafka.sink.record.RecordAndStatement;
 import com.datastax.oss.kafka.sink.state.InstanceState;
+import com.datastax.oss.kafka.sink.state.UnchangedRowCache;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.connect.sink.SinkRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 
 class CassandraSinkTaskTest {
   private CassandraSinkTask sinkTask;
   private InstanceState instanceState;
   private SinkRecord record;
+  private final Timer mappingTimer = new Timer();
 
   @BeforeEach
   void setUp() {
     sinkTask = new CassandraSinkTask();
     instanceState = mock(InstanceState.class);
     ReflectionUtils.setInternalState(sinkTask, "instanceState", instanceState);
+    when(instanceState.getMappingTimer(any(), any())).thenReturn(mappingTimer);
     record = new SinkRecord("mytopic", 0, null, null, null, "value", 1234L);
   }
 
   @Test
-  void should_map_and_queue_record() {
+  void should_map_and_queue_record() throws InterruptedException {
     // Test that if we have two mappings for one topic, we produce two bound statements.
 
     @SuppressWarnings("unchecked")
@@ -88,5 +103,115 @@ class CassandraSinkTaskTest {
     assertThat(Objects.requireNonNull(queue.poll()).getStatement()).isSameAs(bs2);
     verify(bs1).setConsistencyLevel(DefaultConsistencyLevel.ONE);
     verify(bs2).setConsistencyLevel(DefaultConsistencyLevel.QUORUM);
+    assertThat(mappingTimer.getCount()).isEqualTo(2);
+  }
+
+  @Test
+  void should_count_all_writes_of_record_before_queueing_first() throws InterruptedException {
+    // The write to the first table may complete before the one to the second table is queued.
+    List<RecordAndStatement> queued = new ArrayList<>();
+    BlockingQueue<RecordAndStatement> queue =
+        new LinkedBlockingQueue<RecordAndStatement>() {
+          @Override
+          public void put(RecordAndStatement recordAndStatement) {
+            verify(instanceState).recordWritesQueued(recordAndStatement.getRecordHandle(), 2);
+            queued.add(recordAndStatement);
+          }
+        };
+    Map<String, String> settings = new LinkedHashMap<>();
+    settings.put("topic.mytopic.ks.mytable.mapping", "c1=value");
+    settings.put("topic.mytopic.ks.mytable2.mapping", "c2=value");
+    TopicConfig topicConfig = new TopicConfig("mytopic", settings, false);
+    when(instanceState.getTopicConfig("mytopic")).thenReturn(topicConfig);
+    RecordMapper recordMapper = mock(RecordMapper.class);
+    when(instanceState.getRecordMapper(any())).thenReturn(recordMapper);
+    BoundStatement bs = mock(BoundStatement.class);
+    when(recordMapper.map(any(), any())).thenReturn(bs);
+    when(bs.setConsistencyLevel(any())).thenReturn(bs);
+
+    sinkTask.mapAndQueueRecord(queue, record);
+
+    assertThat(queued).hasSize(2);
+    assertThat(queued.get(0).getRecordHandle()).isSameAs(queued.get(1).getRecordHandle());
+  }
+
+  @Test
+  void should_not_commit_offsets_in_dry_run() {
+    when(instanceState.isDryRun()).thenReturn(true);
+    Map<TopicPartition, OffsetAndMetadata> currentOffsets = new HashMap<>();
+    currentOffsets.put(new TopicPartition("mytopic", 0), new OffsetAndMetadata(1235L));
+
+    assertThat(sinkTask.preCommit(currentOffsets)).isEmpty();
+  }
+
+  @Test
+  void should_skip_unchanged_row() throws InterruptedException {
+    BlockingQueue<RecordAndStatement> queue = new LinkedBlockingQueue<>();
+    Map<String, String> settings = new LinkedHashMap<>();
+    settings.put("topic.mytopic.ks.mytable.mapping", "c1=value");
+    settings.put("topic.mytopic.ks.mytable.unchangedRowCacheSize", "1000");
+    settings.put("topic.mytopic.ks.mytable2.mapping", "c2=value");
+    TopicConfig topicConfig = new TopicConfig("mytopic", settings, false);
+    when(instanceState.getTopicConfig("mytopic")).thenReturn(topicConfig);
+    List<TableConfig> tableConfigs = new ArrayList<>(topicConfig.getTableConfigs());
+
+    RecordMapper recordMapper1 = mock(RecordMapper.class);
+    RecordMapper recordMapper2 = mock(RecordMapper.class);
+    when(instanceState.getRecordMapper(tableConfigs.get(0))).thenReturn(recordMapper1);
+    when(instanceState.getRecordMapper(tableConfigs.get(1))).thenReturn(recordMapper2);
+    BoundStatement bs1 = mock(BoundStatement.class);
+    BoundStatement bs2 = mock(BoundStatement.class);
+    when(recordMapper1.map(any(), any())).thenReturn(bs1);
+    when(recordMapper2.map(any(), any())).thenReturn(bs2);
+    when(bs1.setConsistencyLevel(any())).thenReturn(bs1);
+    when(bs2.setConsistencyLevel(any())).thenReturn(bs2);
+    // The cache of the first table knows the row already.
+    UnchangedRowCache cache = mock(UnchangedRowCache.class);
+    when(instanceState.getUnchangedRowCache(tableConfigs.get(0))).thenReturn(cache);
+
+    sinkTask.mapAndQueueRecord(queue, record);
+
+    assertThat(queue.size()).isEqualTo(1);
+    assertThat(Objects.requireNonNull(queue.poll()).getStatement()).isSameAs(bs2);
+    verify(cache).check(same(bs1), any());
+  }
+
+  @ParameterizedTest(name = "[{index}] records={0} parallelism={1}")
+  @CsvSource({"10,8,0", "127,8,0", "128,8,1", "1000,4,3", "10000,8,7", "1000,1,0"})
+  void should_map_records_in_chunks(int recordCount, int parallelism, int submittedChunks)
+      throws InterruptedException {
+    BlockingQueue<RecordAndStatement> queue = new LinkedBlockingQueue<>();
+    Map<String, String> settings = new LinkedHashMap<>();
+    settings.put("topic.mytopic.ks.mytable.mapping", "c1=value");
+    TopicConfig topicConfig = new TopicConfig("mytopic", settings, false);
+    when(instanceState.getTopicConfig("mytopic")).thenReturn(topicConfig);
+    RecordMapper recordMapper = mock(RecordMapper.class);
+    when(instanceState.getRecordMapper(any())).thenReturn(recordMapper);
+    BoundStatement bs = mock(BoundStatement.class);
+    when(recordMapper.map(any(), any())).thenReturn(bs);
+    when(bs.setConsistencyLevel(any())).thenReturn(bs);
+    AtomicInteger submitted = new AtomicInteger();
+    Executor executor =
+        command -> {
+          submitted.incrementAndGet();
+          ForkJoinPool.commonPool().execute(command);
+        };
+    when(instanceState.getMappingExecutor()).thenReturn(executor);
+    when(instanceState.getMappingParallelism()).thenReturn(parallelism);
+    List<SinkRecord> records = new ArrayList<>();
+    for (int i = 0; i < recordCount; i++) {
+      records.add(new SinkRecord("mytopic", 0, null, null, null, "value", i));
+    }
+
+    sinkTask.mapAndQueueRecords(queue, records);
+
+    assertThat(submitted.get()).isEqualTo(submittedChunks);
+    assertThat(
+            queue
+                .stream()
+                .map(recordAndStatement -> recordAndStatement.getRecordHandle().kafkaOffset())
+                .collect(Collectors.toList()))
+        .containsExactlyInAnyOrderElementsOf(
+            LongStream.range(0, recordCount).boxed().collect(Collectors.toList()));
   }
 }
@@ -32,6 +32,7 @@ import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -82,6 +83,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Stream;
 import org.apache.kafka.common.config.ConfigException;
 import org.assertj.core.util.Sets;
@@ -531,6 +533,85 @@ class RecordMapperTest {
     assertParameter(0, C1, null);
   }
 
+  @Test
+  void should_bind_to_column_subset_statement_when_field_is_null() {
+    when(record.fields()).thenReturn(set(F1, F2, F3));
+    when(record.getFieldValue(F2)).thenReturn(null);
+    ByteBuffer c1Bytes = TypeCodecs.INT.encode(42, V4);
+    ByteBuffer c3Bytes = TypeCodecs.TEXT.encode("foo", V4);
+    when(insertUpdateBoundStatementBuilder.isSet(C1)).thenReturn(true);
+    when(insertUpdateBoundStatementBuilder.isSet(C3)).thenReturn(true);
+    when(insertUpdateBoundStatementBuilder.getBytesUnsafe(C1)).thenReturn(c1Bytes);
+    when(insertUpdateBoundStatementBuilder.getBytesUnsafe(C3)).thenReturn(c3Bytes);
+
+    PreparedStatement subsetStatement = mock(PreparedStatement.class);
+    BoundStatementBuilder subsetBoundStatementBuilder = mock(BoundStatementBuilder.class);
+    BoundStatement subsetBoundStatement = mock(BoundStatement.class);
+    ColumnDefinitions subsetVariables = mock(ColumnDefinitions.class);
+    ColumnDefinition c1Def = insertUpdateVariables.get(0);
+    ColumnDefinition c3Def = insertUpdateVariables.get(2);
+    when(subsetStatement.boundStatementBuilder()).thenReturn(subsetBoundStatementBuilder);
+    when(subsetStatement.getVariableDefinitions()).thenReturn(subsetVariables);
+    when(subsetVariables.size()).thenReturn(2);
+    when(subsetVariables.get(0)).thenReturn(c1Def);
+    when(subsetVariables.get(1)).thenReturn(c3Def);
+    when(subsetBoundStatementBuilder.setBytesUnsafe(any(CqlIdentifier.class), any()))
+        .thenReturn(subsetBoundStatementBuilder);
+    when(subsetBoundStatementBuilder.build()).thenReturn(subsetBoundStatement);
+    when(subsetBoundStatement.isSet(C1)).thenReturn(true);
+    when(subsetBoundStatement.isSet(C3)).thenReturn(true);
+
+    ArgumentCaptor<Set<CqlIdentifier>> columnsCaptor = ArgumentCaptor.forClass(Set.class);
+    Function<Set<CqlIdentifier>, PreparedStatement> subsetStatements = mock(Function.class);
+    when(subsetStatements.apply(columnsCaptor.capture())).thenReturn(subsetStatement);
+
+    RecordMapper mapper =
+        new RecordMapper(
+            insertUpdateStatement,
+            null,
+            primaryKeys,
+            mapping,
+            true,
+            false,
+            tableConfigNullToUnsetFalse,
+            subsetStatements);
+    Statement result = mapper.map(recordMetadata, record);
+
+    assertThat(result).isSameAs(subsetBoundStatement);
+    assertThat(columnsCaptor.getValue()).containsExactly(C1, C3);
+    // the null field must not be written as a tombstone, even though nullToUnset is false
+    verify(insertUpdateBoundStatementBuilder, times(2))
+        .setBytesUnsafe(any(CqlIdentifier.class), any());
+    verify(subsetBoundStatementBuilder, times(2))
+        .setBytesUnsafe(variableCaptor.capture(), valueCaptor.capture());
+    assertParameter(0, C1, c1Bytes);
+    assertParameter(1, C3, c3Bytes);
+  }
+
+  @Test
+  void should_bind_to_full_statement_when_all_columns_are_set() {
+    when(record.fields()).thenReturn(set(F1, F2, F3));
+    when(insertUpdateBoundStatementBuilder.isSet(C1)).thenReturn(true);
+    when(insertUpdateBoundStatementBuilder.isSet(C2)).thenReturn(true);
+    when(insertUpdateBoundStatementBuilder.isSet(C3)).thenReturn(true);
+    Function<Set<CqlIdentifier>, PreparedStatement> subsetStatements = mock(Function.class);
+
+    RecordMapper mapper =
+        new RecordMapper(
+            insertUpdateStatement,
+            null,
+            primaryKeys,
+            mapping,
+            true,
+            false,
+            tableConfigNullToUnsetTrue,
+            subsetStatements);
+    Statement result = mapper.map(recordMetadata, record);
+
+    assertThat(result).isSameAs(insertUpdateBoundStatement);
+    verify(subsetStatements, never()).apply(any());
+  }
+
   @Test
   void should_return_unmappable_statement_when_mapping_fails() {
     when(record.fields()).thenReturn(set(F1, F2, F3));
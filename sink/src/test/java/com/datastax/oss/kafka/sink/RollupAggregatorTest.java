@@ -0,0 +1,273 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.type.DataTypes;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableList;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.config.TopicConfig;
+import com.datastax.oss.kafka.sink.record.RecordAndStatement;
+import com.datastax.oss.kafka.sink.record.RecordHandle;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.jupiter.api.Test;
+
+class RollupAggregatorTest {
+  private static final Set<CqlIdentifier> PRIMARY_KEY =
+      Collections.singleton(CqlIdentifier.fromInternal("sensor"));
+  private static final TopicPartition PARTITION = new TopicPartition("mytopic", 0);
+
+  private final StubPreparedStatement insert =
+      new StubPreparedStatement(
+          "INSERT INTO ks.mytable ...",
+          ImmutableList.<ColumnDefinition>of(
+              new StubColumnDefinition("ks", "mytable", "sensor", DataTypes.TEXT),
+              new StubColumnDefinition("ks", "mytable", "bucket", DataTypes.TIMESTAMP),
+              new StubColumnDefinition("ks", "mytable", "total", DataTypes.BIGINT),
+              new StubColumnDefinition("ks", "mytable", "readings", DataTypes.INT),
+              new StubColumnDefinition("ks", "mytable", "low", DataTypes.DOUBLE),
+              new StubColumnDefinition("ks", "mytable", "high", DataTypes.DOUBLE),
+              new StubColumnDefinition("ks", "mytable", "label", DataTypes.TEXT)),
+          1);
+
+  @Test
+  void should_write_aggregated_row_when_window_closes() {
+    RollupAggregator aggregator = newAggregator(10000);
+
+    assertThat(absorb(aggregator, 1, "a", 0, 5, 10.5, "x")).isEmpty();
+    assertThat(absorb(aggregator, 2, "a", 59_999, 7, 3.0, "y")).isEmpty();
+    assertThat(aggregator.flushClosedWindows()).isEmpty();
+    assertThat(aggregator.pendingOffsets()).containsOnly(entry(PARTITION, 1L));
+
+    // A record of the next window closes the first one.
+    assertThat(absorb(aggregator, 3, "a", 60_000, 1, 1.0, "z")).isEmpty();
+    List<RecordAndStatement> rows = aggregator.flushClosedWindows();
+    assertThat(rows).hasSize(1);
+    BoundStatement row = rows.get(0).getStatement();
+    assertThat(row.getString("sensor")).isEqualTo("a");
+    assertThat(row.getInstant("bucket")).isEqualTo(Instant.EPOCH);
+    assertThat(row.getLong("total")).isEqualTo(12L);
+    assertThat(row.getInt("readings")).isEqualTo(2);
+    assertThat(row.getDouble("low")).isEqualTo(3.0);
+    assertThat(row.getDouble("high")).isEqualTo(10.5);
+    assertThat(row.getString("label")).isEqualTo("y");
+    assertThat(rows.get(0).getRecordHandle().kafkaOffset()).isEqualTo(2L);
+
+    // The offsets of the written row are held back until its write completes.
+    assertThat(aggregator.pendingOffsets()).containsOnly(entry(PARTITION, 1L));
+    aggregator.settle(false);
+    assertThat(aggregator.pendingOffsets()).containsOnly(entry(PARTITION, 3L));
+  }
+
+  @Test
+  void should_keep_keys_apart() {
+    RollupAggregator aggregator = newAggregator(10000);
+
+    absorb(aggregator, 1, "a", 0, 5, 1.0, "x");
+    absorb(aggregator, 2, "b", 1000, 7, 1.0, "x");
+    absorb(aggregator, 3, "a", 120_000, 1, 1.0, "x");
+
+    List<RecordAndStatement> rows = aggregator.flushClosedWindows();
+    assertThat(rows).hasSize(2);
+    assertThat(rows.get(0).getStatement().getString("sensor")).isEqualTo("a");
+    assertThat(rows.get(0).getStatement().getLong("total")).isEqualTo(5L);
+    assertThat(rows.get(1).getStatement().getString("sensor")).isEqualTo("b");
+    assertThat(rows.get(1).getStatement().getLong("total")).isEqualTo(7L);
+  }
+
+  @Test
+  void should_write_oldest_row_when_too_many() {
+    RollupAggregator aggregator = newAggregator(2);
+
+    assertThat(absorb(aggregator, 1, "a", 0, 5, 1.0, "x")).isEmpty();
+    assertThat(absorb(aggregator, 2, "b", 0, 7, 1.0, "x")).isEmpty();
+    List<RecordAndStatement> rows = absorb(aggregator, 3, "c", 0, 9, 1.0, "x");
+
+    assertThat(rows).hasSize(1);
+    assertThat(rows.get(0).getStatement().getString("sensor")).isEqualTo("a");
+    assertThat(rows.get(0).getStatement().getLong("total")).isEqualTo(5L);
+    aggregator.settle(false);
+
+    // A later record of the written row is merged into its aggregates.
+    rows = absorb(aggregator, 4, "a", 1000, 6, 1.0, "x");
+    assertThat(rows).hasSize(1);
+    assertThat(rows.get(0).getStatement().getString("sensor")).isEqualTo("b");
+    rows = absorb(aggregator, 5, "d", 120_000, 1, 1.0, "x");
+    assertThat(rows).hasSize(1);
+    assertThat(rows.get(0).getStatement().getString("sensor")).isEqualTo("c");
+    rows = aggregator.flushClosedWindows();
+    assertThat(rows).hasSize(1);
+    BoundStatement row = rows.get(0).getStatement();
+    assertThat(row.getString("sensor")).isEqualTo("a");
+    assertThat(row.getLong("total")).isEqualTo(11L);
+    assertThat(row.getInt("readings")).isEqualTo(2);
+    // Its first record is held back until its window closes.
+    assertThat(aggregator.pendingOffsets()).containsOnly(entry(PARTITION, 1L));
+  }
+
+  @Test
+  void should_ignore_records_of_closed_windows() {
+    RollupAggregator aggregator = newAggregator(10000);
+    absorb(aggregator, 1, "a", 0, 5, 1.0, "x");
+    absorb(aggregator, 2, "a", 120_000, 1, 1.0, "x");
+    assertThat(aggregator.flushClosedWindows()).hasSize(1);
+    aggregator.settle(false);
+
+    assertThat(absorb(aggregator, 3, "a", 1000, 7, 1.0, "x")).isEmpty();
+    assertThat(absorb(aggregator, 4, "b", 1000, 7, 1.0, "x")).isEmpty();
+
+    assertThat(aggregator.flushClosedWindows()).isEmpty();
+    assertThat(aggregator.pendingOffsets()).containsOnly(entry(PARTITION, 2L));
+  }
+
+  @Test
+  void should_write_again_without_absorbing_replayed_records_when_a_write_fails() {
+    RollupAggregator aggregator = newAggregator(10000);
+    absorb(aggregator, 1, "a", 0, 5, 1.0, "x");
+    absorb(aggregator, 2, "b", 0, 7, 1.0, "x");
+    absorb(aggregator, 3, "a", 120_000, 1, 1.0, "x");
+    assertThat(aggregator.flushClosedWindows()).hasSize(2);
+    aggregator.settle(true);
+
+    // The partition is rewound to the failed record: the rows skip the records they have.
+    absorb(aggregator, 2, "b", 0, 7, 1.0, "x");
+    absorb(aggregator, 3, "a", 120_000, 1, 1.0, "x");
+    absorb(aggregator, 4, "b", 0, 1, 1.0, "x");
+
+    List<RecordAndStatement> rows = aggregator.flushClosedWindows();
+    assertThat(rows).hasSize(2);
+    assertThat(rows.get(0).getStatement().getString("sensor")).isEqualTo("a");
+    assertThat(rows.get(0).getStatement().getLong("total")).isEqualTo(5L);
+    assertThat(rows.get(1).getStatement().getString("sensor")).isEqualTo("b");
+    assertThat(rows.get(1).getStatement().getLong("total")).isEqualTo(8L);
+    aggregator.settle(false);
+    assertThat(aggregator.pendingOffsets()).containsOnly(entry(PARTITION, 3L));
+  }
+
+  @Test
+  void should_keep_value_of_latest_record_whatever_the_order() {
+    RollupAggregator aggregator = newAggregator(10000);
+    absorb(aggregator, 2, "a", 1000, 5, 1.0, "later");
+    absorb(aggregator, 3, "a", 500, 5, 1.0, "earlier");
+    absorb(aggregator, 1, "a", 1000, 5, 1.0, "lower offset");
+    absorb(aggregator, 4, "a", 120_000, 1, 1.0, "x");
+
+    BoundStatement row = aggregator.flushClosedWindows().get(0).getStatement();
+    assertThat(row.getString("label")).isEqualTo("later");
+  }
+
+  @Test
+  void should_leave_unset_aggregates_unset() {
+    RollupAggregator aggregator = newAggregator(10000);
+
+    aggregator.absorb(
+        RecordHandle.of(new SinkRecord("mytopic", 0, null, null, null, null, 1)),
+        insert
+            .boundStatementBuilder()
+            .setString("sensor", "a")
+            .setInstant("bucket", Instant.EPOCH)
+            .build(),
+        PRIMARY_KEY);
+    absorb(aggregator, 2, "a", 120_000, 1, 1.0, "x");
+
+    BoundStatement row = aggregator.flushClosedWindows().get(0).getStatement();
+    assertThat(row.isSet("total")).isFalse();
+    assertThat(row.isSet("readings")).isFalse();
+    assertThat(row.isSet("label")).isFalse();
+  }
+
+  @Test
+  void should_drop_rows_of_revoked_partitions() {
+    RollupAggregator aggregator = newAggregator(10000);
+    absorb(aggregator, 4, "a", 0, 5, 1.0, "x");
+    aggregator.absorb(
+        RecordHandle.of(new SinkRecord("mytopic", 1, null, null, null, null, 7)),
+        insert
+            .boundStatementBuilder()
+            .setString("sensor", "b")
+            .setInstant("bucket", Instant.EPOCH)
+            .build(),
+        PRIMARY_KEY);
+
+    assertThat(aggregator.drop(Collections.singleton(new TopicPartition("mytopic", 1)))).isEmpty();
+    assertThat(aggregator.pendingOffsets()).containsOnly(entry(PARTITION, 4L));
+  }
+
+  @Test
+  void should_return_offsets_to_replay_on_reset() {
+    RollupAggregator aggregator = newAggregator(10000);
+    absorb(aggregator, 4, "a", 0, 5, 1.0, "x");
+    absorb(aggregator, 7, "b", 0, 5, 1.0, "x");
+
+    assertThat(aggregator.reset()).containsOnly(entry(PARTITION, 4L));
+    assertThat(aggregator.pendingOffsets()).isEmpty();
+    assertThat(aggregator.flushClosedWindows()).isEmpty();
+  }
+
+  private List<RecordAndStatement> absorb(
+      RollupAggregator aggregator,
+      long offset,
+      String sensor,
+      long millis,
+      long amount,
+      double temperature,
+      String label) {
+    BoundStatement statement =
+        insert
+            .boundStatementBuilder()
+            .setString("sensor", sensor)
+            .setInstant("bucket", Instant.ofEpochMilli(millis))
+            .setLong("total", amount)
+            .setInt("readings", (int) amount)
+            .setDouble("low", temperature)
+            .setDouble("high", temperature)
+            .setString("label", label)
+            .build();
+    return aggregator.absorb(
+        RecordHandle.of(new SinkRecord("mytopic", 0, null, null, null, null, offset)),
+        statement,
+        PRIMARY_KEY);
+  }
+
+  private static RollupAggregator newAggregator(int maxRows) {
+    Map<String, String> settings = new LinkedHashMap<>();
+    settings.put(
+        "topic.mytopic.ks.mytable.mapping",
+        "sensor=key, bucket=value.ts, total=value.n, readings=value.n, low=value.t, "
+            + "high=value.t, label=value.label");
+    settings.put("topic.mytopic.ks.mytable.aggregateWindow", "60");
+    settings.put("topic.mytopic.ks.mytable.aggregateTimeColumn", "bucket");
+    settings.put(
+        "topic.mytopic.ks.mytable.aggregateFunctions",
+        "total=sum, readings=count, low=min, high=max");
+    settings.put("topic.mytopic.ks.mytable.aggregateMaxRows", String.valueOf(maxRows));
+    TableConfig tableConfig =
+        new TopicConfig("mytopic", settings, false).getTableConfigs().iterator().next();
+    return new RollupAggregator(tableConfig);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.detach.AttachmentPoint;
+import com.datastax.oss.driver.api.core.type.DataType;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/** The definition of a bind variable of a {@link StubPreparedStatement}. */
+public class StubColumnDefinition implements ColumnDefinition {
+  private final CqlIdentifier keyspace;
+  private final CqlIdentifier table;
+  private final CqlIdentifier name;
+  private final DataType type;
+
+  public StubColumnDefinition(String keyspace, String table, String name, DataType type) {
+    this.keyspace = CqlIdentifier.fromInternal(keyspace);
+    this.table = CqlIdentifier.fromInternal(table);
+    this.name = CqlIdentifier.fromInternal(name);
+    this.type = type;
+  }
+
+  @NonNull
+  @Override
+  public CqlIdentifier getKeyspace() {
+    return keyspace;
+  }
+
+  @NonNull
+  @Override
+  public CqlIdentifier getTable() {
+    return table;
+  }
+
+  @NonNull
+  @Override
+  public CqlIdentifier getName() {
+    return name;
+  }
+
+  @NonNull
+  @Override
+  public DataType getType() {
+    return type;
+  }
+
+  @Override
+  public boolean isDetached() {
+    return false;
+  }
+
+  @Override
+  public void attach(@NonNull AttachmentPoint attachmentPoint) {}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink;
+
+import com.datastax.oss.driver.api.core.DefaultProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableList;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A prepared statement that needs no session. It creates the same {@link BoundStatementBuilder}s as
+ * the driver, so that tests and benchmarks bind, encode and route statements like the connector
+ * does against a cluster. Unlike binding a mock, binding it allocates what binding against a
+ * cluster does.
+ */
+public class StubPreparedStatement implements PreparedStatement {
+  private static final ColumnDefinitions NO_COLUMNS =
+      DefaultColumnDefinitions.valueOf(Collections.emptyList());
+
+  private final String query;
+  private final ColumnDefinitions variableDefinitions;
+  private final List<Integer> partitionKeyIndices;
+
+  /**
+   * @param query the query, only used for display
+   * @param variables the bind variables
+   * @param partitionKeySize the number of variables, at the start of the list, that make up the
+   *     partition key.
+   */
+  public StubPreparedStatement(
+      String query, List<ColumnDefinition> variables, int partitionKeySize) {
+    this.query = query;
+    this.variableDefinitions = DefaultColumnDefinitions.valueOf(ImmutableList.copyOf(variables));
+    this.partitionKeyIndices =
+        IntStream.range(0, partitionKeySize).boxed().collect(Collectors.toList());
+  }
+
+  @NonNull
+  @Override
+  public ByteBuffer getId() {
+    return ByteBuffer.wrap(query.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @NonNull
+  @Override
+  public String getQuery() {
+    return query;
+  }
+
+  @NonNull
+  @Override
+  public ColumnDefinitions getVariableDefinitions() {
+    return variableDefinitions;
+  }
+
+  @NonNull
+  @Override
+  public List<Integer> getPartitionKeyIndices() {
+    return partitionKeyIndices;
+  }
+
+  @Override
+  public ByteBuffer getResultMetadataId() {
+    return null;
+  }
+
+  @NonNull
+  @Override
+  public ColumnDefinitions getResultSetDefinitions() {
+    return NO_COLUMNS;
+  }
+
+  @Override
+  public void setResultMetadata(
+      @NonNull ByteBuffer newResultMetadataId,
+      @NonNull ColumnDefinitions newResultSetDefinitions) {}
+
+  @NonNull
+  @Override
+  public BoundStatement bind(@NonNull Object... values) {
+    return boundStatementBuilder(values).build();
+  }
+
+  @NonNull
+  @Override
+  public BoundStatementBuilder boundStatementBuilder(@NonNull Object... values) {
+    if (values.length > 0) {
+      throw new UnsupportedOperationException("Values must be set on the builder");
+    }
+    ByteBuffer[] encodedValues = new ByteBuffer[variableDefinitions.size()];
+    Arrays.fill(encodedValues, ProtocolConstants.UNSET_VALUE);
+    return new BoundStatementBuilder(
+        this,
+        variableDefinitions,
+        encodedValues,
+        null,
+        null,
+        null,
+        null,
+        null,
+        Collections.emptyMap(),
+        null,
+        false,
+        Statement.NO_DEFAULT_TIMESTAMP,
+        null,
+        Integer.MIN_VALUE,
+        null,
+        null,
+        null,
+        CodecRegistry.DEFAULT,
+        DefaultProtocolVersion.V4);
+  }
+}
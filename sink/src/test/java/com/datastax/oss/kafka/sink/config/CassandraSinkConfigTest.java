@@ -16,6 +16,7 @@
 package com.datastax.oss.kafka.sink.config;
 
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.CONTACT_POINTS;
+import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.METADATA_SCHEMA_REFRESHED_KEYSPACES;
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.METRICS_SESSION_CQL_REQUESTS_INTERVAL;
 import static com.datastax.oss.driver.api.core.config.DefaultDriverOption.METRICS_SESSION_ENABLED;
 import static com.datastax.oss.dsbulk.tests.assertions.TestAssertions.assertThat;
@@ -698,6 +699,43 @@ class CassandraSinkConfigTest {
     }
   }
 
+  @Test
+  void should_default_refreshed_keyspaces_to_mapped_keyspaces() {
+    // given
+    Map<String, String> connectorSettings = new HashMap<>();
+    connectorSettings.put(getTableSettingPath("t1", "ks1", "tb", MAPPING_OPT), "c1=value.f1");
+    connectorSettings.put(getTableSettingPath("t2", "\"MyKs\"", "tb", MAPPING_OPT), "c1=value.f1");
+    String refreshedKeyspaces = withDriverPrefix(METADATA_SCHEMA_REFRESHED_KEYSPACES);
+
+    // when
+    CassandraSinkConfig cassandraSinkConfig = new CassandraSinkConfig(connectorSettings);
+
+    // then
+    assertThat(cassandraSinkConfig.getDefaultRefreshedKeyspaces())
+        .containsExactly("MyKs", "ks1", "myks");
+    // kept out of the driver settings, so that they don't prevent sharing sessions
+    assertThat(cassandraSinkConfig.getJavaDriverSettings())
+        .doesNotContainKey(refreshedKeyspaces + ".0");
+  }
+
+  @Test
+  void should_not_override_refreshed_keyspaces_provided_by_user() {
+    // given
+    String refreshedKeyspaces = withDriverPrefix(METADATA_SCHEMA_REFRESHED_KEYSPACES);
+    Map<String, String> connectorSettings = new HashMap<>();
+    connectorSettings.put(getTableSettingPath("t1", "ks1", "tb", MAPPING_OPT), "c1=value.f1");
+    connectorSettings.put(refreshedKeyspaces, "other");
+
+    // when
+    CassandraSinkConfig cassandraSinkConfig = new CassandraSinkConfig(connectorSettings);
+
+    // then
+    assertThat(cassandraSinkConfig.getJavaDriverSettings())
+        .containsEntry(refreshedKeyspaces + ".0", "other")
+        .doesNotContainKey(refreshedKeyspaces + ".1");
+    assertThat(cassandraSinkConfig.getDefaultRefreshedKeyspaces()).isEmpty();
+  }
+
   @ParameterizedTest
   @MethodSource("contactPointsProvider")
   void should_handle_contact_points_provided_using_connector_and_driver_prefix(
@@ -15,17 +15,25 @@
  */
 package com.datastax.oss.kafka.sink.config;
 
+import static com.datastax.oss.kafka.sink.config.TableConfig.AGGREGATE_FUNCTIONS_OPT;
+import static com.datastax.oss.kafka.sink.config.TableConfig.AGGREGATE_TIME_COLUMN_OPT;
+import static com.datastax.oss.kafka.sink.config.TableConfig.AGGREGATE_WINDOW_OPT;
 import static com.datastax.oss.kafka.sink.config.TableConfig.CL_OPT;
+import static com.datastax.oss.kafka.sink.config.TableConfig.COLUMN_SUBSET_STATEMENTS_OPT;
 import static com.datastax.oss.kafka.sink.config.TableConfig.DELETES_ENABLED_OPT;
 import static com.datastax.oss.kafka.sink.config.TableConfig.MAPPING_OPT;
 import static com.datastax.oss.kafka.sink.config.TableConfig.QUERY_OPT;
 import static com.datastax.oss.kafka.sink.config.TableConfig.TIMESTAMP_TIME_UNIT_OPT;
 import static com.datastax.oss.kafka.sink.config.TableConfig.TTL_OPT;
 import static com.datastax.oss.kafka.sink.config.TableConfig.TTL_TIME_UNIT_OPT;
+import static com.datastax.oss.kafka.sink.config.TableConfig.UNCHANGED_ROW_CACHE_SIZE_OPT;
+import static com.datastax.oss.kafka.sink.config.TableConfig.UNCHANGED_ROW_CACHE_TTL_OPT;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.kafka.sink.config.TableConfig.AggregateFunction;
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import org.apache.kafka.common.config.ConfigException;
@@ -194,6 +202,118 @@ class TableConfigTest {
     assertThat(tableConfig.isDeletesEnabled()).isFalse();
   }
 
+  @Test
+  void should_not_allow_query_with_column_subset_statements() {
+    assertThatThrownBy(
+            () ->
+                configBuilder
+                    .addSimpleSetting(QUERY_OPT, "SELECT * FROM ks.table")
+                    .addSimpleSetting(DELETES_ENABLED_OPT, "false")
+                    .addSimpleSetting(COLUMN_SUBSET_STATEMENTS_OPT, "true")
+                    .build())
+        .isInstanceOf(ConfigException.class)
+        .hasMessageContaining(
+            "You cannot provide both topic.mytopic.myks.mytable.query and topic.mytopic.myks.mytable.columnSubsetStatements.");
+  }
+
+  @Test
+  void should_disable_column_subset_statements_by_default() {
+    assertThat(configBuilder.build().isColumnSubsetStatements()).isFalse();
+    assertThat(
+            configBuilder
+                .addSimpleSetting(COLUMN_SUBSET_STATEMENTS_OPT, "true")
+                .build()
+                .isColumnSubsetStatements())
+        .isTrue();
+  }
+
+  @Test
+  void should_parse_aggregation_settings() {
+    assertThat(configBuilder.build().isAggregated()).isFalse();
+
+    TableConfig config =
+        configBuilder
+            .addSimpleSetting(MAPPING_OPT, "id=key, bucket=value.ts, total=value.n, n=value.n")
+            .addSimpleSetting(AGGREGATE_WINDOW_OPT, "60")
+            .addSimpleSetting(AGGREGATE_TIME_COLUMN_OPT, "bucket")
+            .addSimpleSetting(AGGREGATE_FUNCTIONS_OPT, "total=sum, n=COUNT")
+            .build();
+
+    assertThat(config.isAggregated()).isTrue();
+    assertThat(config.getAggregateWindow()).isEqualTo(Duration.ofMinutes(1));
+    assertThat(config.getAggregateTimeColumn()).isEqualTo(CqlIdentifier.fromInternal("bucket"));
+    assertThat(config.getAggregateFunctions())
+        .containsEntry(CqlIdentifier.fromInternal("total"), AggregateFunction.SUM)
+        .containsEntry(CqlIdentifier.fromInternal("n"), AggregateFunction.COUNT)
+        .hasSize(2);
+    // deletesEnabled defaults to true, but a row of aggregates is never a delete
+    assertThat(config.isDeletesEnabled()).isFalse();
+  }
+
+  @Test
+  void should_error_when_aggregating_without_time_column() {
+    assertThatThrownBy(() -> configBuilder.addSimpleSetting(AGGREGATE_WINDOW_OPT, "60").build())
+        .isInstanceOf(ConfigException.class)
+        .hasMessageContaining("topic.mytopic.myks.mytable.aggregateTimeColumn")
+        .hasMessageContaining("must be set when aggregateWindow is set");
+
+    assertThatThrownBy(
+            () ->
+                configBuilder
+                    .addSimpleSetting(AGGREGATE_WINDOW_OPT, "60")
+                    .addSimpleSetting(AGGREGATE_TIME_COLUMN_OPT, "bucket")
+                    .build())
+        .isInstanceOf(ConfigException.class)
+        .hasMessageContaining("the column is not mapped");
+  }
+
+  @Test
+  void should_error_invalid_aggregate_function() {
+    assertThatThrownBy(
+            () ->
+                configBuilder
+                    .addSimpleSetting(MAPPING_OPT, "c1=value.f1, bucket=value.ts")
+                    .addSimpleSetting(AGGREGATE_WINDOW_OPT, "60")
+                    .addSimpleSetting(AGGREGATE_TIME_COLUMN_OPT, "bucket")
+                    .addSimpleSetting(AGGREGATE_FUNCTIONS_OPT, "c1=avg")
+                    .build())
+        .isInstanceOf(ConfigException.class)
+        .hasMessageContaining(
+            "Invalid value 'c1=avg' for configuration topic.mytopic.myks.mytable.aggregateFunctions")
+        .hasMessageContaining("valid values include: sum, count, min, max, last");
+
+    assertThatThrownBy(
+            () ->
+                configBuilder
+                    .addSimpleSetting(MAPPING_OPT, "c1=value.f1, bucket=value.ts")
+                    .addSimpleSetting(AGGREGATE_WINDOW_OPT, "60")
+                    .addSimpleSetting(AGGREGATE_TIME_COLUMN_OPT, "bucket")
+                    .addSimpleSetting(AGGREGATE_FUNCTIONS_OPT, "c2=sum")
+                    .build())
+        .isInstanceOf(ConfigException.class)
+        .hasMessageContaining("column c2 is not mapped");
+  }
+
+  @Test
+  void should_parse_unchanged_row_cache_settings() {
+    TableConfig config = configBuilder.build();
+    assertThat(config.getUnchangedRowCacheSize()).isZero();
+    assertThat(config.getUnchangedRowCacheTtl()).isEqualTo(Duration.ofHours(1));
+
+    config =
+        configBuilder
+            .addSimpleSetting(UNCHANGED_ROW_CACHE_SIZE_OPT, "100000")
+            .addSimpleSetting(UNCHANGED_ROW_CACHE_TTL_OPT, "600")
+            .build();
+    assertThat(config.getUnchangedRowCacheSize()).isEqualTo(100000);
+    assertThat(config.getUnchangedRowCacheTtl()).isEqualTo(Duration.ofMinutes(10));
+
+    assertThatThrownBy(
+            () -> configBuilder.addSimpleSetting(UNCHANGED_ROW_CACHE_TTL_OPT, "0").build())
+        .isInstanceOf(ConfigException.class)
+        .hasMessageContaining("Value must be at least 1");
+  }
+
   @Test
   void should_not_allow_to_have_mapping_that_contains_only_header() {
     assertThatThrownBy(() -> configBuilder.addSimpleSetting(MAPPING_OPT, "a=header").build())
@@ -0,0 +1,51 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class FlightRecorderEventTest {
+
+  @Test
+  void should_not_begin_events_without_recording() {
+    assertThat(FlightRecorderEvent.BATCH.begin()).isNull();
+    assertThat(FlightRecorderEvent.PUT.begin()).isNull();
+    assertThat(FlightRecorderEvent.REQUEST_BARRIER_WAIT.begin()).isNull();
+    assertThat(FlightRecorderEvent.FAILURE.begin()).isNull();
+  }
+
+  @Test
+  void should_ignore_commit_of_event_not_begun() {
+    FlightRecorderEvent.PUT.commit(null, 10, 0);
+  }
+
+  @Test
+  void should_disable_event_that_cannot_be_defined() {
+    // given an unsupported field type
+    FlightRecorderEvent event =
+        new FlightRecorderEvent(
+            "com.datastax.oss.kafka.sink.Invalid",
+            "Invalid",
+            "Invalid event",
+            new FlightRecorderEvent.Field(Object.class, "value", "Value"));
+
+    // then
+    assertThat(event.isAvailable()).isFalse();
+    assertThat(event.begin()).isNull();
+  }
+}
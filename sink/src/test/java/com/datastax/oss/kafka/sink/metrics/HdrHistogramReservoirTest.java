@@ -0,0 +1,85 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Snapshot;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.Test;
+
+class HdrHistogramReservoirTest {
+
+  private final AtomicLong clock = new AtomicLong();
+  private final HdrHistogramReservoir reservoir =
+      new HdrHistogramReservoir(30, TimeUnit.SECONDS, clock::get);
+
+  @Test
+  void should_expose_values_of_last_complete_interval() {
+    // given
+    for (long i = 1; i <= 100; i++) {
+      reservoir.update(i);
+    }
+
+    // then values of the current interval are not visible yet
+    assertThat(reservoir.size()).isZero();
+    assertThat(reservoir.getSnapshot().getMax()).isZero();
+
+    // when the interval completes
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+    reservoir.update(1000);
+
+    // then
+    Snapshot snapshot = reservoir.getSnapshot();
+    assertThat(reservoir.size()).isEqualTo(100);
+    assertThat(snapshot.size()).isEqualTo(100);
+    assertThat(snapshot.getMin()).isEqualTo(1);
+    assertThat(snapshot.getMax()).isEqualTo(100);
+    assertThat(snapshot.getMean()).isCloseTo(50.5, Offset.offset(0.1));
+    assertThat(snapshot.getMedian()).isCloseTo(50, Offset.offset(1d));
+    assertThat(snapshot.get99thPercentile()).isCloseTo(99, Offset.offset(1d));
+    assertThat(snapshot.getValues()).hasSize(100).startsWith(1, 2, 3).endsWith(100);
+
+    // when the next interval completes
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+    // then the snapshot taken earlier is unchanged
+    assertThat(reservoir.getSnapshot().getValues()).containsExactly(1000);
+    assertThat(snapshot.getMax()).isEqualTo(100);
+  }
+
+  @Test
+  void should_expose_no_values_if_none_was_recorded_in_last_complete_interval() {
+    // given
+    reservoir.update(1);
+
+    // when an interval without updates completes after the one of the update
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(75));
+
+    // then
+    assertThat(reservoir.size()).isZero();
+    assertThat(reservoir.getSnapshot().getValues()).isEmpty();
+
+    // when values are recorded in the current interval, which ends at 90 seconds
+    reservoir.update(2);
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(15));
+
+    // then
+    assertThat(reservoir.getSnapshot().getValues()).containsExactly(2);
+  }
+}
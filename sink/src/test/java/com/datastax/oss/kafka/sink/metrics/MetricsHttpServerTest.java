@@ -0,0 +1,70 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.oss.driver.shaded.guava.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class MetricsHttpServerTest {
+
+  @Test
+  void should_serve_metrics_until_last_reference_is_released() throws IOException {
+    // given
+    MetricRegistry registry = new MetricRegistry();
+    registry.meter("mytopic/ks/tb/recordCount").mark();
+    MetricsHttpServer server = MetricsHttpServer.acquire("127.0.0.1", 0, registry);
+    assertThat(MetricsHttpServer.acquire("127.0.0.1", 0, registry)).isSameAs(server);
+    URL url = new URL("http://127.0.0.1:" + server.getPort() + "/metrics");
+
+    try {
+      // when
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+      // then
+      assertThat(connection.getResponseCode()).isEqualTo(200);
+      assertThat(connection.getContentType()).startsWith("application/openmetrics-text");
+      try (InputStream body = connection.getInputStream()) {
+        assertThat(new String(ByteStreams.toByteArray(body), StandardCharsets.UTF_8))
+            .contains(
+                "cassandra_sink_record_count_total"
+                    + "{topic=\"mytopic\",keyspace=\"ks\",table=\"tb\"} 1\n")
+            .endsWith("# EOF\n");
+      }
+
+      // when one of the references is released, the server keeps running
+      server.release();
+      assertThat(((HttpURLConnection) url.openConnection()).getResponseCode()).isEqualTo(200);
+    } finally {
+      server.release();
+    }
+
+    // when the last reference is released, the server is stopped
+    MetricsHttpServer restarted = MetricsHttpServer.acquire("127.0.0.1", 0, registry);
+    try {
+      assertThat(restarted).isNotSameAs(server);
+    } finally {
+      restarted.release();
+    }
+  }
+}
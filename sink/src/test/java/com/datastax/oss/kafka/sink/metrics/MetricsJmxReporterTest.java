@@ -69,6 +69,22 @@ class MetricsJmxReporterTest {
             "domain:connector=instance-one,driver=driver,name=cql-client-timeouts,session=s0");
   }
 
+  @Test
+  void should_create_driver_node_metrics() {
+    // given
+    String driverMetric =
+        MetricNamesCreator.createDriverMetricName("s0.nodes.127_0_0_1:9042.pool.open-connections");
+
+    // when
+    ObjectName name = MetricsJmxReporter.getObjectName("instance-one", "domain", driverMetric);
+
+    // then
+    assertThat(name.getCanonicalName())
+        .isEqualTo(
+            "domain:connector=instance-one,driver=driver,name=\"pool.open-connections\","
+                + "node=\"127_0_0_1:9042\",session=s0");
+  }
+
   @Test
   void should_register_global_failed_record_count_metric() {
     // given
@@ -82,6 +98,45 @@ class MetricsJmxReporterTest {
         .isEqualTo("domain:connector=instance-one,name=globalFailedRecordCount");
   }
 
+  @Test
+  void should_create_per_topic_partition_metrics() {
+    // given
+    String metricName = MetricNamesCreator.createRecordLagMetricName("my-topic", 3);
+
+    // when
+    ObjectName name = MetricsJmxReporter.getObjectName("instance-one", "domain", metricName);
+
+    // then
+    assertThat(name.getCanonicalName())
+        .isEqualTo("domain:connector=instance-one,name=recordLag,partition=3,topic=my-topic");
+  }
+
+  @Test
+  void should_register_put_duration_metric() {
+    // when
+    ObjectName name =
+        MetricsJmxReporter.getObjectName(
+            "instance-one", "domain", MetricNamesCreator.createPutDurationMetricName());
+
+    // then
+    assertThat(name.getCanonicalName()).isEqualTo("domain:connector=instance-one,name=putDuration");
+  }
+
+  @Test
+  void should_match_metric_names_exactly() {
+    // given
+    String metricName = "driver-events/recordCount/executeTimes";
+
+    // when
+    ObjectName name = MetricsJmxReporter.getObjectName("instance-one", "domain", metricName);
+
+    // then
+    assertThat(name.getCanonicalName())
+        .isEqualTo(
+            "domain:connector=instance-one,level1=driver-events,level2=recordCount,"
+                + "name=executeTimes");
+  }
+
   @Test
   void should_create_hierarchical_metric() {
     // given
@@ -122,6 +177,19 @@ class MetricsJmxReporterTest {
             "failedRecordCount"),
         Arguments.of(
             (Function<TableConfig, String>) MetricNamesCreator::createRecordCountMetricName,
-            "recordCount"));
+            "recordCount"),
+        Arguments.of(
+            (Function<TableConfig, String>) MetricNamesCreator::createMappingTimeMetricName,
+            "mappingTime"),
+        Arguments.of(
+            (Function<TableConfig, String>) MetricNamesCreator::createQueueWaitTimeMetricName,
+            "queueWaitTime"),
+        Arguments.of(
+            (Function<TableConfig, String>)
+                MetricNamesCreator::createRequestBarrierWaitTimeMetricName,
+            "requestBarrierWaitTime"),
+        Arguments.of(
+            (Function<TableConfig, String>) MetricNamesCreator::createExecuteTimeMetricName,
+            "executeTime"));
   }
 }
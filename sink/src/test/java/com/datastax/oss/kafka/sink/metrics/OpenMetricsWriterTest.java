@@ -0,0 +1,113 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class OpenMetricsWriterTest {
+
+  private final MetricRegistry registry = new MetricRegistry();
+  private final OpenMetricsWriter writer = new OpenMetricsWriter();
+
+  @Test
+  void should_render_metrics_with_object_name_keys_as_labels() {
+    // given
+    registry.meter("mytopic/ks/tb/recordCount").mark(3);
+    registry.meter("othertopic/ks/tb/recordCount").mark(1);
+    registry.counter("mytopic/2/inFlightRecords").inc(5);
+    registry.gauge("mytopic/2/lastWrittenOffset", () -> (Gauge<Long>) () -> 42L);
+    registry.timer("driver/s0.cql-requests").update(2, TimeUnit.MILLISECONDS);
+    registry.histogram("mytopic/ks/tb/batchSize").update(7);
+
+    // when
+    String text = render();
+
+    // then
+    assertThat(text)
+        .contains(
+            "# TYPE cassandra_sink_record_count counter\n"
+                + "cassandra_sink_record_count_total"
+                + "{topic=\"mytopic\",keyspace=\"ks\",table=\"tb\"} 3\n"
+                + "cassandra_sink_record_count_total"
+                + "{topic=\"othertopic\",keyspace=\"ks\",table=\"tb\"} 1\n")
+        .contains(
+            "# TYPE cassandra_sink_in_flight_records gauge\n"
+                + "cassandra_sink_in_flight_records{topic=\"mytopic\",partition=\"2\"} 5\n")
+        .contains("cassandra_sink_last_written_offset{topic=\"mytopic\",partition=\"2\"} 42\n")
+        .contains(
+            "# TYPE cassandra_sink_driver_cql_requests_seconds summary\n"
+                + "# UNIT cassandra_sink_driver_cql_requests_seconds seconds\n"
+                + "cassandra_sink_driver_cql_requests_seconds"
+                + "{session=\"s0\",quantile=\"0.5\"} 0.002\n")
+        .contains("cassandra_sink_driver_cql_requests_seconds_count{session=\"s0\"} 1\n")
+        .contains(
+            "cassandra_sink_batch_size"
+                + "{topic=\"mytopic\",keyspace=\"ks\",table=\"tb\",quantile=\"0.99\"} 7.0\n")
+        .endsWith("# EOF\n");
+  }
+
+  @Test
+  void should_render_metrics_added_after_first_scrape() {
+    // given
+    registry.meter("failedRecordsWithUnknownTopic");
+    assertThat(render()).doesNotContain("put_duration");
+
+    // when
+    registry.timer(MetricNamesCreator.createPutDurationMetricName());
+
+    // then
+    assertThat(render())
+        .contains("cassandra_sink_failed_records_with_unknown_topic_total 0\n")
+        .contains("cassandra_sink_put_duration_seconds_count 0\n");
+  }
+
+  @Test
+  void should_render_metrics_added_after_a_removal() {
+    // given
+    registry.meter("mytopic/ks/tb/recordCount").mark(3);
+    assertThat(render()).contains("{topic=\"mytopic\",keyspace=\"ks\",table=\"tb\"} 3\n");
+
+    // when
+    registry.remove("mytopic/ks/tb/recordCount");
+    registry.meter("othertopic/ks/tb/recordCount").mark(1);
+
+    // then
+    assertThat(render())
+        .doesNotContain("topic=\"mytopic\"")
+        .contains("{topic=\"othertopic\",keyspace=\"ks\",table=\"tb\"} 1\n");
+  }
+
+  @Test
+  void should_escape_label_values() {
+    // given
+    registry.meter("first/sec\"ond/value");
+
+    // then
+    assertThat(render())
+        .contains("cassandra_sink_value_total{level1=\"first\",level2=\"sec\\\"ond\"} 0\n");
+  }
+
+  private String render() {
+    StringBuilder out = new StringBuilder();
+    writer.write(registry, out);
+    return out.toString();
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.record;
+
+import static org.apache.kafka.common.record.TimestampType.CREATE_TIME;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.kafka.connect.sink.SinkRecord;
+import org.junit.jupiter.api.Test;
+
+class RecordHandleTest {
+  private final SinkRecord record =
+      new SinkRecord("mytopic", 3, null, "the key", null, "the value", 42L, 1000L, CREATE_TIME);
+
+  @Test
+  void should_keep_coordinates_only() {
+    RecordHandle handle = RecordHandle.of(record);
+
+    assertThat(handle.getRecord()).isNull();
+    assertThat(handle.topic()).isEqualTo("mytopic");
+    assertThat(handle.kafkaPartition()).isEqualTo(3);
+    assertThat(handle.kafkaOffset()).isEqualTo(42L);
+    assertThat(handle.timestamp()).isEqualTo(1000L);
+    assertThat(handle.toString())
+        .isEqualTo(
+            "SinkRecord{kafkaOffset=42, timestampType=CreateTime} "
+                + "ConnectRecord{topic='mytopic', kafkaPartition=3, timestamp=1000}")
+        .doesNotContain("the key")
+        .doesNotContain("the value");
+  }
+
+  @Test
+  void should_keep_whole_record() {
+    RecordHandle handle = RecordHandle.retaining(record);
+
+    assertThat(handle.getRecord()).isSameAs(record);
+    assertThat(handle.kafkaOffset()).isEqualTo(42L);
+    assertThat(handle.toString()).isEqualTo(record.toString());
+  }
+}
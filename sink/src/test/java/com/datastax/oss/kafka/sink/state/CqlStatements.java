@@ -0,0 +1,30 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.datastax.oss.kafka.sink.config.TableConfig;
+
+/** Gives access to the CQL statements the connector prepares, to prime a simulated cluster. */
+public class CqlStatements {
+
+  /**
+   * @param tableConfig the table
+   * @return the INSERT statement the connector prepares for the given table
+   */
+  public static String insert(TableConfig tableConfig) {
+    return LifeCycleManager.makeInsertStatement(tableConfig);
+  }
+}
@@ -16,27 +16,43 @@
 package com.datastax.oss.kafka.sink.state;
 
 import static com.datastax.oss.kafka.sink.config.TableConfig.MAPPING_OPT;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.kafka.common.record.TimestampType.CREATE_TIME;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.codahale.metrics.MetricRegistry;
 import com.datastax.oss.driver.api.core.CqlSession;
 import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableList;
 import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableMap;
+import com.datastax.oss.kafka.sink.CassandraSinkTask;
 import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
 import com.datastax.oss.kafka.sink.config.TableConfig;
 import com.datastax.oss.kafka.sink.config.TableConfigBuilder;
+import com.datastax.oss.kafka.sink.record.RecordHandle;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import org.apache.kafka.connect.sink.SinkRecord;
 import org.assertj.core.api.ThrowableAssert;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 class InstanceStateTest {
   private CassandraSinkConfig config = mock(CassandraSinkConfig.class);
   private CqlSession session = mock(CqlSession.class);
 
+  {
+    when(config.getMappingThreads()).thenReturn(1);
+  }
+
   private Map<String, TopicState> topicStates = new HashMap<>();
   private InstanceState instanceState =
       new InstanceState(config, session, topicStates, new MetricRegistry());
@@ -105,4 +121,112 @@ class InstanceStateTest {
     // then metrics should not reset
     assertThat(instanceState2.getRecordCounter("t1", "ks.tb").getCount()).isEqualTo(1);
   }
+
+  @Test
+  void should_record_partition_metrics_of_writes() {
+    // given
+    MetricRegistry metricRegistry = new MetricRegistry();
+    TopicState topicState = new TopicState(null);
+    Map<String, TopicState> topicStates = ImmutableMap.of("t1", topicState);
+    InstanceState instanceState =
+        new InstanceState(
+            new CassandraSinkConfig(
+                ImmutableMap.of("name", "instance-a", "maxPartitionMetricsPerTopic", "1")),
+            mock(CqlSession.class),
+            topicStates,
+            metricRegistry);
+    long timestamp = System.currentTimeMillis() - 5000;
+    RecordHandle record1 =
+        RecordHandle.of(new SinkRecord("t1", 0, null, null, null, "v", 41, timestamp, CREATE_TIME));
+    RecordHandle record2 =
+        RecordHandle.of(new SinkRecord("t1", 0, null, null, null, "v", 42, timestamp, CREATE_TIME));
+    RecordHandle otherPartition =
+        RecordHandle.of(new SinkRecord("t1", 1, null, null, null, "v", 7));
+
+    // when
+    instanceState.recordWritesQueued(record1, 1);
+    instanceState.recordWritesQueued(record2, 1);
+    instanceState.recordWritesQueued(otherPartition, 1);
+    instanceState.recordWriteCompleted(record2, true);
+
+    // then
+    PartitionMetrics metrics = instanceState.getPartitionMetrics("t1", 0);
+    assertThat(metrics.getInFlightRecords().getCount()).isEqualTo(1);
+    assertThat(metrics.getLastWrittenOffset()).isEqualTo(42);
+    assertThat(metrics.getRecordLag().getCount()).isEqualTo(1);
+    assertThat(metrics.getRecordLag().getSnapshot().getMax()).isGreaterThanOrEqualTo(5000);
+    assertThat(metricRegistry.getGauges()).containsKey("t1/0/lastWrittenOffset");
+
+    // when
+    instanceState.recordWriteCompleted(record1, false);
+
+    // then a failed write is no longer in flight, but doesn't move the offset
+    assertThat(metrics.getInFlightRecords().getCount()).isZero();
+    assertThat(metrics.getLastWrittenOffset()).isEqualTo(42);
+    assertThat(metrics.getRecordLag().getCount()).isEqualTo(1);
+
+    // partitions beyond the limit are not tracked
+    assertThat(instanceState.getPartitionMetrics("t1", 1)).isNull();
+
+    // when a record is written to two tables
+    RecordHandle record3 =
+        RecordHandle.of(new SinkRecord("t1", 0, null, null, null, "v", 43, timestamp, CREATE_TIME));
+    instanceState.recordWritesQueued(record3, 2);
+
+    // then it is in flight once, until both writes complete, even when the write to the first table
+    // completes before the write to the second one is sent
+    assertThat(metrics.getInFlightRecords().getCount()).isEqualTo(1);
+    instanceState.recordWriteCompleted(record3, true);
+    assertThat(metrics.getInFlightRecords().getCount()).isEqualTo(1);
+    assertThat(metrics.getLastWrittenOffset()).isEqualTo(42);
+    assertThat(metrics.getRecordLag().getCount()).isEqualTo(1);
+    instanceState.recordWriteCompleted(record3, true);
+    assertThat(metrics.getInFlightRecords().getCount()).isZero();
+    assertThat(metrics.getLastWrittenOffset()).isEqualTo(43);
+    assertThat(metrics.getRecordLag().getCount()).isEqualTo(2);
+
+    // when a record is written to two tables, and the write to the second one fails
+    RecordHandle record4 =
+        RecordHandle.of(new SinkRecord("t1", 0, null, null, null, "v", 44, timestamp, CREATE_TIME));
+    instanceState.recordWritesQueued(record4, 2);
+    instanceState.recordWriteCompleted(record4, true);
+    instanceState.recordWriteCompleted(record4, false);
+
+    // then the offset doesn't move
+    assertThat(metrics.getInFlightRecords().getCount()).isZero();
+    assertThat(metrics.getLastWrittenOffset()).isEqualTo(43);
+    assertThat(metrics.getRecordLag().getCount()).isEqualTo(2);
+  }
+
+  @Test
+  void should_close_after_grace_period_unless_a_task_registered() throws Exception {
+    // given
+    CassandraSinkTask task1 = mock(CassandraSinkTask.class);
+    CassandraSinkTask task2 = mock(CassandraSinkTask.class);
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    ScheduledFuture<?> pendingClose = mock(ScheduledFuture.class);
+    ArgumentCaptor<Runnable> closeTask = ArgumentCaptor.forClass(Runnable.class);
+    doReturn(pendingClose).when(scheduler).schedule(closeTask.capture(), eq(30L), eq(SECONDS));
+    Runnable onClose = mock(Runnable.class);
+    assertThat(instanceState.registerTask(task1)).isTrue();
+
+    // when the last task leaves and a new one registers within the grace period
+    instanceState.unregisterTaskAndScheduleClose(task1, scheduler, 30, SECONDS, onClose);
+    assertThat(instanceState.registerTask(task2)).isTrue();
+    closeTask.getValue().run();
+
+    // then the state is kept
+    verify(pendingClose).cancel(false);
+    verify(session, never()).close();
+    verify(onClose, never()).run();
+
+    // when the last task leaves and the grace period expires
+    instanceState.unregisterTaskAndScheduleClose(task2, scheduler, 30, SECONDS, onClose);
+    closeTask.getValue().run();
+
+    // then the state is closed
+    verify(session).close();
+    verify(onClose).run();
+    assertThat(instanceState.registerTask(task1)).isFalse();
+  }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.config.TopicConfig;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/** Creates {@link InstanceState}s without the schema validation and statement preparation. */
+public class InstanceStates {
+
+  /**
+   * Create the state of a connector instance with the given session.
+   *
+   * @param config the connector configuration
+   * @param session the session; only its context, metrics and execute methods are used
+   * @param primaryKey the primary key of all tables
+   * @param insertStatements the insert statement of each table
+   * @return the instance state, with the metrics of all tables initialized
+   */
+  public static InstanceState newInstanceState(
+      CassandraSinkConfig config,
+      CqlSession session,
+      List<CqlIdentifier> primaryKey,
+      Function<TableConfig, PreparedStatement> insertStatements) {
+    Map<String, TopicState> topicStates = new HashMap<>();
+    for (TopicConfig topicConfig : config.getTopicConfigs().values()) {
+      TopicState topicState = new TopicState(topicConfig.createCodecFactory());
+      for (TableConfig tableConfig : topicConfig.getTableConfigs()) {
+        topicState.createRecordMapper(
+            tableConfig, primaryKey, insertStatements.apply(tableConfig), null);
+      }
+      topicStates.put(topicConfig.getTopicName(), topicState);
+    }
+    return new InstanceState(config, session, topicStates, new MetricRegistry());
+  }
+}
@@ -36,6 +36,7 @@ import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
 import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
 import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
 import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableMap;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableSet;
 import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
 import com.datastax.oss.kafka.sink.config.TableConfig;
 import com.datastax.oss.kafka.sink.config.TableConfigBuilder;
@@ -285,6 +286,23 @@ class LifeCycleManagerTest {
                 C1, C2, C3, C1, C2, C3, SinkUtil.TIMESTAMP_VARNAME, SinkUtil.TTL_VARNAME));
   }
 
+  @Test
+  void should_make_correct_insert_cql_for_column_subset() {
+    TableConfig config =
+        makeTableConfig(
+            "myks",
+            "mytable",
+            String.format("%s=key.f1, \"%s\"=key.f2, %s=key.f3, __ttl=key.f3", C1, C2, C3));
+    assertThat(
+            LifeCycleManager.makeInsertStatement(
+                config,
+                ImmutableSet.of(CqlIdentifier.fromInternal(C3), CqlIdentifier.fromInternal(C1))))
+        .isEqualTo(
+            String.format(
+                "INSERT INTO myks.mytable(%s,%s) VALUES (:%s,:%s) USING TIMESTAMP :%s AND TTL :%s",
+                C1, C3, C1, C3, SinkUtil.TIMESTAMP_VARNAME, SinkUtil.TTL_VARNAME));
+  }
+
   @Test
   void should_make_correct_update_counter_cql_simple_key() {
     when(col2.getType()).thenReturn(COUNTER);
@@ -0,0 +1,128 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class MappingExecutorTest {
+  private final int cores = Runtime.getRuntime().availableProcessors();
+
+  @Test
+  void should_share_pool_by_weight() {
+    MappingExecutor.Share share1 = MappingExecutor.SharedPool.acquire(1);
+    try {
+      assertThat(share1.getLimit()).isEqualTo(cores);
+
+      MappingExecutor.Share share2 = MappingExecutor.SharedPool.acquire(3);
+      try {
+        assertThat(share1.getLimit()).isEqualTo(Math.max(1, Math.round(cores / 4f)));
+        assertThat(share2.getLimit()).isEqualTo(Math.max(1, Math.round(cores * 3 / 4f)));
+      } finally {
+        share2.close();
+      }
+
+      assertThat(share1.getLimit()).isEqualTo(cores);
+    } finally {
+      share1.close();
+    }
+  }
+
+  @Test
+  void should_queue_tasks_beyond_limit() throws InterruptedException {
+    MappingExecutor.Share share = MappingExecutor.SharedPool.acquire(1);
+    try {
+      int limit = share.getLimit();
+      CountDownLatch release = new CountDownLatch(1);
+      CountDownLatch done = new CountDownLatch(limit + 2);
+      AtomicInteger maxConcurrent = new AtomicInteger();
+      AtomicInteger concurrent = new AtomicInteger();
+      for (int i = 0; i < limit + 2; i++) {
+        share.execute(
+            () -> {
+              maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+              try {
+                release.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              concurrent.decrementAndGet();
+              done.countDown();
+            });
+      }
+
+      assertThat(share.getActiveCount()).isEqualTo(limit);
+      assertThat(share.getQueuedTaskCount()).isEqualTo(2);
+
+      release.countDown();
+      assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+      assertThat(maxConcurrent.get()).isLessThanOrEqualTo(limit);
+      assertThat(share.getQueuedTaskCount()).isZero();
+    } finally {
+      share.close();
+    }
+  }
+
+  @Test
+  void should_use_idle_threads_beyond_limit_while_others_do_not_wait() throws InterruptedException {
+    assumeTrue(cores > 1, "needs more than one core");
+    MappingExecutor.Share share1 = MappingExecutor.SharedPool.acquire(1);
+    MappingExecutor.Share share2 = MappingExecutor.SharedPool.acquire(cores);
+    CountDownLatch release = new CountDownLatch(1);
+    Runnable blocked =
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        };
+    try {
+      assertThat(share1.getLimit()).isEqualTo(1);
+      assertThat(share1.getParallelism()).isEqualTo(cores);
+
+      // when the other instance is idle
+      for (int i = 0; i < cores; i++) {
+        share1.execute(blocked);
+      }
+
+      // then the instance takes the whole pool
+      assertThat(share1.getActiveCount()).isEqualTo(cores);
+      assertThat(share1.getQueuedTaskCount()).isZero();
+
+      // when the other instance has records waiting
+      int limit2 = share2.getLimit();
+      for (int i = 0; i < limit2 + 1; i++) {
+        share2.execute(blocked);
+      }
+      share1.execute(blocked);
+
+      // then the instance doesn't go further beyond its limit
+      assertThat(share2.getQueuedTaskCount()).isEqualTo(1);
+      assertThat(share1.getQueuedTaskCount()).isEqualTo(1);
+      assertThat(share1.getParallelism()).isEqualTo(1);
+    } finally {
+      release.countDown();
+      share2.close();
+      share1.close();
+    }
+  }
+}
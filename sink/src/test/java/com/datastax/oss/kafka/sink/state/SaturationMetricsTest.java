@@ -0,0 +1,128 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.datastax.oss.kafka.sink.metrics.MetricNamesCreator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SaturationMetricsTest {
+  private final MetricRegistry metricRegistry = new MetricRegistry();
+  private final MappingExecutor executor = MappingExecutor.dedicated(1);
+
+  @AfterEach
+  void shutdownExecutor() {
+    executor.close();
+  }
+
+  @Test
+  void should_sum_values_of_all_instances() {
+    // given
+    Semaphore barrier1 = new Semaphore(10);
+    Semaphore barrier2 = new Semaphore(5);
+    barrier2.acquireUninterruptibly(2);
+    SaturationMetrics metrics1 = new SaturationMetrics(metricRegistry, executor, barrier1);
+    new SaturationMetrics(metricRegistry, executor, barrier2);
+
+    // then
+    assertThat(gauge("requestBarrierAvailablePermits").getValue()).isEqualTo(13L);
+    assertThat(gauge("requestBarrierWaiters").getValue()).isEqualTo(0L);
+
+    // when
+    metrics1.close();
+
+    // then
+    assertThat(gauge("requestBarrierAvailablePermits").getValue()).isEqualTo(3L);
+  }
+
+  @Test
+  void should_measure_mapping_executor() throws InterruptedException {
+    // given
+    new SaturationMetrics(metricRegistry, executor, new Semaphore(1));
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(
+        () -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    executor.execute(() -> {});
+    started.await();
+
+    // then
+    assertThat(gauge("mappingActiveThreads").getValue()).isEqualTo(1L);
+    assertThat(gauge("mappingQueuedTasks").getValue()).isEqualTo(1L);
+    release.countDown();
+  }
+
+  @Test
+  void should_measure_bound_statements_queues_until_removed() {
+    // given
+    SaturationMetrics metrics = new SaturationMetrics(metricRegistry, executor, new Semaphore(1));
+    LinkedBlockingQueue<String> queue1 = new LinkedBlockingQueue<>();
+    LinkedBlockingQueue<String> queue2 = new LinkedBlockingQueue<>();
+    queue1.add("a");
+    queue2.add("b");
+    queue2.add("c");
+
+    // when
+    metrics.addBoundStatementsQueue(queue1);
+    metrics.addBoundStatementsQueue(queue2);
+
+    // then
+    assertThat(gauge("boundStatementsQueueDepth").getValue()).isEqualTo(3L);
+
+    // when
+    metrics.removeBoundStatementsQueue(queue2);
+
+    // then
+    assertThat(gauge("boundStatementsQueueDepth").getValue()).isEqualTo(1L);
+  }
+
+  @Test
+  void should_compute_processor_busy_ratio() throws InterruptedException {
+    // given
+    SaturationMetrics metrics = new SaturationMetrics(metricRegistry, executor, new Semaphore(1));
+    metrics.processorStarted();
+    metrics.processorStarted();
+    Gauge<?> busyRatio = gauge("processorBusyRatio");
+    assertThat(busyRatio.getValue()).isEqualTo(0d);
+
+    // when both processors are busy for a long time
+    Thread.sleep(1000);
+    metrics.recordProcessorBusyTime(TimeUnit.SECONDS.toNanos(10));
+    metrics.recordProcessorBusyTime(TimeUnit.SECONDS.toNanos(10));
+
+    // then
+    assertThat(busyRatio.getValue()).isEqualTo(1d);
+  }
+
+  private Gauge<?> gauge(String name) {
+    return metricRegistry.getGauges().get(MetricNamesCreator.createSaturationMetricName(name));
+  }
+}
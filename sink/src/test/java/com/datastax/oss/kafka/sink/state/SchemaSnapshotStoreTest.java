@@ -0,0 +1,116 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableList;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableMap;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SchemaSnapshotStoreTest {
+
+  private Path directory;
+
+  @BeforeEach
+  void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("schema-snapshots");
+  }
+
+  @Test
+  void should_load_saved_snapshot_at_same_schema_version() {
+    CassandraSinkConfig config = new CassandraSinkConfig(settings("myinstance"));
+    TableConfig tableConfig =
+        config.getTopicConfigs().get("mytopic").getTableConfigs().iterator().next();
+    TableSchema schema =
+        new TableSchema(
+            ImmutableList.of(CqlIdentifier.fromInternal("c1")),
+            ImmutableList.of(CqlIdentifier.fromInternal("c1"), CqlIdentifier.fromInternal("C2")),
+            false);
+    UUID schemaVersion = UUID.randomUUID();
+    SchemaSnapshotStore store = SchemaSnapshotStore.forConfig(config);
+
+    store.save(schemaVersion, ImmutableMap.of(tableConfig, schema));
+
+    assertThat(store.load(schemaVersion)).contains(ImmutableMap.of("myks.mytable", schema));
+    assertThat(store.load(UUID.randomUUID())).isEmpty();
+    assertThat(store.load(null)).isEmpty();
+  }
+
+  @Test
+  void should_not_load_snapshot_of_other_configuration() {
+    CassandraSinkConfig config = new CassandraSinkConfig(settings("myinstance"));
+    TableConfig tableConfig =
+        config.getTopicConfigs().get("mytopic").getTableConfigs().iterator().next();
+    Map<String, String> otherSettings = settings("myinstance");
+    otherSettings.put("topic.mytopic.myks.mytable.mapping", "c1=value.f1");
+    UUID schemaVersion = UUID.randomUUID();
+
+    SchemaSnapshotStore.forConfig(config)
+        .save(
+            schemaVersion,
+            ImmutableMap.of(
+                tableConfig,
+                new TableSchema(
+                    ImmutableList.of(CqlIdentifier.fromInternal("c1")),
+                    ImmutableList.of(CqlIdentifier.fromInternal("c1")),
+                    false)));
+
+    SchemaSnapshotStore otherStore =
+        SchemaSnapshotStore.forConfig(new CassandraSinkConfig(otherSettings));
+    assertThat(otherStore.load(schemaVersion)).isEmpty();
+  }
+
+  @Test
+  void should_ignore_unreadable_snapshot() throws IOException {
+    Path file = directory.resolve("snapshot.json");
+    Files.write(file, "not json".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(new SchemaSnapshotStore(file).load(UUID.randomUUID())).isEqualTo(Optional.empty());
+  }
+
+  @Test
+  void should_be_disabled_without_directory() {
+    Map<String, String> settings = settings("myinstance");
+    settings.remove("schemaSnapshotDirectory");
+
+    assertThat(SchemaSnapshotStore.forConfig(new CassandraSinkConfig(settings))).isNull();
+  }
+
+  private Map<String, String> settings(String name) {
+    return new HashMap<>(
+        ImmutableMap.<String, String>builder()
+            .put("name", name)
+            .put("contactPoints", "host1")
+            .put("loadBalancing.localDc", "dc1")
+            .put("topics", "mytopic")
+            .put("topic.mytopic.myks.mytable.mapping", "c1=value.f1, \"C2\"=value.f2")
+            .put("schemaSnapshotDirectory", directory.toString())
+            .build());
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableMap;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableSet;
+import com.datastax.oss.kafka.sink.config.CassandraSinkConfig;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class SessionRegistryTest {
+
+  @Test
+  void should_compute_same_key_for_equivalent_connection_settings() {
+    Map<String, String> first = settings("first", "host1, host2");
+    Map<String, String> second = settings("second", "HOST2,host1");
+    second.put("topic.mytopic.myks.mytable.mapping", "c1=value.f1");
+
+    assertThat(SessionRegistry.sessionKey(new CassandraSinkConfig(first)))
+        .isEqualTo(SessionRegistry.sessionKey(new CassandraSinkConfig(second)));
+  }
+
+  @Test
+  void should_compute_different_key_for_different_connection_settings() {
+    Map<String, String> first = settings("first", "host1");
+    Map<String, String> otherPassword = settings("second", "host1");
+    otherPassword.put("auth.password", "other");
+    Map<String, String> otherDriverSetting = settings("third", "host1");
+    otherDriverSetting.put("datastax-java-driver.advanced.protocol.version", "V4");
+
+    String key = SessionRegistry.sessionKey(new CassandraSinkConfig(first));
+    assertThat(key)
+        .isNotEqualTo(SessionRegistry.sessionKey(new CassandraSinkConfig(otherPassword)))
+        .isNotEqualTo(SessionRegistry.sessionKey(new CassandraSinkConfig(otherDriverSetting)))
+        .doesNotContain("secret");
+  }
+
+  @Test
+  void should_close_session_when_last_reference_is_released() {
+    SessionRegistry registry = new SessionRegistry();
+    CqlSession session = mock(CqlSession.class);
+
+    assertThat(registry.acquire("key", Collections.emptySet(), keyspaces -> session))
+        .isSameAs(session);
+    assertThat(
+            registry.acquire(
+                "key",
+                Collections.emptySet(),
+                keyspaces -> {
+                  throw new AssertionError("session should be reused");
+                }))
+        .isSameAs(session);
+    assertThat(registry.getReferenceCount("key")).isEqualTo(2);
+
+    registry.release("key");
+    verify(session, never()).close();
+    assertThat(registry.getReferenceCount("key")).isEqualTo(1);
+
+    registry.release("key");
+    verify(session).close();
+    assertThat(registry.getReferenceCount("key")).isZero();
+  }
+
+  @Test
+  void should_not_block_other_keys_while_building_session() throws Exception {
+    SessionRegistry registry = new SessionRegistry();
+    CqlSession slowSession = mock(CqlSession.class);
+    CqlSession otherSession = mock(CqlSession.class);
+    CountDownLatch building = new CountDownLatch(1);
+    CountDownLatch built = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<CqlSession> first =
+          executor.submit(
+              () ->
+                  registry.acquire(
+                      "slow",
+                      Collections.emptySet(),
+                      keyspaces -> {
+                        building.countDown();
+                        try {
+                          built.await();
+                        } catch (InterruptedException e) {
+                          throw new AssertionError(e);
+                        }
+                        return slowSession;
+                      }));
+      building.await();
+      Future<CqlSession> second =
+          executor.submit(
+              () ->
+                  registry.acquire(
+                      "slow",
+                      Collections.emptySet(),
+                      keyspaces -> {
+                        throw new AssertionError("session should be reused");
+                      }));
+
+      // when another key is acquired while the first session is being built
+      CqlSession other =
+          assertTimeoutPreemptively(
+              Duration.ofSeconds(5),
+              () -> registry.acquire("other", Collections.emptySet(), keyspaces -> otherSession));
+
+      // then it doesn't wait for it, while callers of the same key do
+      assertThat(other).isSameAs(otherSession);
+      assertThat(second.isDone()).isFalse();
+      built.countDown();
+      assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(slowSession);
+      assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(slowSession);
+      assertThat(registry.getReferenceCount("slow")).isEqualTo(2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void should_forget_session_that_failed_to_build() {
+    SessionRegistry registry = new SessionRegistry();
+    CqlSession session = mock(CqlSession.class);
+
+    assertThatThrownBy(
+            () ->
+                registry.acquire(
+                    "key",
+                    Collections.emptySet(),
+                    keyspaces -> {
+                      throw new IllegalStateException("unreachable");
+                    }))
+        .isInstanceOf(IllegalStateException.class);
+    assertThat(registry.getReferenceCount("key")).isZero();
+
+    assertThat(registry.acquire("key", Collections.emptySet(), keyspaces -> session))
+        .isSameAs(session);
+    assertThat(registry.getReferenceCount("key")).isEqualTo(1);
+  }
+
+  @Test
+  void should_refresh_schema_of_shared_session_for_new_keyspaces() {
+    SessionRegistry registry = new SessionRegistry();
+    CqlSession session = mock(CqlSession.class);
+    DriverContext context = mock(DriverContext.class);
+    DriverConfigLoader configLoader = mock(DriverConfigLoader.class);
+    when(session.getContext()).thenReturn(context);
+    when(context.getConfigLoader()).thenReturn(configLoader);
+    when(configLoader.reload()).thenReturn(CompletableFuture.completedFuture(true));
+    AtomicReference<Supplier<Set<String>>> refreshedKeyspaces = new AtomicReference<>();
+
+    registry.acquire(
+        "key",
+        ImmutableSet.of("ks1"),
+        keyspaces -> {
+          refreshedKeyspaces.set(keyspaces);
+          return session;
+        });
+    assertThat(refreshedKeyspaces.get().get()).containsExactly("ks1");
+
+    // keyspaces already refreshed by the session
+    registry.acquire("key", ImmutableSet.of("ks1"), keyspaces -> session);
+    verify(configLoader, never()).reload();
+    verify(session, never()).refreshSchema();
+
+    registry.acquire("key", ImmutableSet.of("ks2"), keyspaces -> session);
+    assertThat(refreshedKeyspaces.get().get()).containsExactly("ks1", "ks2");
+    verify(configLoader).reload();
+    verify(session).refreshSchema();
+
+    // an instance without a keyspace filter needs all keyspaces
+    registry.acquire("key", Collections.emptySet(), keyspaces -> session);
+    assertThat(refreshedKeyspaces.get().get()).isEmpty();
+  }
+
+  private static Map<String, String> settings(String name, String contactPoints) {
+    return new HashMap<>(
+        ImmutableMap.<String, String>builder()
+            .put("name", name)
+            .put("contactPoints", contactPoints)
+            .put("loadBalancing.localDc", "dc1")
+            .put("auth.provider", "PLAIN")
+            .put("auth.username", "user")
+            .put("auth.password", "secret")
+            .build());
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import static com.datastax.oss.kafka.sink.config.TableConfig.MAPPING_OPT;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.mock;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.shaded.guava.common.collect.ImmutableSet;
+import com.datastax.oss.kafka.sink.config.TableConfig;
+import com.datastax.oss.kafka.sink.config.TableConfigBuilder;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+class TopicStateTest {
+  private final TableConfig tableConfig =
+      new TableConfigBuilder("t1", "ks", "tb", false)
+          .addSimpleSetting(MAPPING_OPT, "a=value.a, b=value.b")
+          .build();
+  private final Set<CqlIdentifier> columnsA = ImmutableSet.of(CqlIdentifier.fromCql("a"));
+  private final Set<CqlIdentifier> columnsB = ImmutableSet.of(CqlIdentifier.fromCql("b"));
+
+  @Test
+  void should_not_wait_for_other_variants_being_prepared() throws Exception {
+    // given
+    TopicState topicState = new TopicState(null);
+    Map<Set<CqlIdentifier>, CompletableFuture<PreparedStatement>> prepares = new HashMap<>();
+    prepares.put(columnsA, new CompletableFuture<>());
+    prepares.put(columnsB, CompletableFuture.completedFuture(mock(PreparedStatement.class)));
+    Function<Set<CqlIdentifier>, CompletionStage<? extends PreparedStatement>> preparer =
+        prepares::get;
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<PreparedStatement> variantA =
+          executor.submit(() -> topicState.getStatementVariant(tableConfig, columnsA, preparer));
+
+      // when another variant is looked up while the first one is being prepared
+      PreparedStatement variantB =
+          assertTimeoutPreemptively(
+              Duration.ofSeconds(5),
+              () -> topicState.getStatementVariant(tableConfig, columnsB, preparer));
+
+      // then it doesn't wait for it
+      assertThat(variantB).isSameAs(prepares.get(columnsB).join());
+      assertThat(variantA.isDone()).isFalse();
+      PreparedStatement prepared = mock(PreparedStatement.class);
+      prepares.get(columnsA).complete(prepared);
+      assertThat(variantA.get(5, TimeUnit.SECONDS)).isSameAs(prepared);
+      assertThat(topicState.getStatementVariantsCount()).isEqualTo(2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void should_prepare_variant_again_after_failure() {
+    // given
+    TopicState topicState = new TopicState(null);
+    CompletableFuture<PreparedStatement> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IllegalStateException("prepare failed"));
+    PreparedStatement prepared = mock(PreparedStatement.class);
+
+    // when
+    assertThatThrownBy(() -> topicState.getStatementVariant(tableConfig, columnsA, c -> failed))
+        .isInstanceOf(IllegalStateException.class);
+
+    // then
+    assertThat(topicState.getStatementVariantsCount()).isZero();
+    assertThat(
+            topicState.getStatementVariant(
+                tableConfig, columnsA, c -> CompletableFuture.completedFuture(prepared)))
+        .isSameAs(prepared);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.state;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.codahale.metrics.Meter;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class UnchangedRowCacheTest {
+  private final Meter hits = new Meter();
+  private final Meter misses = new Meter();
+  private final Meter evictions = new Meter();
+
+  @Test
+  void should_skip_row_written_with_same_values() {
+    UnchangedRowCache cache = newCache(1000, Duration.ofHours(1));
+
+    assertThat(cache.check(1L, 10L)).isNotNull();
+    // The first write is not acknowledged yet.
+    UnchangedRowCache.Candidate candidate = cache.check(1L, 10L);
+    assertThat(candidate).isNotNull();
+    candidate.written();
+
+    assertThat(cache.check(1L, 10L)).isNull();
+    assertThat(cache.check(2L, 10L)).isNotNull();
+    assertThat(cache.check(1L, 11L)).isNotNull();
+    assertThat(hits.getCount()).isEqualTo(1);
+    assertThat(misses.getCount()).isEqualTo(4);
+  }
+
+  @Test
+  void should_not_remember_write_overtaken_by_later_one() {
+    UnchangedRowCache cache = newCache(1000, Duration.ofHours(1));
+
+    UnchangedRowCache.Candidate first = cache.check(1L, 10L);
+    UnchangedRowCache.Candidate second = cache.check(1L, 11L);
+    second.written();
+    first.written();
+
+    assertThat(cache.check(1L, 11L)).isNull();
+  }
+
+  @Test
+  void should_not_remember_failed_write() {
+    UnchangedRowCache cache = newCache(1000, Duration.ofHours(1));
+
+    assertThat(cache.check(1L, 10L)).isNotNull();
+
+    assertThat(cache.check(1L, 10L)).isNotNull();
+  }
+
+  @Test
+  void should_expire_entries() throws InterruptedException {
+    UnchangedRowCache cache = newCache(1000, Duration.ofNanos(1));
+
+    cache.check(1L, 10L).written();
+    Thread.sleep(1);
+
+    assertThat(cache.check(1L, 10L)).isNotNull();
+    assertThat(evictions.getCount()).isEqualTo(1);
+  }
+
+  @Test
+  void should_evict_entry_expiring_first_when_full() {
+    UnchangedRowCache cache = newCache(UnchangedRowCache.WAYS, Duration.ofHours(1));
+    assertThat(cache.capacity()).isEqualTo(UnchangedRowCache.WAYS);
+
+    for (long key = 0; key <= UnchangedRowCache.WAYS; key++) {
+      cache.check(key, 10L).written();
+    }
+
+    assertThat(evictions.getCount()).isEqualTo(1);
+    for (long key = 1; key <= UnchangedRowCache.WAYS; key++) {
+      assertThat(cache.check(key, 10L)).isNull();
+    }
+    assertThat(cache.check(0L, 10L)).isNotNull();
+  }
+
+  @Test
+  void should_round_capacity_up() {
+    assertThat(newCache(1, Duration.ofHours(1)).capacity()).isEqualTo(UnchangedRowCache.WAYS);
+    assertThat(newCache(1000, Duration.ofHours(1)).capacity()).isEqualTo(1024);
+  }
+
+  private UnchangedRowCache newCache(int size, Duration ttl) {
+    return new UnchangedRowCache(size, ttl, hits, misses, evictions);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.datastax.oss.kafka.sink.util.MpscRingBuffer.WaitStrategy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class MpscRingBufferTest {
+
+  @Test
+  void should_round_capacity_up_to_power_of_two() {
+    assertThat(new MpscRingBuffer<>(1, WaitStrategy.PARK).capacity()).isEqualTo(1);
+    assertThat(new MpscRingBuffer<>(5, WaitStrategy.PARK).capacity()).isEqualTo(8);
+    assertThat(new MpscRingBuffer<>(8, WaitStrategy.PARK).capacity()).isEqualTo(8);
+    assertThatThrownBy(() -> new MpscRingBuffer<>(0, WaitStrategy.PARK))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void should_reject_elements_when_full() throws InterruptedException {
+    MpscRingBuffer<Integer> queue = new MpscRingBuffer<>(4, WaitStrategy.PARK);
+    for (int i = 0; i < 4; i++) {
+      assertThat(queue.offer(i)).isTrue();
+    }
+    assertThat(queue.offer(4)).isFalse();
+    assertThat(queue.offer(4, 1, TimeUnit.MILLISECONDS)).isFalse();
+    assertThat(queue.size()).isEqualTo(4);
+    assertThat(queue.remainingCapacity()).isZero();
+    assertThat(queue).containsExactly(0, 1, 2, 3);
+
+    assertThat(queue.poll()).isEqualTo(0);
+    assertThat(queue.offer(4)).isTrue();
+    List<Integer> drained = new ArrayList<>();
+    assertThat(queue.drainTo(drained)).isEqualTo(4);
+    assertThat(drained).containsExactly(1, 2, 3, 4);
+    assertThat(queue.poll()).isNull();
+    assertThat(queue.poll(1, TimeUnit.MILLISECONDS)).isNull();
+    assertThat(queue).isEmpty();
+  }
+
+  @ParameterizedTest
+  @EnumSource(WaitStrategy.class)
+  void should_deliver_elements_of_each_producer_in_order(WaitStrategy waitStrategy)
+      throws Exception {
+    MpscRingBuffer<Long> queue = new MpscRingBuffer<>(16, waitStrategy);
+    int producers = 3;
+    long elementsPerProducer = 2000;
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        long first = p * elementsPerProducer;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (long i = first; i < first + elementsPerProducer; i++) {
+                    queue.put(i);
+                  }
+                  return null;
+                }));
+      }
+      long[] last = {-1, elementsPerProducer - 1, 2 * elementsPerProducer - 1};
+      List<Long> available = new ArrayList<>();
+      for (long received = 0; received < producers * elementsPerProducer; ) {
+        available.add(queue.take());
+        queue.drainTo(available);
+        for (long element : available) {
+          int producer = (int) (element / elementsPerProducer);
+          assertThat(element).isGreaterThan(last[producer]);
+          last[producer] = element;
+          received++;
+        }
+        available.clear();
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+      assertThat(queue).isEmpty();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
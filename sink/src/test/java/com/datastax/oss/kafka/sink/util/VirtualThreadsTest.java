@@ -0,0 +1,43 @@
+/*
+ * Copyright DataStax, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.datastax.oss.kafka.sink.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.concurrent.ThreadFactory;
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTest {
+
+  @Test
+  void should_not_create_factory_when_unavailable() {
+    assumeTrue(!VirtualThreads.isAvailable());
+    assertThat(VirtualThreads.newThreadFactory("test-")).isNull();
+  }
+
+  @Test
+  void should_create_named_virtual_threads() throws Exception {
+    assumeTrue(VirtualThreads.isAvailable());
+    ThreadFactory factory = VirtualThreads.newThreadFactory("test-");
+    assertThat(factory).isNotNull();
+    Thread thread0 = factory.newThread(() -> {});
+    Thread thread1 = factory.newThread(() -> {});
+    assertThat(thread0.getName()).isEqualTo("test-0");
+    assertThat(thread1.getName()).isEqualTo("test-1");
+    assertThat(Thread.class.getMethod("isVirtual").invoke(thread0)).isEqualTo(true);
+  }
+}